@@ -1,12 +1,40 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
 import model.Algorithm;
+import model.CandidateIndex;
+import model.CandidateIndexType;
+import model.CandidateTable;
+import model.CandidateTrie;
+import model.CompressedTransactionBatch;
 import model.Dataset;
+import model.HashTreeNode;
+import model.ItemSet;
 import model.MinSup;
+import model.PairCountMatrix;
 import model.Transaction;
+import model.TransactionBatch;
+import util.AprioriUtils;
+import util.CandidateCounter;
+import util.Constants;
+import util.CountingStrategy;
 import util.DBReader;
 import util.FileReader;
+import util.HashTreeUtils;
 import util.InputReader;
+import util.ItemRemap;
+import util.MiningUtils;
+import util.ParallelFileParser;
+import util.ParallelFileParser.ParsedDataset;
+import util.TransactionCache;
 import algos.Apriori;
 
+import com.google.common.collect.Lists;
+import com.javamex.classmexer.MemoryUtil;
+
 /**
  * Class for ad-hoc tests.
  * 
@@ -18,7 +46,17 @@ public class TestClass
 	public static void main(String[] args) {
 		//testFileReader();
 		//testAlgosOnRefDataSet();
-		//testDbReader();
+		//testDbReader(Dataset.T5_I2_D100K, DBReader.ReadMode.STREAMING);
+		//testDbReader(Dataset.T5_I2_D100K, DBReader.ReadMode.PARALLEL);
+		//benchmarkFileReader();
+		//benchmarkParallelFileParser();
+		//benchmarkTransactionEncoding();
+		//measureCandidateFootprint();
+		//benchmarkCandidateIndex();
+		//benchmarkCandidateCounting();
+		//benchmarkCandidateIndexTypes(Dataset.T5_I2_D100K);
+		//benchmarkCandidateIndexTypes(Dataset.T20_I2_D100K);
+		//benchmarkParallelCounting(Dataset.T20_I2_D100K);
 	}
 	
 	/*
@@ -41,16 +79,534 @@ public class TestClass
 		System.out.println("##Transactions : " + count);
 	}
 	
-	private static void testDbReader()
+	/*
+	 * Compares the throughput of FileReader against the earlier Scanner + regex split based parsing
+	 * of the dataset file. Each reader scans the whole file a few times; the first rounds warm up
+	 * the JIT and the page cache.
+	 */
+	private static void benchmarkFileReader()
+	{
+		Dataset dataset = Dataset.T5_I2_D100K;
+		File file = new File("." + dataset.getDataFileLocation());
+		double fileSizeMB = file.length() / (1024.0 * 1024.0);
+		int numRounds = 5;
+
+		for(int round = 1; round <= numRounds; round++) {
+			long startTime = System.nanoTime();
+			int count = 0;
+			try {
+				Scanner fileScanner = new Scanner(file);
+				while(fileScanner.hasNext()) {
+					String[] words = fileScanner.nextLine().trim().split("[\\s\\t]+");
+					int currTid = Integer.parseInt(words[0].trim());
+					List<Integer> currItems = Lists.newArrayList();
+					for(int i=1; i < words.length; i++) {
+						currItems.add(Integer.parseInt(words[i].trim()));
+					}
+					new Transaction(currTid, currTid, currItems);
+					++count;
+				}
+				fileScanner.close();
+			}
+			catch(Exception e) {
+				System.err.println("Failed to read the dataset file . Reason : " + e);
+				return;
+			}
+			printReaderThroughput("Scanner", round, count, fileSizeMB, System.nanoTime() - startTime);
+
+			startTime = System.nanoTime();
+			count = 0;
+			InputReader reader = new FileReader(dataset, Algorithm.APRIORI);
+			while(reader.hasNextTransaction()) {
+				reader.getNextTransaction();
+				++count;
+			}
+			printReaderThroughput("FileReader", round, count, fileSizeMB, System.nanoTime() - startTime);
+		}
+	}
+
+	/*
+	 * Times the first pass i.e. the item support counts, done serially through FileReader and in
+	 * parallel through ParallelFileParser with 1, 2, 4 ... threads. Also checks that the counts
+	 * agree.
+	 */
+	private static void benchmarkParallelFileParser()
+	{
+		Dataset dataset = Dataset.T5_I2_D100K;
+		File file = new File("." + dataset.getDataFileLocation());
+		double fileSizeMB = file.length() / (1024.0 * 1024.0);
+		int numRounds = 5;
+		int maxThreads = Math.max(1, Constants.NUM_WORKER_THREADS);
+
+		for(int round = 1; round <= numRounds; round++) {
+			long startTime = System.nanoTime();
+			int[] serialCounts = MiningUtils.getItemSupportCounts(new FileReader(dataset, Algorithm.APRIORI));
+			printReaderThroughput("Serial", round, dataset.getNumTxns(), fileSizeMB, System.nanoTime() - startTime);
+
+			for(int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+				try {
+					startTime = System.nanoTime();
+					ParsedDataset parsed = ParallelFileParser.parse(file, null, numThreads);
+					printReaderThroughput("Parallel-" + numThreads, round, (int)parsed.getNumTxns(), fileSizeMB, System.nanoTime() - startTime);
+
+					int[] parallelCounts = parsed.getItemSupportCounts();
+					for(int item=0; item < Math.max(serialCounts.length, parallelCounts.length); item++) {
+						int serialCount = item < serialCounts.length ? serialCounts[item] : 0;
+						int parallelCount = item < parallelCounts.length ? parallelCounts[item] : 0;
+						if(serialCount != parallelCount) {
+							System.err.println("Support count mismatch for item " + item + " : " + serialCount + " vs " + parallelCount);
+						}
+					}
+				}
+				catch(IOException e) {
+					System.err.println("Failed to read the dataset file . Reason : " + e);
+					return;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Compares the memory taken by the dataset as Transaction objects, as primitive batches and as
+	 * delta + varint compressed batches, and times a scan which decodes the compressed batches
+	 * against one over the primitive batches.
+	 */
+	private static void benchmarkTransactionEncoding()
 	{
-		DBReader reader = new DBReader(Dataset.T5_I2_D100K, Algorithm.APRIORI);
+		Dataset dataset = Dataset.T5_I2_D100K;
+		InputReader reader = new FileReader(dataset, Algorithm.APRIORI);
+		List<TransactionBatch> batches = Lists.newArrayList();
+		List<CompressedTransactionBatch> compressedBatches = Lists.newArrayList();
+		long numTxns = 0, numItems = 0, rawBytes = 0, compressedBytes = 0;
+
+		TransactionBatch batch = new TransactionBatch();
+		while(reader.nextBatch(batch) > 0) {
+			TransactionBatch copy = new TransactionBatch(batch.getSize());
+			copy.copyFrom(batch);
+			batches.add(copy);
+			CompressedTransactionBatch compressedBatch = CompressedTransactionBatch.encode(batch);
+			compressedBatches.add(compressedBatch);
+
+			numTxns += batch.getSize();
+			numItems += batch.getNumItems();
+			rawBytes += 4L * (2 * batch.getSize() + 1 + batch.getNumItems());
+			compressedBytes += compressedBatch.getSizeInBytes();
+		}
+
+		// Transaction object and its item array.
+		long objectBytes = numTxns * (24 + 16) + numItems * 4;
+		System.out.println(String.format("%d txns, %d items : Transaction objects ~%.1f MB, batches %.1f MB, compressed %.1f MB",
+				numTxns, numItems, objectBytes / 1e6, rawBytes / 1e6, compressedBytes / 1e6));
+
+		int numRounds = 10;
+		TransactionBatch decoded = new TransactionBatch();
+		for(int round = 1; round <= numRounds; round++) {
+			long checksum = 0;
+			long startTime = System.nanoTime();
+			for(TransactionBatch rawBatch : batches) {
+				decoded.copyFrom(rawBatch);
+				int[] items = decoded.getItems();
+				for(int i=0; i < decoded.getNumItems(); i++) {
+					checksum += items[i];
+				}
+			}
+			long rawNanos = System.nanoTime() - startTime;
+
+			long compressedChecksum = 0;
+			startTime = System.nanoTime();
+			for(CompressedTransactionBatch compressedBatch : compressedBatches) {
+				compressedBatch.decode(decoded);
+				int[] items = decoded.getItems();
+				for(int i=0; i < decoded.getNumItems(); i++) {
+					compressedChecksum += items[i];
+				}
+			}
+			long compressedNanos = System.nanoTime() - startTime;
+
+			System.out.println(String.format("round %d : batches %.2f ms, compressed %.2f ms%s", round,
+					rawNanos / 1e6, compressedNanos / 1e6, (checksum == compressedChecksum) ? "" : " CHECKSUM MISMATCH"));
+		}
+	}
+
+	/*
+	 * Measures the heap taken by the candidates of the second pass at 0.25% support, the largest
+	 * candidate set on the reference dataset, held in the candidate table along with the generators
+	 * and extensions, against one itemset object per candidate. Needs -javaagent:lib/classmexer.jar.
+	 */
+	private static void measureCandidateFootprint()
+	{
+		Dataset dataset = Dataset.T5_I2_D100K;
+		int minSupportCount = (int)(MinSup.POINT_TWO_FIVE_PERCENT.getMinSupPercentage() * dataset.getNumTxns())/100;
+		int[] itemSupportCounts = MiningUtils.getItemSupportCounts(new FileReader(dataset, Algorithm.APRIORI));
+		ItemRemap itemRemap = new ItemRemap(itemSupportCounts, minSupportCount);
+
+		CandidateTable largeItemsets = new CandidateTable(1, itemRemap.getNumRanks());
+		for(int rank = 0; rank < itemRemap.getNumRanks(); rank++) {
+			largeItemsets.add(rank, itemRemap.getRankSupportCounts()[rank]);
+		}
+		largeItemsets.markLarge(minSupportCount);
+
+		CandidateTable candidates = AprioriUtils.apriori_gen(largeItemsets);
+		largeItemsets.buildExtensions(candidates);
+
+		List<ItemSet> itemsets = Lists.newArrayListWithCapacity(candidates.getSize());
+		for(int i = 0; i < candidates.getSize(); i++) {
+			itemsets.add(candidates.getItemSet(i, null));
+		}
+
+		// The extensions are held by the table of the previous pass, so count them in too.
+		long tableBytes = MemoryUtil.deepMemoryUsageOf(candidates) + 4L * largeItemsets.getExtensions().length;
+		long objectBytes = MemoryUtil.deepMemoryUsageOfAll(itemsets);
+		System.out.println(String.format("%d candidates : CandidateTable %.1f bytes, ItemSet %.1f bytes per candidate",
+				candidates.getSize(), (double)tableBytes / candidates.getSize(), (double)objectBytes / candidates.getSize()));
+	}
+
+	/*
+	 * Compares the hash tree of HashTreeNode objects with the candidate trie on the candidates of the
+	 * second pass at 0.25% support : build time, heap per candidate and the time to count the
+	 * candidates over the trimmed dataset. Needs -javaagent:lib/classmexer.jar.
+	 */
+	private static void benchmarkCandidateIndex()
+	{
+		Dataset dataset = Dataset.T5_I2_D100K;
+		int minSupportCount = (int)(MinSup.POINT_TWO_FIVE_PERCENT.getMinSupPercentage() * dataset.getNumTxns())/100;
+		int[] itemSupportCounts = MiningUtils.getItemSupportCounts(new FileReader(dataset, Algorithm.APRIORI));
+		ItemRemap itemRemap = new ItemRemap(itemSupportCounts, minSupportCount);
+		TransactionCache txnCache = itemRemap.trim(new FileReader(dataset, Algorithm.APRIORI), 2, Constants.TRANSACTION_CACHE_MAX_BYTES);
+
+		CandidateTable largeItemsets = new CandidateTable(1, itemRemap.getNumRanks());
+		for(int rank = 0; rank < itemRemap.getNumRanks(); rank++) {
+			largeItemsets.add(rank, itemRemap.getRankSupportCounts()[rank]);
+		}
+		largeItemsets.markLarge(minSupportCount);
+		CandidateTable candidates = AprioriUtils.apriori_gen(largeItemsets);
+		List<ItemSet> itemsets = Lists.newArrayListWithCapacity(candidates.getSize());
+		for(int i = 0; i < candidates.getSize(); i++) {
+			itemsets.add(candidates.getItemSet(i, null));
+		}
+
+		int numRounds = 5;
+		int[] candidatesInTrans = new int[candidates.getSize()];
+		TransactionBatch batch = new TransactionBatch();
+		for(int round = 1; round <= numRounds; round++) {
+			long startTime = System.nanoTime();
+			HashTreeNode hashTreeRoot = HashTreeUtils.buildHashTree(itemsets, 2);
+			long hashTreeBuildNanos = System.nanoTime() - startTime;
+
+			long hashTreeCount = 0;
+			startTime = System.nanoTime();
+			InputReader reader = txnCache.getReader(dataset, Algorithm.APRIORI);
+			while(reader.nextBatch(batch) > 0) {
+				for(int t = 0; t < batch.getSize(); t++) {
+					hashTreeCount += HashTreeUtils.findItemsets(hashTreeRoot, batch.getItems(), batch.getItemsStart(t), batch.getItemsEnd(t)).size();
+				}
+			}
+			long hashTreeCountNanos = System.nanoTime() - startTime;
+
+			CandidateTrie candidateTrie = new CandidateTrie(candidates);
+			int[] stack = candidateTrie.newStack();
+			long trieCount = 0;
+			startTime = System.nanoTime();
+			reader = txnCache.getReader(dataset, Algorithm.APRIORI);
+			while(reader.nextBatch(batch) > 0) {
+				for(int t = 0; t < batch.getSize(); t++) {
+					trieCount += candidateTrie.findCandidates(batch.getItems(), batch.getItemsStart(t), batch.getItemsEnd(t), candidatesInTrans, 0, stack);
+				}
+			}
+			long trieCountNanos = System.nanoTime() - startTime;
+
+			if(round == 1) {
+				System.out.println(String.format("%d candidates : hash tree %.1f bytes, trie %.1f bytes per candidate",
+						candidates.getSize(), (double)MemoryUtil.deepMemoryUsageOf(hashTreeRoot) / candidates.getSize(), candidateTrie.getBytesPerCandidate()));
+			}
+			System.out.println(String.format("round %d : hash tree build %.1f ms count %.1f ms, trie build %.1f ms count %.1f ms%s", round,
+					hashTreeBuildNanos / 1e6, hashTreeCountNanos / 1e6, candidateTrie.getBuildTime() / 1e6, trieCountNanos / 1e6,
+					(hashTreeCount == trieCount) ? "" : " COUNT MISMATCH"));
+		}
+	}
+
+	/*
+	 * Compares the ways of counting the candidates of the second and third pass at 0.25% support over
+	 * the trimmed dataset :
+	 * 	- hash tree : HashTreeUtils.findItemsets() returning a list per transaction, then incrementing
+	 * 	              each ItemSet in it.
+	 * 	- find      : CandidateTrie.findCandidates() into an array of ids, then incrementing the table.
+	 * 	- count     : CandidateTrie.countCandidates() incrementing the counts in place.
+	 * The first rounds warm up the JIT. The support counts of all the three must come out the same.
+	 */
+	private static void benchmarkCandidateCounting()
+	{
+		Dataset dataset = Dataset.T5_I2_D100K;
+		int minSupportCount = (int)(MinSup.POINT_TWO_FIVE_PERCENT.getMinSupPercentage() * dataset.getNumTxns())/100;
+		int[] itemSupportCounts = MiningUtils.getItemSupportCounts(new FileReader(dataset, Algorithm.APRIORI));
+		ItemRemap itemRemap = new ItemRemap(itemSupportCounts, minSupportCount);
+		TransactionCache txnCache = itemRemap.trim(new FileReader(dataset, Algorithm.APRIORI), 2, Constants.TRANSACTION_CACHE_MAX_BYTES);
+
+		CandidateTable largeItemsets = new CandidateTable(1, itemRemap.getNumRanks());
+		for(int rank = 0; rank < itemRemap.getNumRanks(); rank++) {
+			largeItemsets.add(rank, itemRemap.getRankSupportCounts()[rank]);
+		}
+		largeItemsets.markLarge(minSupportCount);
+
+		int numRounds = 8;
+		TransactionBatch batch = new TransactionBatch();
+		for(int k = 2; k <= 3; k++) {
+			CandidateTable candidates = AprioriUtils.apriori_gen(largeItemsets);
+			List<ItemSet> itemsets = Lists.newArrayListWithCapacity(candidates.getSize());
+			for(int i = 0; i < candidates.getSize(); i++) {
+				itemsets.add(candidates.getItemSet(i, null));
+			}
+			HashTreeNode hashTreeRoot = HashTreeUtils.buildHashTree(itemsets, k);
+			CandidateTrie candidateTrie = new CandidateTrie(candidates);
+			int[] stack = candidateTrie.newStack();
+			int[] candidatesInTrans = new int[candidates.getSize()];
+			int[] foundCounts = new int[candidates.getSize()];
+
+			for(int round = 1; round <= numRounds; round++) {
+				for(ItemSet itemset : itemsets) {
+					itemset.setSupportCount(0);
+				}
+				long startTime = System.nanoTime();
+				InputReader reader = txnCache.getReader(dataset, Algorithm.APRIORI);
+				while(reader.nextBatch(batch) > 0) {
+					for(int t = 0; t < batch.getSize(); t++) {
+						if(batch.getItemsEnd(t) - batch.getItemsStart(t) < k)
+							continue;
+						for(ItemSet itemset : HashTreeUtils.findItemsets(hashTreeRoot, batch.getItems(), batch.getItemsStart(t), batch.getItemsEnd(t))) {
+							itemset.incrementSupportCount();
+						}
+					}
+				}
+				long hashTreeNanos = System.nanoTime() - startTime;
+
+				Arrays.fill(foundCounts, 0);
+				startTime = System.nanoTime();
+				reader = txnCache.getReader(dataset, Algorithm.APRIORI);
+				while(reader.nextBatch(batch) > 0) {
+					for(int t = 0; t < batch.getSize(); t++) {
+						if(batch.getItemsEnd(t) - batch.getItemsStart(t) < k)
+							continue;
+						int numCandidatesInTrans = 
+								candidateTrie.findCandidates(batch.getItems(), batch.getItemsStart(t), batch.getItemsEnd(t), candidatesInTrans, 0, stack);
+						for(int c = 0; c < numCandidatesInTrans; c++) {
+							foundCounts[candidatesInTrans[c]]++;
+						}
+					}
+				}
+				long findNanos = System.nanoTime() - startTime;
+
+				int[] supportCounts = candidates.getSupportCounts();
+				Arrays.fill(supportCounts, 0);
+				startTime = System.nanoTime();
+				reader = txnCache.getReader(dataset, Algorithm.APRIORI);
+				while(reader.nextBatch(batch) > 0) {
+					for(int t = 0; t < batch.getSize(); t++) {
+						if(batch.getItemsEnd(t) - batch.getItemsStart(t) < k)
+							continue;
+						candidateTrie.countCandidates(batch.getItems(), batch.getItemsStart(t), batch.getItemsEnd(t), supportCounts, stack);
+					}
+				}
+				long countNanos = System.nanoTime() - startTime;
+
+				boolean isMatch = true;
+				for(int i = 0; i < candidates.getSize(); i++) {
+					if(itemsets.get(i).getSupportCount() != supportCounts[i] || foundCounts[i] != supportCounts[i]) {
+						isMatch = false;
+						break;
+					}
+				}
+				System.out.println(String.format("k=%d (%d candidates) round %d : hash tree %.1f ms, find %.1f ms, count %.1f ms%s",
+						k, candidates.getSize(), round, hashTreeNanos / 1e6, findNanos / 1e6, countNanos / 1e6,
+						isMatch ? "" : " COUNT MISMATCH"));
+			}
+
+			candidates.markLarge(minSupportCount);
+			largeItemsets = candidates;
+		}
+	}
+
+	/*
+	 * Compares the candidate trie with the hash tree of the Apriori paper over all the passes of
+	 * Apriori at 0.25% support on the dataset, e.g. the sparse T5.I2 and the denser T20.I2, which can be
+	 * made by bootstrap.SyntheticDataGenerator. Each pass is counted a few times through both indexes
+	 * and the last round is reported; the support counts of both must come out the same.
+	 */
+	private static void benchmarkCandidateIndexTypes(Dataset dataset)
+	{
+		int minSupportCount = (int)(MinSup.POINT_TWO_FIVE_PERCENT.getMinSupPercentage() * dataset.getNumTxns())/100;
+		int[] itemSupportCounts = MiningUtils.getItemSupportCounts(new FileReader(dataset, Algorithm.APRIORI));
+		ItemRemap itemRemap = new ItemRemap(itemSupportCounts, minSupportCount);
+		TransactionCache txnCache = itemRemap.trim(new FileReader(dataset, Algorithm.APRIORI), 2, Constants.TRANSACTION_CACHE_MAX_BYTES);
+
+		CandidateTable largeItemsets = new CandidateTable(1, itemRemap.getNumRanks());
+		for(int rank = 0; rank < itemRemap.getNumRanks(); rank++) {
+			largeItemsets.add(rank, itemRemap.getRankSupportCounts()[rank]);
+		}
+		largeItemsets.markLarge(minSupportCount);
+
+		int numRounds = 5;
+		TransactionBatch batch = new TransactionBatch();
+		for(int k = 2; largeItemsets.getNumLarge() > 0; k++) {
+			CandidateTable candidates = AprioriUtils.apriori_gen(largeItemsets);
+			int[] trieCounts = new int[candidates.getSize()];
+			for(CandidateIndexType indexType : CandidateIndexType.values()) {
+				CandidateIndex candidateIndex = null;
+				long countNanos = 0;
+				int[] supportCounts = candidates.getSupportCounts();
+				for(int round = 1; round <= numRounds; round++) {
+					candidateIndex = indexType.newIndex(candidates);
+					int[] stack = candidateIndex.newStack();
+					Arrays.fill(supportCounts, 0);
+					long startTime = System.nanoTime();
+					InputReader reader = txnCache.getReader(dataset, Algorithm.APRIORI);
+					while(reader.nextBatch(batch) > 0) {
+						for(int t = 0; t < batch.getSize(); t++) {
+							candidateIndex.countCandidates(batch.getItems(), batch.getItemsStart(t), batch.getItemsEnd(t), supportCounts, stack);
+						}
+					}
+					countNanos = System.nanoTime() - startTime;
+				}
+
+				boolean isMatch = true;
+				if(indexType == CandidateIndexType.TRIE) {
+					System.arraycopy(supportCounts, 0, trieCounts, 0, trieCounts.length);
+				}
+				else {
+					isMatch = Arrays.equals(trieCounts, Arrays.copyOf(supportCounts, trieCounts.length));
+				}
+				System.out.println(String.format("%s k=%d : %s, count %.1f ms%s", dataset, k, candidateIndex,
+						countNanos / 1e6, isMatch ? "" : " COUNT MISMATCH"));
+			}
+
+			candidates.markLarge(minSupportCount);
+			largeItemsets = candidates;
+		}
+	}
+
+	/*
+	 * Counts the second pass (pair count matrix) and the third pass (candidate index) at 0.25% support
+	 * over the cached dataset on 1, 2, 4 .. Constants.NUM_WORKER_THREADS threads, the third pass with
+	 * both the per thread arrays and the shared counters. The counts of every run must be the same as
+	 * on a single thread.
+	 */
+	private static void benchmarkParallelCounting(Dataset dataset)
+	{
+		int minSupportCount = (int)(MinSup.POINT_TWO_FIVE_PERCENT.getMinSupPercentage() * dataset.getNumTxns())/100;
+		int[] itemSupportCounts = MiningUtils.getItemSupportCounts(new FileReader(dataset, Algorithm.APRIORI));
+		ItemRemap itemRemap = new ItemRemap(itemSupportCounts, minSupportCount);
+		TransactionCache txnCache = itemRemap.trim(new FileReader(dataset, Algorithm.APRIORI), 2, Constants.TRANSACTION_CACHE_MAX_BYTES);
+
+		CandidateTable largePairs = CandidateCounter.countPairs(txnCache.getReader(dataset, Algorithm.APRIORI), itemRemap.getNumRanks(), 1)
+				.getLargeItemsets(minSupportCount);
+		CandidateTable candidates = AprioriUtils.apriori_gen(largePairs);
+		CandidateIndex candidateIndex = Constants.CANDIDATE_INDEX_TYPE.newIndex(candidates);
+		Arrays.fill(candidates.getSupportCounts(), 0);
+		CandidateCounter.countCandidates(txnCache.getReader(dataset, Algorithm.APRIORI), candidateIndex, candidates, 3, 1);
+		int[] serialCounts = candidates.getSupportCounts().clone();
+
+		int numRounds = 3;
+		for(int numThreads = 1; numThreads <= Math.max(Constants.NUM_WORKER_THREADS, 1); numThreads *= 2) {
+			CountingStrategy[] strategies = numThreads == 1 ? new CountingStrategy[] {CountingStrategy.SERIAL} :
+				new CountingStrategy[] {CountingStrategy.PER_THREAD_ARRAYS, CountingStrategy.SHARED_COUNTERS};
+			for(CountingStrategy strategy : strategies) {
+				long pairNanos = 0;
+				boolean isMatch = true;
+				for(int round = 1; round <= numRounds; round++) {
+					long startTime = System.nanoTime();
+					PairCountMatrix pairCounts = new PairCountMatrix(itemRemap.getNumRanks());
+					CandidateCounter.countPairs(txnCache.getReader(dataset, Algorithm.APRIORI), pairCounts, numThreads, strategy);
+					CandidateTable pairs = pairCounts.getLargeItemsets(minSupportCount);
+					pairNanos = System.nanoTime() - startTime;
+					isMatch &= Arrays.equals(pairs.getSupportCounts(), largePairs.getSupportCounts());
+				}
+				System.out.println(String.format("%s %d threads : pass 2 %s %.1f ms%s", dataset, numThreads, strategy, pairNanos / 1e6,
+						isMatch ? "" : " COUNT MISMATCH"));
+			}
+
+			for(CountingStrategy strategy : strategies) {
+				long indexNanos = 0;
+				boolean isMatch = true;
+				for(int round = 1; round <= numRounds; round++) {
+					Arrays.fill(candidates.getSupportCounts(), 0);
+					long startTime = System.nanoTime();
+					CandidateCounter.countCandidates(txnCache.getReader(dataset, Algorithm.APRIORI), candidateIndex, candidates, 3, numThreads, strategy);
+					indexNanos = System.nanoTime() - startTime;
+					isMatch &= Arrays.equals(candidates.getSupportCounts(), serialCounts);
+				}
+				System.out.println(String.format("%s %d threads : pass 3 (%d candidates) %s %.1f ms%s", dataset, numThreads,
+						candidates.getSize(), strategy, indexNanos / 1e6, isMatch ? "" : " COUNT MISMATCH"));
+			}
+		}
+	}
+
+	private static void printReaderThroughput(String readerName, int round, int numTxns, double fileSizeMB, long elapsedNanos)
+	{
+		double elapsedSecs = elapsedNanos / 1e9;
+		System.out.println(String.format("%-10s round %d : %d txns in %.3f s ( %.0f txns/s, %.1f MB/s )",
+				readerName, round, numTxns, elapsedSecs, numTxns / elapsedSecs, fileSizeMB / elapsedSecs));
+	}
+
+	/*
+	 * Reads the dataset from the database in the given mode and checks it against the data file : the
+	 * same transactions in the same order through getNextTransaction(), and the same large itemsets
+	 * in every pass at 0.25% support when counted off batches read through nextBatch().
+	 */
+	private static void testDbReader(Dataset dataset, DBReader.ReadMode readMode)
+	{
+		InputReader dbReader = new DBReader(dataset, Algorithm.APRIORI, readMode);
+		InputReader fileReader = new FileReader(dataset, Algorithm.APRIORI);
 		int count = 0;
-		while(reader.hasNextTransaction()) {
-			Transaction txn = reader.getNextTransaction();
+		int numMismatches = 0;
+		while(dbReader.hasNextTransaction()) {
+			Transaction dbTxn = dbReader.getNextTransaction();
+			Transaction fileTxn = fileReader.hasNextTransaction() ? fileReader.getNextTransaction() : null;
+			if(fileTxn == null || dbTxn.getTid() != fileTxn.getTid() || !Arrays.equals(dbTxn.getItems(), fileTxn.getItems())) {
+				++numMismatches;
+			}
 			++count;
 		}
-		
-		System.out.println("##Transactions : " + count);
+		while(fileReader.hasNextTransaction()) {
+			fileReader.getNextTransaction();
+			++numMismatches;
+		}
+		System.out.println("##" + readMode + " transactions : " + count + ", mismatches with the data file : " + numMismatches);
+
+		int minSupportCount = (int)(MinSup.POINT_TWO_FIVE_PERCENT.getMinSupPercentage() * dataset.getNumTxns())/100;
+		List<CandidateTable> dbLargeItemsets = getLargeItemsets(dataset, new DBReader(dataset, Algorithm.APRIORI, readMode),
+				new DBReader(dataset, Algorithm.APRIORI, readMode), minSupportCount);
+		List<CandidateTable> fileLargeItemsets = getLargeItemsets(dataset, new FileReader(dataset, Algorithm.APRIORI),
+				new FileReader(dataset, Algorithm.APRIORI), minSupportCount);
+		for(int pass = 0; pass < Math.max(dbLargeItemsets.size(), fileLargeItemsets.size()); pass++) {
+			CandidateTable dbItemsets = pass < dbLargeItemsets.size() ? dbLargeItemsets.get(pass) : null;
+			CandidateTable fileItemsets = pass < fileLargeItemsets.size() ? fileLargeItemsets.get(pass) : null;
+			boolean isMatch = dbItemsets != null && fileItemsets != null && dbItemsets.getNumLarge() == fileItemsets.getNumLarge()
+					&& Arrays.equals(Arrays.copyOf(dbItemsets.getSupportCounts(), dbItemsets.getSize()),
+							Arrays.copyOf(fileItemsets.getSupportCounts(), fileItemsets.getSize()));
+			System.out.println("##" + readMode + " pass " + (pass + 2) + " : " + (dbItemsets == null ? 0 : dbItemsets.getNumLarge()) +
+					" large itemsets" + (isMatch ? "" : " MISMATCH with the data file"));
+		}
+	}
+
+	/*
+	 * Large itemsets of the passes from the second on : the items are counted off the first reader and
+	 * the dataset is trimmed into the transaction cache off the second.
+	 */
+	private static List<CandidateTable> getLargeItemsets(Dataset dataset, InputReader countReader, InputReader trimReader, int minSupportCount)
+	{
+		ItemRemap itemRemap = new ItemRemap(MiningUtils.getItemSupportCounts(countReader), minSupportCount);
+		TransactionCache txnCache = itemRemap.trim(trimReader, 2, Long.MAX_VALUE);
+
+		List<CandidateTable> largeItemsets = Lists.newArrayList();
+		CandidateTable candidates = CandidateCounter.countPairs(txnCache.getReader(dataset, Algorithm.APRIORI), itemRemap.getNumRanks())
+				.getLargeItemsets(minSupportCount);
+		for(int k = 3; candidates.getNumLarge() > 0; k++) {
+			largeItemsets.add(candidates);
+			candidates = AprioriUtils.apriori_gen(candidates);
+			CandidateIndex candidateIndex = Constants.CANDIDATE_INDEX_TYPE.newIndex(candidates);
+			CandidateCounter.countCandidates(txnCache.getReader(dataset, Algorithm.APRIORI), candidateIndex, candidates, k);
+			candidates.markLarge(minSupportCount);
+		}
+		return largeItemsets;
 	}
 	
 }
@@ -2,6 +2,7 @@ package algos;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -9,12 +10,15 @@ import model.Algorithm;
 import model.Dataset;
 import model.ItemSet;
 import model.MinSup;
-import model.Transaction;
+import model.HashTreeNode;
+import model.TransactionBatch;
 import util.DBReader;
 import util.FileReader;
+import util.HashTreeUtils;
 import util.InputReader;
 import util.MiningUtils;
 import util.OutputUtils;
+import util.PrefetchingReader;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
@@ -98,52 +102,63 @@ public class AIS {
 			 */
 			ListMultimap<Integer, ItemSet> candidateKItemSetMap = ArrayListMultimap.create();
 
-			reader = getDatasetReader(dataset);
-			while(reader.hasNextTransaction()) {
-				Transaction txn = reader.getNextTransaction();
-				// Determine which large items of last pass are present in the current transaction.
-				List<ItemSet> largeItemsetsInTxn = 
-					MiningUtils.getSubsetItemsets(largeItemsets, txn, currItemsetSize-1);
-				
-				for(ItemSet largeItemSet : largeItemsetsInTxn) {
-					// Generate 1-extension candidate sets from the large itemsets of prev pass
-					List<ItemSet> extensionItemsets = getExtensionItemsets(txn, largeItemSet);
-					for(ItemSet ext : extensionItemsets) {
-						int hashKey = ext.hashCode();
-						if(candidateKItemSetMap.containsKey(hashKey)) {
-							List<ItemSet> candidateSets = candidateKItemSetMap.get(hashKey);
-							ItemSet candidate = null;
-							for(ItemSet currItemset : candidateSets) {
-								if(currItemset.equals(ext)) {
-									candidate = currItemset;
-									break;
+			// The large itemsets of the previous pass stay the same for the whole scan, so the hash
+			// tree used to look them up in every transaction is built just once per pass.
+			HashTreeNode largeItemsetsTree = HashTreeUtils.buildHashTree(largeItemsets, currItemsetSize-1);
+
+			List<ItemSet> largeItemsetsInTxn = Lists.newArrayList();
+
+			reader = PrefetchingReader.wrap(getDatasetReader(dataset));
+			TransactionBatch batch = new TransactionBatch();
+			while(reader.nextBatch(batch) > 0) {
+				int[] items = batch.getItems();
+				for(int t = 0; t < batch.getSize(); t++) {
+					int txnStart = batch.getItemsStart(t);
+					int txnEnd = batch.getItemsEnd(t);
+
+					// Determine which large items of last pass are present in the current transaction.
+					largeItemsetsInTxn.clear();
+					HashTreeUtils.findItemsets(largeItemsetsTree, items, txnStart, txnEnd, largeItemsetsInTxn);
+					
+					for(ItemSet largeItemSet : largeItemsetsInTxn) {
+						// Generate 1-extension candidate sets from the large itemsets of prev pass
+						List<ItemSet> extensionItemsets = getExtensionItemsets(items, txnStart, txnEnd, largeItemSet);
+						for(ItemSet ext : extensionItemsets) {
+							int hashKey = ext.hashCode();
+							if(candidateKItemSetMap.containsKey(hashKey)) {
+								List<ItemSet> candidateSets = candidateKItemSetMap.get(hashKey);
+								ItemSet candidate = null;
+								for(ItemSet currItemset : candidateSets) {
+									if(currItemset.equals(ext)) {
+										candidate = currItemset;
+										break;
+									}
 								}
-							}
 
-							/*
-							 * This case though rare but still can happen. Consider a scenario, where
-							 * an object that came earlier had hashcode h1 and was inserted in the 
-							 * map. Now, when we see another object with the same hashcode h1, which
-							 * has not been inserted into the map yet, we would end up with 'candidate'
-							 * as NULL and thus lead to NPE. In such cases, assume that this keyed
-							 * object is not present in the map and just insert this object in the
-							 * map and continue. 
-							 */
-							if(candidate == null) {
-								ItemSet newItemset = new ItemSet(ext.getItems(), 1);
-								candidateKItemSetMap.put(hashKey, newItemset);
+								/*
+								 * This case though rare but still can happen. Consider a scenario, where
+								 * an object that came earlier had hashcode h1 and was inserted in the 
+								 * map. Now, when we see another object with the same hashcode h1, which
+								 * has not been inserted into the map yet, we would end up with 'candidate'
+								 * as NULL and thus lead to NPE. In such cases, assume that this keyed
+								 * object is not present in the map and just insert this object in the
+								 * map and continue. 
+								 */
+								if(candidate == null) {
+									ItemSet newItemset = new ItemSet(ext.getItems(), 1);
+									candidateKItemSetMap.put(hashKey, newItemset);
+								}
+								else {
+									candidate.incrementSupportCount();								
+								}
 							}
 							else {
-								candidate.incrementSupportCount();								
+								ItemSet newItemset = new ItemSet(ext.getItems(), 1);
+								candidateKItemSetMap.put(hashKey, newItemset);
 							}
 						}
-						else {
-							ItemSet newItemset = new ItemSet(ext.getItems(), 1);
-							candidateKItemSetMap.put(hashKey, newItemset);
-						}
 					}
 				}
-				
 			}
 			
 			// TODO : The support count for every itemset is coming one less than the actual value.
@@ -178,31 +193,31 @@ public class AIS {
 	/* Returns set of 1-extension itemsets corresponding the input large itemset and
 	 * a transaction.
 	 * 
-	 * @param txn - The transaction which has to be used to generate 1-extension itemsets.
+	 * @param txnItems - Flat item array holding the transaction which has to be used to generate 
+	 *                   1-extension itemsets in txnItems[txnStart .. txnEnd).
 	 * @param largeItemset - Large itemset which would serve as the seed for generating other itemsets.
 	 * 
 	 * @returns List of 1-extension candidate itemsets for the current pass.
 	 */
-	private static List<ItemSet> getExtensionItemsets(Transaction txn, ItemSet largeItemset)
+	private static List<ItemSet> getExtensionItemsets(int[] txnItems, int txnStart, int txnEnd, ItemSet largeItemset)
 	{
 		List<ItemSet> extensionItemsets = Lists.newArrayList();
 		
-		List<Integer> largeItems = largeItemset.getItems();
-		List<Integer> txnItems = txn.getItems();
-		int itemsetSize = largeItems.size();
-		int largestItemId = largeItems.get(itemsetSize-1);
+		int[] largeItems = largeItemset.getItems();
+		int itemsetSize = largeItems.length;
+		int largestItemId = largeItems[itemsetSize-1];
 		
 		// Generate all the possible 1-extension candidate sets. Since the items in the transaction
 		// are lexically ordered, we only need to consider the items greater than the maximum
 		// item id in the large itemset.
-		for(int i=0; i < txnItems.size(); i++) {
-			int currItemId = txnItems.get(i);
+		for(int i=txnStart; i < txnEnd; i++) {
+			int currItemId = txnItems[i];
 			if(currItemId <= largestItemId) {
 				continue;
 			}
 			
-			List<Integer> newItems = Lists.newArrayList(largeItems);
-			newItems.add(currItemId);
+			int[] newItems = Arrays.copyOf(largeItems, itemsetSize+1);
+			newItems[itemsetSize] = currItemId;
 			ItemSet newItemset = new ItemSet(newItems, 0);
 			extensionItemsets.add(newItemset);
 		}
@@ -215,6 +230,6 @@ public class AIS {
 	 */
 	private static InputReader getDatasetReader(Dataset dataset)
 	{
-		return new DBReader(dataset, Algorithm.AIS);
+		return new DBReader(dataset, Algorithm.AIS, DBReader.ReadMode.PARALLEL);
 	}
 }
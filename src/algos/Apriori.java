@@ -2,28 +2,26 @@ package algos;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 import model.Algorithm;
-import model.CandidateItemset;
+import model.CandidateIndex;
+import model.CandidateTable;
 import model.Dataset;
-import model.HashTreeNode;
-import model.ItemSet;
-import model.LargeItemset;
 import model.MinSup;
-import model.Transaction;
+import model.PairCountMatrix;
 import util.AprioriUtils;
+import util.CandidateCounter;
+import util.Constants;
+import util.CountingStrategy;
 import util.DBReader;
+import util.DatasetStats;
 import util.FileReader;
-import util.HashTreeUtils;
 import util.InputReader;
+import util.ItemRemap;
+import util.MiningUtils;
 import util.OutputUtils;
+import util.TransactionCache;
 
 import com.google.common.collect.Lists;
 
@@ -35,8 +33,8 @@ import com.google.common.collect.Lists;
  */
 public class Apriori {
 
-	// The maximum number of itemsets that can be generated in a single pass. This would allow
-	// us to statically allocate this much memory upfront before running the experiment.
+	// The maximum number of passes, sized from the statistics of the dataset. This would allow
+	// us to statically allocate the per pass arrays upfront before running the experiment.
 	private static int MAX_K;
 	
 	public static void main(String[] args)
@@ -58,54 +56,84 @@ public class Apriori {
 		
 		long expStartTime = System.currentTimeMillis();
 		
-		MAX_K = 400 * dataset.getAvgTxnSize();
+		MAX_K = MiningUtils.getMaxNumPasses(dataset);
 		
 		int minSupportCount = (int)(minSup.getMinSupPercentage() * dataset.getNumTxns())/100;
 		
-		InputReader reader = getDatasetReader(dataset);
 		//File largeItemsetsFile = OutputUtils.getOutputFile("LARGEITEMSETS", Algorithm.APRIORI, dataset, minSup);
 		//File candItemsetsCountFile = OutputUtils.getOutputFile("CANDITEMSETSCOUNT", Algorithm.APRIORI, dataset, minSup);
 		
 		List<Integer> candidateItemsetsCountPerPass = Lists.newArrayList();
 		long fileWriteTime = 0;
 		
-		LargeItemset[] largeItemsets = new LargeItemset[MAX_K];
-		CandidateItemset[] candidateItemsets = new CandidateItemset[MAX_K];
+		// The candidates of each pass, which also mark the large itemsets among them.
+		CandidateTable[] candidateItemsets = new CandidateTable[MAX_K];
 		
 		long passStartTime = System.currentTimeMillis();
-		candidateItemsets[1] = new CandidateItemset(MAX_K);
-		largeItemsets[1] = new LargeItemset();
-		getInitialCandidateItemsets(reader, candidateItemsets[1]);
-		getInitialLargeItemsets(candidateItemsets[1], minSupportCount, largeItemsets[1]);
-		//System.out.println("##" + largeItemsets[1].getItemsetIds().size());
+		// The later passes only see the frequent items, renumbered to their ranks, and read them from
+		// the transaction cache if the trimmed dataset fits in it. With the statistics of the dataset,
+		// the item supports are known upfront, so the first pass just fills the cache, already trimmed.
+		// Otherwise it counts the items while caching the dataset as is, and the cache is then trimmed.
+		TransactionCache txnCache = null;
+		ItemRemap itemRemap = null;
+		DatasetStats stats = dataset.getStats();
+		if(stats != null) {
+			itemRemap = new ItemRemap(stats.getItemSupportCounts(), minSupportCount);
+			txnCache = MiningUtils.getTrimmedCache(dataset, Algorithm.APRIORI, itemRemap);
+		}
+		else {
+			txnCache = new TransactionCache(Constants.TRANSACTION_CACHE_MAX_BYTES);
+			itemRemap = new ItemRemap(MiningUtils.getItemSupportCounts(dataset, Algorithm.APRIORI, txnCache), minSupportCount);
+			if(txnCache.isOverflowed()) {
+				txnCache = null;
+			}
+			else {
+				txnCache = itemRemap.trim(MiningUtils.getDatasetReader(dataset, Algorithm.APRIORI, txnCache, null), 2, Constants.TRANSACTION_CACHE_MAX_BYTES);
+			}
+		}
+		candidateItemsets[1] = new CandidateTable(1, itemRemap.getNumRanks());
+		getInitialCandidateItemsets(itemRemap.getRankSupportCounts(), candidateItemsets[1]);
+		candidateItemsets[1].markLarge(minSupportCount);
+		//System.out.println("##" + candidateItemsets[1].getNumLarge());
 		long passEndTime = System.currentTimeMillis();
 		//System.out.println("Time for pass#1 : " + (passEndTime - passStartTime)/1000 + " s .");
 		
-		candidateItemsetsCountPerPass.add(candidateItemsets[1].getItemsets().length);
+		candidateItemsetsCountPerPass.add(itemRemap.getNumDistinctItems());
 		// Write large itemsets to file
 		/*
 		try {
 			long fileWriteStartTime = System.currentTimeMillis();
-			OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, 1, largeItemsets[1], candidateItemsets[1].getItemsets());
+			OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, 1, candidateItemsets[1], itemRemap);
 			fileWriteTime += System.currentTimeMillis() - fileWriteStartTime;
 		} catch (IOException e) {
 			System.err.println("Failed to write to file. Reason : " + e);
 		}
 		*/
 
-		for(int k = 2; largeItemsets[k-1].getItemsetIds().size() != 0; k++)
+		for(int k = 2; candidateItemsets[k-1].getNumLarge() != 0; k++)
 		{
 			System.out.println(k);
 			passStartTime = System.currentTimeMillis();
-			candidateItemsets[k] = new CandidateItemset(MAX_K);
-			candidateItemsets[k].setItemsets(AprioriUtils.apriori_gen(candidateItemsets[k-1].getItemsets(), largeItemsets[k-1].getItemsetIds(), k - 1));
+			int numCandidates = 0;
+			if(k == 2) {
+				// Every pair of frequent items is a candidate of the second pass, so the pairs are
+				// counted straight in the pair count matrix and only the large ones make it to C2.
+				PairCountMatrix pairCounts = 
+						generateLargePairs(MiningUtils.getCountingReader(dataset, Algorithm.APRIORI, txnCache, itemRemap), candidateItemsets[1].getSize());
+				candidateItemsets[k] = pairCounts.getLargeItemsets(minSupportCount);
+				numCandidates = pairCounts.getNumPairs();
+				candidateItemsets[k-1] = null;
+			}
+			else {
+				candidateItemsets[k] = AprioriUtils.apriori_gen(candidateItemsets[k-1]);
+				numCandidates = candidateItemsets[k].getSize();
 
-			// NULLify the (K-1) itemsets which are not required anymore. This optimisation has been
-			// done to facilitate quick GC for these unused objects.
-			candidateItemsets[k-1] = null;
-			largeItemsets[k-1] = null;
-			
-			largeItemsets[k] = generateLargeItemsets(getDatasetReader(dataset), candidateItemsets[k], minSupportCount, k);
+				// NULLify the (K-1) itemsets which are not required anymore. This optimisation has been
+				// done to facilitate quick GC for these unused objects.
+				candidateItemsets[k-1] = null;
+				
+				generateLargeItemsets(MiningUtils.getCountingReader(dataset, Algorithm.APRIORI, txnCache, itemRemap), candidateItemsets[k], minSupportCount, k);
+			}
 
 			passEndTime = System.currentTimeMillis();
 			//System.out.println("Time for pass#" + k + " : " + (passEndTime - passStartTime)/1000 + " s .");
@@ -114,7 +142,7 @@ public class Apriori {
 			try {
 				long fileWriteStartTime = System.currentTimeMillis();
 				OutputUtils.writeLargeItemsetsToFile(
-					largeItemsetsFile, k, largeItemsets[k], candidateItemsets[k].getItemsets()
+					largeItemsetsFile, k, candidateItemsets[k], itemRemap
 				);
 				fileWriteTime += System.currentTimeMillis() - fileWriteStartTime;
 			} catch (IOException e) {
@@ -122,7 +150,7 @@ public class Apriori {
 			}
 			*/
 
-			candidateItemsetsCountPerPass.add(candidateItemsets[k].getItemsets().length);
+			candidateItemsetsCountPerPass.add(numCandidates);
 		}
 		/*
 		try {
@@ -141,90 +169,40 @@ public class Apriori {
 		return timeTaken;
 	}
 	
-	private static LargeItemset generateLargeItemsets(InputReader reader, CandidateItemset candidateItemset, int minSupportCount, int currItemsetSize) {
+	/*
+	 * Counts the support of the candidates over the dataset and marks the large ones.
+	 */
+	private static void generateLargeItemsets(InputReader reader, CandidateTable candidateItemsets, int minSupportCount, int currItemsetSize) {
 		
 		//System.out.println("In generateLargeItemsets().");
 		
-		HashTreeNode hashTreeRoot = HashTreeUtils.buildHashTree(candidateItemset.getItemsets(), currItemsetSize);
+		CandidateIndex candidateIndex = Constants.CANDIDATE_INDEX_TYPE.newIndex(candidateItemsets);
+		//System.out.println(candidateIndex);
+		CountingStrategy countingStrategy = CandidateCounter.countCandidates(reader, candidateIndex, candidateItemsets, currItemsetSize);
+		//System.out.println("Counted " + candidateItemsets.getSize() + " candidates of pass#" + currItemsetSize + " with " + countingStrategy);
 		
-		while(reader.hasNextTransaction()) {
-			Transaction txn = reader.getNextTransaction();
-			List<ItemSet> candidateSetsInTrans = HashTreeUtils.findItemsets(hashTreeRoot, txn, 0);
-			for(ItemSet c : candidateSetsInTrans) {
-				c.incrementSupportCount();
-			}
-		}
+		candidateItemsets.markLarge(minSupportCount);
+	}
+	
+	/*
+	 * Counts the support of all the pairs of the numItems frequent items over the dataset.
+	 */
+	private static PairCountMatrix generateLargePairs(InputReader reader, int numItems) {
 		
-		LargeItemset largeItemset = new LargeItemset();
-		int index = 0;
-		for(ItemSet itemset : candidateItemset.getItemsets())
-		{
-			if(itemset == null)
-				break;
-			if(itemset.getSupportCount() >= minSupportCount)
-				largeItemset.getItemsetIds().add(index);
-			index++;
-		}
+		//System.out.println("In generateLargePairs().");
 		
-		return largeItemset;
+		return CandidateCounter.countPairs(reader, numItems);
 	}
 	
-	private static void getInitialCandidateItemsets(InputReader reader, CandidateItemset C) {
+	private static void getInitialCandidateItemsets(int[] itemSupportCounts, CandidateTable C) {
 		//System.out.println("In getInitialCandidateItemsets().");
-		SortedMap<Integer, Integer> itemset_support = new TreeMap<Integer, Integer>();
 		
-		//This loop counts support.
-		while(reader.hasNextTransaction())
+		//This part creates candidate itemsets in the sorted order of items.
+		for(int item = 0; item < itemSupportCounts.length; item++)
 		{
-			Transaction t = reader.getNextTransaction();
-		
-			for(Integer i : t.getItems())
-			{
-				if(itemset_support.containsKey(i))
-				{
-					int support = itemset_support.get(i);
-					itemset_support.put(i, support + 1);
-				}
-				else
-				{
-					itemset_support.put(i, 1);
-				}
-			}
-		}
-		
-		//This part sorts and creates candidate itemsets.
-		SortedSet<Integer> keys = new TreeSet<Integer>(itemset_support.keySet());
-		Map<Integer, Integer> itemset_pos = new HashMap<Integer, Integer>(); 
-		int index = 0;
-		for(Integer item : keys)
-		{
-			Integer support = itemset_support.get(item);
-			C.getItemsets()[index] = new ItemSet();
-			C.getItemsets()[index].getItems().add(item);
-			C.getItemsets()[index].setSupportCount(support);
-			
-			itemset_pos.put(item, index);
-			index++;
-		}
-	}
-
-	private static void getInitialLargeItemsets(CandidateItemset C, int minSupportCount, LargeItemset L)
-	{
-		int index = 0;
-		for(ItemSet itemset : C.getItemsets()) {
-			if(itemset == null)
-				break;
-			if(itemset.getSupportCount() >= minSupportCount)
-				L.getItemsetIds().add(index);
-			index++;
+			if(itemSupportCounts[item] == 0)
+				continue;
+			C.add(item, itemSupportCounts[item]);
 		}
 	}
-	
-	/*
-	 * Gets a iterative reader to the dataset and algorithm corresponding to the current experiment.
-	 */
-	private static InputReader getDatasetReader(Dataset dataset)
-	{
-		return new FileReader(dataset, Algorithm.APRIORI);
-	}
 }
@@ -2,33 +2,31 @@ package algos;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 import model.Algorithm;
-import model.CandidateItemset;
+import model.CandidateIndex;
+import model.CandidateTable;
 import model.Dataset;
-import model.HashTreeNode;
-import model.ItemSet;
-import model.LargeItemset;
 import model.MinSup;
-import model.Transaction;
-import model.aprioritid.CandidateItemsetBar;
-import model.aprioritid.ItemSetBar;
+import model.PairCountMatrix;
+import model.TransactionBatch;
 import util.AprioriUtils;
+import util.CandidateCounter;
+import util.Constants;
+import util.CountingStrategy;
 import util.DBReader;
+import util.DatasetStats;
 import util.FileReader;
-import util.HashTreeUtils;
 import util.InputReader;
+import util.ItemRemap;
+import util.MiningUtils;
 import util.OutputUtils;
+import util.PrefetchingReader;
+import util.TransactionCache;
 
 import com.google.common.collect.Lists;
-import com.javamex.classmexer.MemoryUtil;
 
 /**
  * Implements the AprioriHybrid Algorithm for frequent itemset mining.
@@ -64,11 +62,10 @@ public class AprioriHybrid {
 		
 		long expStartTime = System.currentTimeMillis();
 		
-		MAX_K = 400 * dataset.getAvgTxnSize();
+		MAX_K = MiningUtils.getMaxNumPasses(dataset);
 		
 		int minSupportCount = (int)(minSup.getMinSupPercentage() * dataset.getNumTxns())/100;
 		
-		InputReader reader = getDatasetReader(dataset);
 		//File largeItemsetsFile = OutputUtils.getOutputFile("LARGEITEMSETS", Algorithm.APRIORI_TID, dataset, minSup);
 		//File candItemsetsCountFile = OutputUtils.getOutputFile("CANDIDATESETSCOUNT", Algorithm.APRIORI_TID, dataset, minSup);
 		//File candItemsetsBarCountFile = OutputUtils.getOutputFile("CANDIDATESETSBARCOUNT", Algorithm.APRIORI_TID, dataset, minSup);
@@ -78,27 +75,46 @@ public class AprioriHybrid {
 		long fileWriteTime = 0;
 
 		long passStartTime = System.currentTimeMillis();
-		LargeItemset[] largeItemsets = new LargeItemset[MAX_K];
-		CandidateItemset[] candidateItemsets = new CandidateItemset[MAX_K];
-		CandidateItemsetBar[] candidateItemsetBars = new CandidateItemsetBar[MAX_K];
+		// The candidates of each pass, which also mark the large itemsets among them.
+		CandidateTable[] candidateItemsets = new CandidateTable[MAX_K];
+		TransactionBatch[] candidateItemsetBars = new TransactionBatch[MAX_K];
 		
-		candidateItemsets[1] = new CandidateItemset(MAX_K);
-		candidateItemsetBars[1] = new CandidateItemsetBar();
-		largeItemsets[1] = new LargeItemset();
-		
-		getInitialCandidateItemsets(reader, candidateItemsets[1]);
-		getInitialLargeItemsets(candidateItemsets[1], minSupportCount, largeItemsets[1]);
+		// The later passes only see the frequent items, renumbered to their ranks, and read them from
+		// the transaction cache if the trimmed dataset fits in it. With the statistics of the dataset,
+		// the item supports are known upfront, so the first pass just fills the cache, already trimmed.
+		// Otherwise it counts the items while caching the dataset as is, and the cache is then trimmed.
+		TransactionCache txnCache = null;
+		ItemRemap itemRemap = null;
+		DatasetStats stats = dataset.getStats();
+		if(stats != null) {
+			itemRemap = new ItemRemap(stats.getItemSupportCounts(), minSupportCount);
+			txnCache = MiningUtils.getTrimmedCache(dataset, Algorithm.APRIORI_HYBRID, itemRemap);
+		}
+		else {
+			txnCache = new TransactionCache(Constants.TRANSACTION_CACHE_MAX_BYTES);
+			itemRemap = new ItemRemap(MiningUtils.getItemSupportCounts(dataset, Algorithm.APRIORI_HYBRID, txnCache), minSupportCount);
+			if(txnCache.isOverflowed()) {
+				txnCache = null;
+			}
+			else {
+				txnCache = itemRemap.trim(MiningUtils.getDatasetReader(dataset, Algorithm.APRIORI_HYBRID, txnCache, null), 2, Constants.TRANSACTION_CACHE_MAX_BYTES);
+			}
+		}
+		candidateItemsets[1] = new CandidateTable(1, itemRemap.getNumRanks());
+		candidateItemsetBars[1] = new TransactionBatch(0);
+		getInitialCandidateItemsets(itemRemap.getRankSupportCounts(), candidateItemsets[1]);
+		candidateItemsets[1].markLarge(minSupportCount);
 		
 		long passEndTime = System.currentTimeMillis();
 		//System.out.println("Time for pass#1 : " + (passEndTime - passStartTime)/1000 + " s .");
 
-		candidateItemsetsCountPerPass.add(candidateItemsets[1].getItemsets().length);
-		candidateItemsetsBarCountPerPass.add(candidateItemsetBars[1].getItemsetbars().size());
+		candidateItemsetsCountPerPass.add(itemRemap.getNumDistinctItems());
+		candidateItemsetsBarCountPerPass.add(candidateItemsetBars[1].getSize());
 		// Write large itemsets to file
 		/*
 		try {
 			long fileWriteStartTime = System.currentTimeMillis();
-			//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, 1, largeItemsets[1], candidateItemsets[1].getItemsets());
+			//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, 1, candidateItemsets[1], itemRemap);
 			fileWriteTime += System.currentTimeMillis() - fileWriteStartTime;
 		} catch (IOException e) {
 			System.err.println("Failed to write to file. Reason : " + e);
@@ -107,47 +123,64 @@ public class AprioriHybrid {
 		boolean switch_to_aprioritid = false;
 		boolean in_transition = false;
 		
-		for(int k = 2; largeItemsets[k-1].getItemsetIds().size() != 0; k++)
+		for(int k = 2; candidateItemsets[k-1].getNumLarge() != 0; k++)
 		{
 			System.out.println(k);
 			passStartTime = System.currentTimeMillis();
 
-			candidateItemsets[k] = new CandidateItemset(MAX_K);
-			candidateItemsets[k].setItemsets(AprioriUtils.apriori_gen(candidateItemsets[k-1].getItemsets(), largeItemsets[k-1].getItemsetIds(), k - 1));
-			largeItemsets[k-1] = null; 
-			
-			long estimateSizeCBar = AprioriUtils.getEstimateSizeCBar(dataset.getNumTxns(), candidateItemsets[k]);
-			long freeMemory = getFreeMemory();
-			
-			if((!switch_to_aprioritid) && (estimateSizeCBar < freeMemory))
-			{
-				//if(k == 2)
-				//{
-					switch_to_aprioritid = true;
-					in_transition = true;
-					//System.out.println("Switching to AprioriTID at pass k = " + k);
-					//System.out.println("Estimated size of C_bar = " + estimateSizeCBar / 1024 + " KB.");
-					//System.out.println("Free memory = " + freeMemory / 1024 + " KB.");
-				//}
-			}
-			
-			if(!switch_to_aprioritid) //Do Apriori
-			{
-				largeItemsets[k] = generateLargeItemsets_Apriori(getDatasetReader(dataset), candidateItemsets[k], minSupportCount, k);
-			}
-			else if(in_transition) //Make a switch
+			int numCandidates = 0;
+			if(k == 2)
 			{
-				//System.out.println("Transition 1.");
-				candidateItemsetBars[k] = generate_C_bar_transient(getDatasetReader(dataset), candidateItemsets[k], k);
-				//System.out.println("Transition 2.");
-				largeItemsets[k] = generateLargeItemsets_AprioriTID(candidateItemsets[k], minSupportCount);
-				in_transition = false;
-				//System.out.println("Transition complete.");
+				// Every pair of frequent items is a candidate of the second pass, so the pairs are
+				// counted straight in the pair count matrix and only the large ones make it to C2. The
+				// switch to AprioriTID is considered from the third pass on, as building C_bar of the
+				// second pass would take another scan.
+				PairCountMatrix pairCounts = 
+						generateLargePairs_Apriori(MiningUtils.getCountingReader(dataset, Algorithm.APRIORI_HYBRID, txnCache, itemRemap), candidateItemsets[1].getSize());
+				candidateItemsets[k] = pairCounts.getLargeItemsets(minSupportCount);
+				numCandidates = pairCounts.getNumPairs();
 			}
-			else //Do AprioriTID
+			else
 			{
-				candidateItemsetBars[k] = generate_C_bar(candidateItemsetBars[k-1], candidateItemsets[k-1].getItemsets(), candidateItemsets[k]);
-				largeItemsets[k] = generateLargeItemsets_AprioriTID(candidateItemsets[k], minSupportCount);
+				candidateItemsets[k] = AprioriUtils.apriori_gen(candidateItemsets[k-1]);
+				candidateItemsets[k-1].buildExtensions(candidateItemsets[k]);
+			
+				long estimateSizeCBar = AprioriUtils.getEstimateSizeCBar(dataset.getNumTxns(), candidateItemsets[k]);
+				long freeMemory = getFreeMemory();
+			
+				if((!switch_to_aprioritid) && (estimateSizeCBar < freeMemory))
+				{
+					//if(k == 2)
+					//{
+						switch_to_aprioritid = true;
+						in_transition = true;
+						//System.out.println("Switching to AprioriTID at pass k = " + k);
+						//System.out.println("Estimated size of C_bar = " + estimateSizeCBar / 1024 + " KB.");
+						//System.out.println("Free memory = " + freeMemory / 1024 + " KB.");
+					//}
+				}
+			
+				if(!switch_to_aprioritid) //Do Apriori
+				{
+					generateLargeItemsets_Apriori(MiningUtils.getCountingReader(dataset, Algorithm.APRIORI_HYBRID, txnCache, itemRemap), candidateItemsets[k], minSupportCount, k);
+				}
+				else if(in_transition) //Make a switch
+				{
+					//System.out.println("Transition 1.");
+					candidateItemsetBars[k] = generate_C_bar_transient(PrefetchingReader.wrap(MiningUtils.getDatasetReader(dataset, Algorithm.APRIORI_HYBRID, txnCache, itemRemap)), candidateItemsets[k], k, dataset.getNumTxns());
+					//System.out.println("Transition 2.");
+					candidateItemsets[k].markLarge(minSupportCount);
+					in_transition = false;
+					// The later passes work off C_bar, so the memory of the transaction cache can go to it.
+					txnCache = null;
+					//System.out.println("Transition complete.");
+				}
+				else //Do AprioriTID
+				{
+					candidateItemsetBars[k] = generate_C_bar(candidateItemsetBars[k-1], candidateItemsets[k-1], candidateItemsets[k]);
+					candidateItemsets[k].markLarge(minSupportCount);
+				}
+				numCandidates = candidateItemsets[k].getSize();
 			}
 			candidateItemsetBars[k-1] = null;
 			candidateItemsets[k-1] = null;
@@ -159,14 +192,14 @@ public class AprioriHybrid {
 			/*
 			try {
 				long fileWriteStartTime = System.currentTimeMillis();
-				//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, k, largeItemsets[k], candidateItemsets[k].getItemsets());
+				//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, k, candidateItemsets[k], itemRemap);
 				fileWriteTime += System.currentTimeMillis() - fileWriteStartTime;
 			} catch (IOException e) {
 				System.err.println("Failed to write to file. Reason : " + e);
 			}
 			*/
-			candidateItemsetsCountPerPass.add(candidateItemsets[k].getItemsets().length);
-			candidateItemsetsBarCountPerPass.add(candidateItemsetBars[k].getItemsetbars().size());
+			candidateItemsetsCountPerPass.add(numCandidates);
+			candidateItemsetsBarCountPerPass.add(candidateItemsetBars[k] != null ? candidateItemsetBars[k].getSize() : 0);
 		}
 		/*
 		try {
@@ -188,189 +221,123 @@ public class AprioriHybrid {
 	}
 	
 	/* 
-	 * Given C_bar[k-1] and all itemsets, find C_bar[k].
+	 * Given C_bar[k-1] and the candidates of the last pass along with their extensions, find C_bar[k]
+	 * and count the support of the candidates of this pass. C_bar is held in a transaction batch
+	 * whose items are the ids of the candidates contained in each transaction.
 	 */
-	private static CandidateItemsetBar generate_C_bar(CandidateItemsetBar C_k_1_bar, ItemSet[] allItemsets, CandidateItemset C_k)
+	private static TransactionBatch generate_C_bar(TransactionBatch C_k_1_bar, CandidateTable C_k_1, CandidateTable C_k)
 	{
 		//System.out.println("In generate_C_bar().");
-		CandidateItemsetBar toReturn = new CandidateItemsetBar();
+		TransactionBatch toReturn = new TransactionBatch(C_k_1_bar.getSize());
 		
-		for(ItemSetBar itemsetbar : C_k_1_bar.getItemsetbars())	//1 transaction
+		// A candidate is contained in a transaction if both of its generators are, i.e. if it is
+		// reached as an extension twice. lastSeen[c] holds the last transaction it was reached in.
+		int[] lastSeen = new int[C_k.getSize()];
+		int[] candidatesInTrans = new int[C_k.getSize()];
+		int[] C_k_1_bar_ids = C_k_1_bar.getItems();
+		int[] extensions = C_k_1.getExtensions();
+		
+		for(int t = 0; t < C_k_1_bar.getSize(); t++)	//1 transaction
 		{
-			//System.out.println("In transaction: " + itemsetbar.getTid());
-			ItemSetBar k_itemset_bar = new ItemSetBar();
-			k_itemset_bar.setTid(itemsetbar.getTid());
-			
-			SortedMap<Integer, Integer> kitemset_support = new TreeMap<Integer, Integer>();
-			for(Integer Ck_1_id : itemsetbar.getCandidateItemsetId())
+			int numCandidatesInTrans = 0;
+			for(int i = C_k_1_bar.getItemsStart(t); i < C_k_1_bar.getItemsEnd(t); i++)
 			{
-				//System.out.println("Itemset in transaction: " + allItemsets[Ck_1_id].getItems());
-				for(Integer Ck_id : allItemsets[Ck_1_id].getExtensions())
+				int Ck_1_id = C_k_1_bar_ids[i];
+				for(int e = C_k_1.getExtensionsStart(Ck_1_id); e < C_k_1.getExtensionsEnd(Ck_1_id); e++)
 				{
-					//System.out.print("Extension = " + C_k.getItemsets()[Ck_id] + "; ");
-					if(kitemset_support.containsKey(Ck_id))
-					{
-						int support = kitemset_support.get(Ck_id);
-						kitemset_support.put(Ck_id, support + 1);
-						//System.out.println("Support = " + (support + 1));
-					}
+					int Ck_id = extensions[e];
+					if(lastSeen[Ck_id] == t + 1)
+						candidatesInTrans[numCandidatesInTrans++] = Ck_id;
 					else
-					{
-						kitemset_support.put(Ck_id, 1);
-						//System.out.println("Support = " + 1);
-					}
+						lastSeen[Ck_id] = t + 1;
 				}
-				
 			}
 			
-			SortedSet<Integer> keys = new TreeSet<Integer>(kitemset_support.keySet());
-			for(Integer key : keys)
+			if(numCandidatesInTrans > 0)
 			{
-				if(kitemset_support.get(key) >= 2)
-				{
-					k_itemset_bar.getCandidateItemsetId().add(key);
-					C_k.getItemsets()[key].incrementSupportCount();
-				}
+				Arrays.sort(candidatesInTrans, 0, numCandidatesInTrans);
+				for(int c = 0; c < numCandidatesInTrans; c++)
+					C_k.incrementSupportCount(candidatesInTrans[c]);
+				toReturn.add(C_k_1_bar.getTid(t), candidatesInTrans, 0, numCandidatesInTrans);
 			}
-			
-			if(k_itemset_bar.getCandidateItemsetId().size() > 0)
-				toReturn.getItemsetbars().add(k_itemset_bar);
 		}
 		
 		return toReturn;
 	}
 	
-	private static CandidateItemsetBar generate_C_bar_transient(InputReader reader, CandidateItemset C_k, int currItemsetSize)
+	/*
+	 * Builds C_bar of the pass at which the algorithm switches over to AprioriTID from the dataset,
+	 * counting the support of the candidates on the way.
+	 */
+	private static TransactionBatch generate_C_bar_transient(InputReader reader, CandidateTable C_k, int currItemsetSize, int numTxns)
 	{
 		//System.out.println("In generate_C_bar().");
-		CandidateItemsetBar toReturn = new CandidateItemsetBar();
+		TransactionBatch toReturn = new TransactionBatch(numTxns);
 		
-		HashTreeNode hashTreeRoot = HashTreeUtils.buildHashTree(C_k.getItemsets(), currItemsetSize);
+		CandidateIndex candidateIndex = Constants.CANDIDATE_INDEX_TYPE.newIndex(C_k);
+		int[] candidatesInTrans = new int[C_k.getSize()];
+		int[] stack = candidateIndex.newStack();
 		
-		while(reader.hasNextTransaction())
+		TransactionBatch batch = new TransactionBatch();
+		while(reader.nextBatch(batch) > 0)
 		{
-			Transaction txn = reader.getNextTransaction();
-			//System.out.println("In transaction: " + txn.getTid());
-			ItemSetBar k_itemset_bar = new ItemSetBar();
-			k_itemset_bar.setTid(txn.getTid());
-			
-			List<ItemSet> candidateSetsInTrans = HashTreeUtils.findItemsets(hashTreeRoot, txn, 0);
-			for(ItemSet c : candidateSetsInTrans) {
-				c.setSupportCount(c.getSupportCount() + 1);
-				k_itemset_bar.getCandidateItemsetId().add(c.getIndex());
+			int[] items = batch.getItems();
+			for(int t = 0; t < batch.getSize(); t++)
+			{
+				if(batch.getItemsEnd(t) - batch.getItemsStart(t) < currItemsetSize)
+					continue;
+				//System.out.println("In transaction: " + batch.getTid(t));
+				int numCandidatesInTrans = 
+						candidateIndex.findCandidates(items, batch.getItemsStart(t), batch.getItemsEnd(t), candidatesInTrans, 0, stack);
+				if(numCandidatesInTrans == 0)
+					continue;
+				for(int c = 0; c < numCandidatesInTrans; c++) {
+					C_k.incrementSupportCount(candidatesInTrans[c]);
+				}
+				
+				if(toReturn.isFull())
+					toReturn.ensureCapacity(2 * toReturn.getCapacity());
+				toReturn.add(batch.getTid(t), candidatesInTrans, 0, numCandidatesInTrans);
 			}
-			
-			if(k_itemset_bar.getCandidateItemsetId().size() > 0)
-				toReturn.getItemsetbars().add(k_itemset_bar);
 		}
 		
 		return toReturn;
 	}
 
-	private static LargeItemset generateLargeItemsets_Apriori(InputReader reader, CandidateItemset candidateItemset, int minSupportCount, int currItemsetSize) {
+	/*
+	 * Counts the support of the candidates over the dataset and marks the large ones.
+	 */
+	private static void generateLargeItemsets_Apriori(InputReader reader, CandidateTable candidateItemsets, int minSupportCount, int currItemsetSize) {
 		
 		//System.out.println("In generateLargeItemsets().");
 		
-		HashTreeNode hashTreeRoot = HashTreeUtils.buildHashTree(candidateItemset.getItemsets(), currItemsetSize);
-		
-		while(reader.hasNextTransaction()) {
-			Transaction txn = reader.getNextTransaction();
-			List<ItemSet> candidateSetsInTrans = HashTreeUtils.findItemsets(hashTreeRoot, txn, 0);
-			for(ItemSet c : candidateSetsInTrans) {
-				c.setSupportCount(c.getSupportCount() + 1);
-			}
-		}
+		CandidateIndex candidateIndex = Constants.CANDIDATE_INDEX_TYPE.newIndex(candidateItemsets);
+		//System.out.println(candidateIndex);
+		CountingStrategy countingStrategy = CandidateCounter.countCandidates(reader, candidateIndex, candidateItemsets, currItemsetSize);
+		//System.out.println("Counted " + candidateItemsets.getSize() + " candidates of pass#" + currItemsetSize + " with " + countingStrategy);
 		
-		LargeItemset largeItemset = new LargeItemset();
-		int index = 0;
-		for(ItemSet itemset : candidateItemset.getItemsets())
-		{
-			if(itemset == null)
-				break;
-			if(itemset.getSupportCount() >= minSupportCount)
-				largeItemset.getItemsetIds().add(index);
-			index++;
-		}
-		
-		return largeItemset;
+		candidateItemsets.markLarge(minSupportCount);
 	}
 	
-	private static LargeItemset generateLargeItemsets_AprioriTID(CandidateItemset candidateItemset, int minSupportCount) {
-		
-		//System.out.println("In generateLargeItemsets().");
+	/*
+	 * Counts the support of all the pairs of the numItems frequent items over the dataset.
+	 */
+	private static PairCountMatrix generateLargePairs_Apriori(InputReader reader, int numItems) {
 		
-		LargeItemset largeItemset = new LargeItemset();
-		int index = 0;
-		for(ItemSet itemset : candidateItemset.getItemsets())
-		{
-			if(itemset == null)
-				break;
-			if(itemset.getSupportCount() >= minSupportCount)
-				largeItemset.getItemsetIds().add(index);
-			index++;
-		}
+		//System.out.println("In generateLargePairs().");
 		
-		return largeItemset;
+		return CandidateCounter.countPairs(reader, numItems);
 	}
 	
-	private static void getInitialCandidateItemsets(InputReader reader, CandidateItemset C) {
+	private static void getInitialCandidateItemsets(int[] itemSupportCounts, CandidateTable C) {
 		//System.out.println("In getInitialCandidateItemsets().");
-		SortedMap<Integer, Integer> itemset_support = new TreeMap<Integer, Integer>();
-		
-		//This loop counts support.
-		while(reader.hasNextTransaction())
-		{
-			Transaction t = reader.getNextTransaction();
-		
-			for(Integer i : t.getItems())
-			{
-				if(itemset_support.containsKey(i))
-				{
-					int support = itemset_support.get(i);
-					itemset_support.put(i, support + 1);
-				}
-				else
-				{
-					itemset_support.put(i, 1);
-				}
-			}
-		}
 		
-		//This part sorts and creates candidate itemsets.
-		SortedSet<Integer> keys = new TreeSet<Integer>(itemset_support.keySet());
-		Map<Integer, Integer> itemset_pos = new HashMap<Integer, Integer>(); 
-		int index = 0;
-		for(Integer item : keys)
+		//This part creates candidate itemsets in the sorted order of items.
+		for(int item = 0; item < itemSupportCounts.length; item++)
 		{
-			Integer support = itemset_support.get(item);
-			C.getItemsets()[index] = new ItemSet();
-			C.getItemsets()[index].getItems().add(item);
-			C.getItemsets()[index].setSupportCount(support);
-			
-			itemset_pos.put(item, index);
-			index++;
-		}
-	}
-
-	private static void getInitialLargeItemsets(CandidateItemset C, int minSupportCount, LargeItemset L)
-	{
-		int index = 0;
-		for(ItemSet itemset : C.getItemsets()) {
-			if(itemset == null)
-				break;
-			if(itemset.getSupportCount() >= minSupportCount)
-				L.getItemsetIds().add(index);
-			index++;
+			if(itemSupportCounts[item] == 0)
+				continue;
+			C.add(item, itemSupportCounts[item]);
 		}
 	}
-	
-		
-	/*
-	 * Gets a iterative reader to the dataset and algorithm corresponding to the current experiment.
-	 */
-	private static InputReader getDatasetReader(Dataset dataset)
-	{
-		return new FileReader(dataset, Algorithm.APRIORI_HYBRID);
-	}
-
 }
@@ -3,29 +3,24 @@ package algos;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 import com.google.common.collect.Lists;
 
 import model.Algorithm;
-import model.CandidateItemset;
+import model.CandidateTable;
 import model.Dataset;
-import model.ItemSet;
-import model.LargeItemset;
 import model.MinSup;
+import model.PairCountMatrix;
 import model.Transaction;
-import model.aprioritid.CandidateItemsetBar;
-import model.aprioritid.ItemSetBar;
+import model.TransactionBatch;
 import util.AprioriUtils;
 import util.DBReader;
 import util.FileReader;
 import util.InputReader;
+import util.ItemRemap;
+import util.MiningUtils;
 import util.OutputUtils;
 
 
@@ -46,53 +41,87 @@ public class AprioriTid {
 	}
 	
 	/* 
-	 * Given C_bar[k-1] and all itemsets, find C_bar[k].
+	 * Given C_bar[k-1] and the candidates of the last pass along with their extensions, find C_bar[k]
+	 * and count the support of the candidates of this pass. C_bar is held in a transaction batch
+	 * whose items are the ids of the candidates contained in each transaction.
 	 */
-	private static CandidateItemsetBar generate_C_bar(CandidateItemsetBar C_k_1_bar, ItemSet[] allItemsets, CandidateItemset C_k)
+	private static TransactionBatch generate_C_bar(TransactionBatch C_k_1_bar, CandidateTable C_k_1, CandidateTable C_k)
 	{
 		//System.out.println("In generate_C_bar().");
-		CandidateItemsetBar toReturn = new CandidateItemsetBar();
+		TransactionBatch toReturn = new TransactionBatch(C_k_1_bar.getSize());
 		
-		for(ItemSetBar itemsetbar : C_k_1_bar.getItemsetbars())	//1 transaction
+		// A candidate is contained in a transaction if both of its generators are, i.e. if it is
+		// reached as an extension twice. lastSeen[c] holds the last transaction it was reached in.
+		int[] lastSeen = new int[C_k.getSize()];
+		int[] candidatesInTrans = new int[C_k.getSize()];
+		int[] C_k_1_bar_ids = C_k_1_bar.getItems();
+		int[] extensions = C_k_1.getExtensions();
+		
+		for(int t = 0; t < C_k_1_bar.getSize(); t++)	//1 transaction
 		{
-			//System.out.println("In transaction: " + itemsetbar.getTid());
-			ItemSetBar k_itemset_bar = new ItemSetBar();
-			k_itemset_bar.setTid(itemsetbar.getTid());
-			
-			SortedMap<Integer, Integer> kitemset_support = new TreeMap<Integer, Integer>();
-			for(Integer Ck_1_id : itemsetbar.getCandidateItemsetId())
+			int numCandidatesInTrans = 0;
+			for(int i = C_k_1_bar.getItemsStart(t); i < C_k_1_bar.getItemsEnd(t); i++)
 			{
-				//System.out.println("Itemset in transaction: " + allItemsets[Ck_1_id].getItems());
-				for(Integer Ck_id : allItemsets[Ck_1_id].getExtensions())
+				int Ck_1_id = C_k_1_bar_ids[i];
+				for(int e = C_k_1.getExtensionsStart(Ck_1_id); e < C_k_1.getExtensionsEnd(Ck_1_id); e++)
 				{
-					//System.out.print("Extension = " + C_k.getItemsets()[Ck_id] + "; ");
-					if(kitemset_support.containsKey(Ck_id))
-					{
-						int support = kitemset_support.get(Ck_id);
-						kitemset_support.put(Ck_id, support + 1);
-						//System.out.println("Support = " + (support + 1));
-					}
+					int Ck_id = extensions[e];
+					if(lastSeen[Ck_id] == t + 1)
+						candidatesInTrans[numCandidatesInTrans++] = Ck_id;
 					else
-					{
-						kitemset_support.put(Ck_id, 1);
-						//System.out.println("Support = " + 1);
-					}
+						lastSeen[Ck_id] = t + 1;
 				}
-				
 			}
 			
-			SortedSet<Integer> keys = new TreeSet<Integer>(kitemset_support.keySet());
-			for(Integer key : keys)
+			if(numCandidatesInTrans > 0)
 			{
-				if(kitemset_support.get(key) >= 2)
-				{
-					k_itemset_bar.getCandidateItemsetId().add(key);
-					C_k.getItemsets()[key].incrementSupportCount();
-				}
+				Arrays.sort(candidatesInTrans, 0, numCandidatesInTrans);
+				for(int c = 0; c < numCandidatesInTrans; c++)
+					C_k.incrementSupportCount(candidatesInTrans[c]);
+				toReturn.add(C_k_1_bar.getTid(t), candidatesInTrans, 0, numCandidatesInTrans);
 			}
-			
-			if(k_itemset_bar.getCandidateItemsetId().size() > 0)
-				toReturn.getItemsetbars().add(k_itemset_bar);
+		}
+		
+		return toReturn;
+	}
+
+	/*
+	 * Counts the support of all the pairs of frequent items over C_bar[1], which holds the ranks of
+	 * the items of each transaction, and returns the large ones as C2.
+	 */
+	private static CandidateTable generateLargePairs(TransactionBatch C_1_bar, PairCountMatrix pairCounts, int minSupportCount)
+	{
+		//System.out.println("In generateLargePairs().");
+		int[] items = C_1_bar.getItems();
+		for(int t = 0; t < C_1_bar.getSize(); t++)
+		{
+			pairCounts.countPairs(items, C_1_bar.getItemsStart(t), C_1_bar.getItemsEnd(t));
+		}
+		
+		return pairCounts.getLargeItemsets(minSupportCount);
+	}
+	
+	/*
+	 * Builds C_bar[2] from C_bar[1] once the large pairs have been materialized, holding the ids of
+	 * the large pairs in each transaction. The other candidates cannot be a generator of any
+	 * candidate of the next pass, so they are left out.
+	 */
+	private static TransactionBatch generate_C_bar_2(TransactionBatch C_1_bar, PairCountMatrix pairCounts)
+	{
+		//System.out.println("In generate_C_bar_2().");
+		TransactionBatch toReturn = new TransactionBatch(C_1_bar.getSize());
+		
+		int[] items = C_1_bar.getItems();
+		int[] pairsInTrans = new int[0];
+		for(int t = 0; t < C_1_bar.getSize(); t++)
+		{
+			int numItems = C_1_bar.getItemsEnd(t) - C_1_bar.getItemsStart(t);
+			if(pairsInTrans.length < numItems * (numItems - 1) / 2)
+				pairsInTrans = new int[numItems * (numItems - 1) / 2];
+			int numPairsInTrans = 
+					pairCounts.findLargePairs(items, C_1_bar.getItemsStart(t), C_1_bar.getItemsEnd(t), pairsInTrans, 0);
+			if(numPairsInTrans > 0)
+				toReturn.add(C_1_bar.getTid(t), pairsInTrans, 0, numPairsInTrans);
 		}
 		
 		return toReturn;
@@ -116,36 +145,37 @@ public class AprioriTid {
 		List<Integer> candidateItemsetsBarCountPerPass = Lists.newArrayList();
 		//long fileWriteTime = 0;
 
-		List<Transaction> transactions = new ArrayList<Transaction>();
+		List<Transaction> transactions = new ArrayList<Transaction>(dataset.getNumTxns());
 		
 		while(reader.hasNextTransaction()) {
 			transactions.add(reader.getNextTransaction());
 		}
 		
 		int minSupportCount = (int)(minSup.getMinSupPercentage() * transactions.size())/100;
-		MAX_K = 400 * dataset.getAvgTxnSize();
+		MAX_K = MiningUtils.getMaxNumPasses(dataset);
 		
 		long passStartTime = System.currentTimeMillis();
-		LargeItemset[] largeItemsets = new LargeItemset[MAX_K];
-		CandidateItemset[] candidateItemsets = new CandidateItemset[MAX_K];
-		CandidateItemsetBar[] candidateItemsetBars = new CandidateItemsetBar[MAX_K];
+		// The candidates of each pass, which also mark the large itemsets among them.
+		CandidateTable[] candidateItemsets = new CandidateTable[MAX_K];
+		TransactionBatch[] candidateItemsetBars = new TransactionBatch[MAX_K];
 		
-		candidateItemsets[1] = new CandidateItemset(MAX_K);
-		candidateItemsetBars[1] = new CandidateItemsetBar();
-		largeItemsets[1] = new LargeItemset();
-		getInitialCandidateItemsets(transactions, candidateItemsets[1], candidateItemsetBars[1]);
-		getInitialLargeItemsets(candidateItemsets[1], minSupportCount, largeItemsets[1]);
+		// The later passes, and C_bar, only see the frequent items, renumbered to their ranks.
+		ItemRemap itemRemap = new ItemRemap(getItemSupportCounts(dataset, transactions), minSupportCount);
+		candidateItemsets[1] = new CandidateTable(1, itemRemap.getNumRanks());
+		candidateItemsetBars[1] = new TransactionBatch(transactions.size());
+		getInitialCandidateItemsets(transactions, itemRemap, candidateItemsets[1], candidateItemsetBars[1]);
+		candidateItemsets[1].markLarge(minSupportCount);
 		
 		long passEndTime = System.currentTimeMillis();
 		//System.out.println("Time for pass#1 : " + (passEndTime - passStartTime)/1000 + " s .");
 
-		candidateItemsetsCountPerPass.add(candidateItemsets[1].getItemsets().length);
-		candidateItemsetsBarCountPerPass.add(candidateItemsetBars[1].getItemsetbars().size());
+		candidateItemsetsCountPerPass.add(itemRemap.getNumDistinctItems());
+		candidateItemsetsBarCountPerPass.add(candidateItemsetBars[1].getSize());
 		// Write large itemsets to file
 		/*
 		try {
 			long fileWriteStartTime = System.currentTimeMillis();
-			//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, 1, largeItemsets[1], candidateItemsets[1].getItemsets());
+			//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, 1, candidateItemsets[1], itemRemap);
 			//fileWriteTime += System.currentTimeMillis() - fileWriteStartTime;
 		} catch (IOException e) {
 			System.err.println("Failed to write to file. Reason : " + e);
@@ -154,22 +184,33 @@ public class AprioriTid {
 
 		long bottleNeckStartTime = 0;
 		long bottleNeckEndTime = 0;
-		for(int k = 2; largeItemsets[k-1].getItemsetIds().size() != 0; k++)
+		for(int k = 2; candidateItemsets[k-1].getNumLarge() != 0; k++)
 		{
 			passStartTime = System.currentTimeMillis();
-			candidateItemsets[k] = new CandidateItemset(MAX_K);
-			candidateItemsets[k].setItemsets(AprioriUtils.apriori_gen(candidateItemsets[k-1].getItemsets(), largeItemsets[k-1].getItemsetIds(), k - 1));
-			
+			int numCandidates = 0;
 			if(k == 2)
+			{
+				// Every pair of frequent items is a candidate of the second pass, so the pairs are
+				// counted straight in the pair count matrix and only the large ones make it to C2,
+				// and to C_bar.
 				bottleNeckStartTime = System.currentTimeMillis();
-			candidateItemsetBars[k] = generate_C_bar(candidateItemsetBars[k-1], candidateItemsets[k-1].getItemsets(), candidateItemsets[k]);
-			if(k == 2)
+				PairCountMatrix pairCounts = new PairCountMatrix(candidateItemsets[1].getSize());
+				candidateItemsets[k] = generateLargePairs(candidateItemsetBars[k-1], pairCounts, minSupportCount);
+				candidateItemsetBars[k] = generate_C_bar_2(candidateItemsetBars[k-1], pairCounts);
+				numCandidates = pairCounts.getNumPairs();
 				bottleNeckEndTime = System.currentTimeMillis();
+			}
+			else
+			{
+				candidateItemsets[k] = AprioriUtils.apriori_gen(candidateItemsets[k-1]);
+				candidateItemsets[k-1].buildExtensions(candidateItemsets[k]);
+				candidateItemsetBars[k] = generate_C_bar(candidateItemsetBars[k-1], candidateItemsets[k-1], candidateItemsets[k]);
+				candidateItemsets[k].markLarge(minSupportCount);
+				numCandidates = candidateItemsets[k].getSize();
+			}
 
 			candidateItemsetBars[k-1] = null;
 			candidateItemsets[k-1] = null;
-			largeItemsets[k-1] = null; 
-			largeItemsets[k] = generateLargeItemsets(candidateItemsets[k], minSupportCount);
 	
 			passEndTime = System.currentTimeMillis();
 			//System.out.println("Time for pass#" + k + " : " + (passEndTime - passStartTime)/1000 + " s .");
@@ -178,19 +219,15 @@ public class AprioriTid {
 			/*
 			try {
 				long fileWriteStartTime = System.currentTimeMillis();
-				//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, k, largeItemsets[k], candidateItemsets[k].getItemsets());
+				//OutputUtils.writeLargeItemsetsToFile(largeItemsetsFile, k, candidateItemsets[k], itemRemap);
 				//fileWriteTime += System.currentTimeMillis() - fileWriteStartTime;
 			} catch (IOException e) {
 				System.err.println("Failed to write to file. Reason : " + e);
 			}
 			*/
 
-			candidateItemsetsCountPerPass.add(candidateItemsets[k].getItemsets().length);
-			int numCandSetsInItemsetBar = 0;
-			for(ItemSetBar itemsetbar : candidateItemsetBars[k].getItemsetbars()) {
-				numCandSetsInItemsetBar += itemsetbar.getCandidateItemsetId().size();
-			}
-			candidateItemsetsBarCountPerPass.add(numCandSetsInItemsetBar);
+			candidateItemsetsCountPerPass.add(numCandidates);
+			candidateItemsetsBarCountPerPass.add(candidateItemsetBars[k].getNumItems());
 		}
 		/*
 		try {
@@ -210,91 +247,60 @@ public class AprioriTid {
 		return timeTaken;
 	}
 	
-	private static LargeItemset generateLargeItemsets(CandidateItemset candidateItemset, int minSupportCount) {
-		
-		//System.out.println("In generateLargeItemsets().");
-		
-		LargeItemset largeItemset = new LargeItemset();
-		int index = 0;
-		for(ItemSet itemset : candidateItemset.getItemsets())
-		{
-			if(itemset == null)
-				break;
-			if(itemset.getSupportCount() >= minSupportCount)
-				largeItemset.getItemsetIds().add(index);
-			index++;
-		}
-		
-		return largeItemset;
-	}
-
-	private static void getInitialCandidateItemsets(List<Transaction> transactions, CandidateItemset C, CandidateItemsetBar C_) {
-		//System.out.println("In getInitialCandidateItemsets().");
-		SortedMap<Integer, Integer> itemset_support = new TreeMap<Integer, Integer>();
-		
-		//This loop counts support.
+	/*
+	 * Counts the support of every item over the transactions read in memory.
+	 */
+	private static int[] getItemSupportCounts(Dataset dataset, List<Transaction> transactions)
+	{
+		int[] itemSupportCounts = new int[MiningUtils.getNumItemIds(dataset)];
 		for(Transaction t : transactions)
 		{
-			for(Integer i : t.getItems())
+			for(int i : t.getItems())
 			{
-				if(itemset_support.containsKey(i))
-				{
-					int support = itemset_support.get(i);
-					itemset_support.put(i, support + 1);
-				}
-				else
-				{
-					itemset_support.put(i, 1);
-				}
+				if(i >= itemSupportCounts.length)
+					itemSupportCounts = Arrays.copyOf(itemSupportCounts, Math.max(i + 1, itemSupportCounts.length * 2));
+				itemSupportCounts[i]++;
 			}
 		}
+		return itemSupportCounts;
+	}
+
+	private static void getInitialCandidateItemsets(List<Transaction> transactions, ItemRemap itemRemap, CandidateTable C, TransactionBatch C_) {
+		//System.out.println("In getInitialCandidateItemsets().");
 		
-		//This part sorts and creates candidate itemsets.
-		SortedSet<Integer> keys = new TreeSet<Integer>(itemset_support.keySet());
-		Map<Integer, Integer> itemset_pos = new HashMap<Integer, Integer>(); 
-		int index = 0;
-		for(Integer item : keys)
+		//This part creates candidate itemsets in the order of the ranks of the frequent items.
+		int[] rankSupportCounts = itemRemap.getRankSupportCounts();
+		for(int rank = 0; rank < rankSupportCounts.length; rank++)
 		{
-			Integer support = itemset_support.get(item);
-			C.getItemsets()[index] = new ItemSet();
-			C.getItemsets()[index].getItems().add(item);
-			C.getItemsets()[index].setSupportCount(support);
-			
-			itemset_pos.put(item, index);
-			index++;
+			C.add(rank, rankSupportCounts[rank]);
 		}
 		
-		//This part creates C_.
+		//This part creates C_, leaving out the infrequent items and the transactions which are left
+		//with less than 2 items, since they cannot contain any candidate of the later passes.
+		int[] ranks = new int[0];
 		for(Transaction t : transactions)
 		{
-			ItemSetBar itemsetbar = new ItemSetBar();
-			itemsetbar.setTid(t.getTid());
-			for(Integer i : t.getItems())
+			if(ranks.length < t.size())
+				ranks = new int[t.size()];
+			int numRanks = 0;
+			for(int i : t.getItems())
 			{
-				int pos = itemset_pos.get(i);
-				itemsetbar.getCandidateItemsetId().add(pos);
+				int rank = itemRemap.getRank(i);
+				if(rank >= 0)
+					ranks[numRanks++] = rank;
 			}
-			C_.getItemsetbars().add(itemsetbar);
+			if(numRanks < 2)
+				continue;
+			Arrays.sort(ranks, 0, numRanks);
+			C_.add(t.getTid(), ranks, 0, numRanks);
 		}
 	}
 
-	private static void getInitialLargeItemsets(CandidateItemset C, int minSupportCount, LargeItemset L)
-	{
-		int index = 0;
-		for(ItemSet itemset : C.getItemsets()) {
-			if(itemset == null)
-				break;
-			if(itemset.getSupportCount() >= minSupportCount)
-				L.getItemsetIds().add(index);
-			index++;
-		}
-	}
-	
 	/*
 	 * Gets a iterative reader to the dataset and algorithm corresponding to the current experiment.
 	 */
 	private static InputReader getDatasetReader(Dataset dataset)
 	{
-		return new DBReader(dataset, Algorithm.APRIORI_TID);
+		return new DBReader(dataset, Algorithm.APRIORI_TID, DBReader.ReadMode.PARALLEL);
 	}
 }
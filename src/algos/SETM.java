@@ -132,9 +132,10 @@ public class SETM {
 		ResultSet results = DBUtils.executeSelectQuery(getLargeItemsetsQuery(itemsetSize));
 		try {
 			while(results.next()) {
-				List<Integer> items = Lists.newArrayList();
+				// The items of a large itemset come out of the join in the ascending order.
+				int[] items = new int[itemsetSize];
 				for(int itemIndex=1; itemIndex <= itemsetSize; itemIndex++) {
-					items.add(results.getInt(itemIndex));
+					items[itemIndex-1] = results.getInt(itemIndex);
 				}
 				
 				int supportCount = results.getInt(itemsetSize+1);
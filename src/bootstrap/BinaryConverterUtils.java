@@ -0,0 +1,115 @@
+package bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import model.Dataset;
+import util.BinaryTransactionFormat;
+import util.BinaryTransactionWriter;
+import util.TransactionTextParser;
+
+/**
+ * A simple utility class that converts the grouped text dataset files (one transaction per line as
+ * "tid item1 item2 ...") into the memory-mappable binary transaction store read by util.MappedFileReader.
+ *
+ * Usage :
+ * 	BinaryConverterUtils [-raw]                      - Converts every dataset under /data which has a text file.
+ * 	BinaryConverterUtils [-raw] <input> <output>     - Converts a single text file.
+ *
+ * Files are written in the compressed version of the format, unless -raw is given.
+ *
+ * @author shishir
+ *
+ */
+public class BinaryConverterUtils {
+
+	private static final int READ_BUFFER_SIZE = 4 << 20;
+
+	public static void main(String[] args) throws IOException
+	{
+		boolean isCompressed = true;
+		if(args.length > 0 && args[0].equals("-raw")) {
+			isCompressed = false;
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+
+		if(args.length >= 2) {
+			convert(new File(args[0]), new File(args[1]), isCompressed);
+			return;
+		}
+
+		String rootDir = new File(".").getCanonicalPath();
+		for(Dataset dataset : Dataset.values()) {
+			File inputFile = new File(rootDir + dataset.getDataFileLocation());
+			if(!inputFile.exists()) {
+				System.out.println("Skipping dataset " + dataset + ". No text file at " + inputFile);
+				continue;
+			}
+
+			File outputFile = new File(BinaryTransactionFormat.getBinaryFileLocation(inputFile.getPath()));
+			convert(inputFile, outputFile, isCompressed);
+		}
+	}
+
+	/*
+	 * Converts a text dataset file into the binary format. The file is parsed by the same
+	 * TransactionTextParser as util.FileReader, so both accept exactly the same files, and the items
+	 * of each transaction come out of it sorted.
+	 */
+	public static void convert(File inputFile, File outputFile, boolean isCompressed) throws IOException
+	{
+		long startTime = System.currentTimeMillis();
+
+		FileChannel channel = new FileInputStream(inputFile).getChannel();
+		BinaryTransactionWriter writer = new BinaryTransactionWriter(outputFile, isCompressed);
+		writer.setSourceFile(inputFile);
+		TransactionTextParser parser = new TransactionTextParser();
+
+		boolean isConverted = false;
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+			buffer.flip();
+			boolean isEndOfFile = false;
+			while(true) {
+				if(parser.parseNext(buffer, isEndOfFile)) {
+					writer.writeTransaction(parser.getTid(), parser.getItems(), parser.getNumItems());
+					continue;
+				}
+				if(isEndOfFile) {
+					break;
+				}
+
+				if(buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+					// A single line does not fit in the buffer. Grow it.
+					ByteBuffer biggerBuffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+					biggerBuffer.put(buffer);
+					biggerBuffer.flip();
+					buffer = biggerBuffer;
+				}
+				buffer.compact();
+				isEndOfFile = (channel.read(buffer) < 0);
+				buffer.flip();
+			}
+			isConverted = true;
+		}
+		catch(IOException e) {
+			throw new IOException("Failed to convert " + inputFile + " : " + e.getMessage(), e);
+		}
+		finally {
+			channel.close();
+			if(isConverted) {
+				writer.close();
+			}
+			else {
+				writer.abort();
+			}
+		}
+
+		System.out.println("#Converted " + writer.getNumTxns() + " transactions from " + inputFile +
+				" to " + outputFile + " (" + outputFile.length() + " bytes) in " + (System.currentTimeMillis() - startTime) + " ms.");
+	}
+}
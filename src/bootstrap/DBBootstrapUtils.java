@@ -1,35 +1,65 @@
 package bootstrap;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.Scanner;
+import java.sql.Statement;
+
+import model.Dataset;
+import util.Constants;
 
 /**
  * A simple utility class to bootstrap the intial datasets into MySQL database.
- * 
+ *
+ * The raw dataset file ("tid cid item" per line) is bulk loaded in one of two modes :
+ * 	- BATCH : Rows are sent as JDBC batches of a configurable size, one db transaction per batch.
+ * 	- FILE  : Rows are written to a CSV file which is then imported by the server in a single
+ * 	          LOAD DATA LOCAL INFILE statement.
+ *
+ * Either way, the (tid, itemID) and (itemID, tid) indexes are dropped before the load and only
+ * built once all the rows are in, which is much cheaper than maintaining them row by row.
+ *
+ * Usage :
+ * 	DBBootstrapUtils <raw files dir> [batch|file] [<batch size>]
+ * 	                        - Loads <dir>/<dataset table>.raw of every dataset, e.g. T10_I4_D100K.raw.
+ * 	DBBootstrapUtils <raw file> <db table> [batch|file] [<batch size>]
+ * 	                        - Loads a single file.
+ *
  * @author shishir
  *
  */
 public class DBBootstrapUtils {
 
+	public enum LoadMode {
+		BATCH, FILE
+	}
+
+	private static final int DEFAULT_BATCH_SIZE = 10000;
+
 	private static Connection dbConn = null;
 
 	// Initialise the db connection parameters
-	private static void preLoad() 
+	private static void preLoad()
 	{
 		try {
 			Class.forName("com.mysql.jdbc.Driver");
-			dbConn = DriverManager.getConnection("jdbc:mysql://localhost:3306", "db_user", "db_user");
+			// Without rewriteBatchedStatements the driver sends the rows of a batch one by one.
+			dbConn = DriverManager.getConnection("jdbc:mysql://localhost:3306?rewriteBatchedStatements=true&allowLoadLocalInfile=true",
+					"db_user", "db_user");
+			dbConn.setAutoCommit(false);
 			System.out.println("Opening connection to db ..");
 		} catch (Exception e) {
 			System.err.println("Failed to initialise db connection. Reason : " + e);
+			System.exit(1);
 		}
 
 	}
-	
+
 	// Release all the db connection resources
 	private static void postLoad() {
 		try {
@@ -38,69 +68,191 @@ public class DBBootstrapUtils {
 		} catch (SQLException e) {
 			System.out.println("Closing db connection ..");
 		}
-		
+
 	}
 
 	public static void main(String[] args) {
+		if(args.length < 1) {
+			System.err.println("Usage : DBBootstrapUtils <raw files dir> [batch|file] [<batch size>]");
+			System.err.println("        DBBootstrapUtils <raw file> <db table> [batch|file] [<batch size>]");
+			System.exit(1);
+		}
+
+		File src = new File(args[0]);
+		int optionsStart = src.isDirectory() ? 1 : 2;
+		LoadMode loadMode = LoadMode.BATCH;
+		if(args.length > optionsStart) {
+			loadMode = LoadMode.valueOf(args[optionsStart].toUpperCase());
+		}
+		int batchSize = DEFAULT_BATCH_SIZE;
+		if(args.length > optionsStart + 1) {
+			batchSize = Integer.parseInt(args[optionsStart + 1]);
+		}
+
 		preLoad();
-		
-		String srcFilesRootDir = "/home/shishir/DMProject/resources/synthetic_data_generator/datasets_raw";
-		loadIntoDB(srcFilesRootDir + "/T10.I4.D100K.raw", "mining_datasets.T10_I4_D100K");
-		loadIntoDB(srcFilesRootDir + "/T20.I2.D100K.raw", "mining_datasets.T20_I2_D100K");
-		loadIntoDB(srcFilesRootDir + "/T20.I4.D100K.raw", "mining_datasets.T20_I4_D100K");
-		loadIntoDB(srcFilesRootDir + "/T20.I6.D100K.raw", "mining_datasets.T20_I6_D100K");
-		
+
+		if(src.isDirectory()) {
+			for(Dataset dataset : Dataset.values()) {
+				String tableName = dataset.getDatasetDBTable();
+				File srcFile = new File(src, tableName.substring(tableName.indexOf('.') + 1) + ".raw");
+				if(!srcFile.exists()) {
+					System.out.println("Skipping dataset " + dataset + ". No raw file at " + srcFile);
+					continue;
+				}
+				loadIntoDB(srcFile, tableName, loadMode, batchSize);
+			}
+		}
+		else {
+			if(args.length < 2) {
+				System.err.println("Missing the db table to load " + src + " into.");
+				System.exit(1);
+			}
+			String tableName = args[1].contains(".") ? args[1] : Constants.DB_NAME + "." + args[1];
+			loadIntoDB(src, tableName, loadMode, batchSize);
+		}
+
 		postLoad();
 	}
 
 	/*
 	 * Loads the data from this source file into the destination table.
 	 */
-	private static void loadIntoDB(String srcFilePath, String dbTableName)
+	public static void loadIntoDB(File srcFile, String dbTableName, LoadMode loadMode, int batchSize)
 	{
-		Scanner fileScanner = null;
+		long startTime = System.currentTimeMillis();
+		long count = 0;
 		try {
-			fileScanner = new Scanner(new File(srcFilePath));
-		}
-		catch(Exception e) {
-			System.out.println("Failed to read the file.");
+			createTable(dbTableName);
+			dropIndexes(dbTableName);
+
+			if(loadMode == LoadMode.FILE) {
+				count = loadByFileImport(srcFile, dbTableName);
+			}
+			else {
+				count = loadByBatchInserts(srcFile, dbTableName, batchSize);
+			}
+			long loadEndTime = System.currentTimeMillis();
+
+			createIndexes(dbTableName);
+			System.out.println("#Inserted " + count + " rows in db table : " + dbTableName + " in " +
+					(loadEndTime - startTime) + " ms. Indexes built in " + (System.currentTimeMillis() - loadEndTime) + " ms.");
+		} catch (SQLException e) {
+			System.err.println("Failed to load " + srcFile + " into db table " + dbTableName + ". Reason : " + e);
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Failed to read the file " + srcFile + ". Reason : " + e);
 			System.exit(1);
 		}
+	}
 
-		int count=0;
-		PreparedStatement stmt = null;
+	/*
+	 * Inserts the rows through a prepared statement, executed and committed batchSize rows at a time.
+	 */
+	private static long loadByBatchInserts(File srcFile, String dbTableName, int batchSize) throws IOException, SQLException
+	{
+		long count = 0;
+		PreparedStatement stmt = dbConn.prepareStatement("INSERT INTO " + dbTableName + " (tid, cid, itemID) VALUES (?, ?, ?)");
+		RawRowReader rowReader = new RawRowReader(srcFile);
 		try {
-			stmt = dbConn.prepareStatement("INSERT INTO " + dbTableName + " VALUES (?, ?, ?)");
-		} catch (SQLException e1) {
-			System.err.println("Failed to create prepared statement. Reason : " + e1);
-			System.exit(1);
-		}
-		while(fileScanner.hasNext()) {
-			String line = fileScanner.nextLine().trim();
-			++count;
-			
-			String[] words = line.split("[\\s\\t]+");
-			int currTid = Integer.parseInt(words[0].trim());
-			int currCid = currTid;
-			int itemId = Integer.parseInt(words[2].trim());
-			
-			try {
+			while(rowReader.next()) {
+				int currTid = rowReader.getTid();
 				stmt.setInt(1, currTid);
-				stmt.setInt(2, currCid);
-				stmt.setInt(3, itemId);
+				stmt.setInt(2, currTid);
+				stmt.setInt(3, rowReader.getItem());
+				stmt.addBatch();
+
+				if(++count % batchSize == 0) {
+					stmt.executeBatch();
+					dbConn.commit();
+				}
+			}
+			stmt.executeBatch();
+			dbConn.commit();
+		}
+		finally {
+			rowReader.close();
+			stmt.close();
+		}
+
+		return count;
+	}
+
+	/*
+	 * Writes the rows to a temporary CSV file and has the server import it in one statement.
+	 */
+	private static long loadByFileImport(File srcFile, String dbTableName) throws IOException, SQLException
+	{
+		long count = 0;
+		File csvFile = File.createTempFile(srcFile.getName(), ".csv");
+		csvFile.deleteOnExit();
 
-				stmt.execute();
+		RawRowReader rowReader = new RawRowReader(srcFile);
+		BufferedWriter writer = new BufferedWriter(new FileWriter(csvFile), 1 << 20);
+		try {
+			while(rowReader.next()) {
+				int currTid = rowReader.getTid();
+				writer.write(Integer.toString(currTid));
+				writer.write(',');
+				writer.write(Integer.toString(currTid));
+				writer.write(',');
+				writer.write(Integer.toString(rowReader.getItem()));
+				writer.write('\n');
+				++count;
+			}
+		}
+		finally {
+			rowReader.close();
+			writer.close();
+		}
+
+		Statement stmt = dbConn.createStatement();
+		try {
+			stmt.execute("LOAD DATA LOCAL INFILE '" + csvFile.getAbsolutePath().replace("\\", "/") + "' INTO TABLE " + dbTableName +
+					" FIELDS TERMINATED BY ',' LINES TERMINATED BY '\\n' (tid, cid, itemID)");
+			dbConn.commit();
+		}
+		finally {
+			stmt.close();
+			csvFile.delete();
+		}
+
+		return count;
+	}
+
+	private static void createTable(String dbTableName) throws SQLException
+	{
+		executeUpdate("CREATE TABLE IF NOT EXISTS " + dbTableName + " (tid INT NOT NULL, cid INT NOT NULL, itemID INT NOT NULL)");
+	}
+
+	/*
+	 * Drops the indexes left over from an earlier load, if any.
+	 */
+	private static void dropIndexes(String dbTableName)
+	{
+		for(String indexName : new String[] {"idx_tid_item", "idx_item_tid"}) {
+			try {
+				executeUpdate("DROP INDEX " + indexName + " ON " + dbTableName);
 			} catch (SQLException e) {
-				System.out.println("Failed to execute SQL query ..");
+				// The index does not exist.
 			}
 		}
-		
+	}
+
+	private static void createIndexes(String dbTableName) throws SQLException
+	{
+		executeUpdate("CREATE INDEX idx_tid_item ON " + dbTableName + " (tid, itemID)");
+		executeUpdate("CREATE INDEX idx_item_tid ON " + dbTableName + " (itemID, tid)");
+	}
+
+	private static void executeUpdate(String query) throws SQLException
+	{
+		Statement stmt = dbConn.createStatement();
 		try {
+			stmt.executeUpdate(query);
+			dbConn.commit();
+		}
+		finally {
 			stmt.close();
-		} catch (SQLException e) {
-			System.err.println("Failed to close the statement ..");
 		}
-		System.out.println("#Inserted " + count + " rows in db table : " + dbTableName);
 	}
-	
 }
@@ -0,0 +1,38 @@
+package bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+
+import model.Dataset;
+import util.DatasetStats;
+
+/**
+ * A simple utility class that computes the statistics sidecars of the datasets upfront, so that the
+ * first experiment on a dataset does not pay for the extra scan, and prints them.
+ *
+ * Usage :
+ * 	DatasetStatsUtils                 - Every registered dataset which has a data file.
+ * 	DatasetStatsUtils <data file>     - A single data file.
+ *
+ * @author shishir
+ *
+ */
+public class DatasetStatsUtils {
+
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length >= 1) {
+			System.out.println(args[0] + " : " + DatasetStats.getStats(new File(args[0])));
+			return;
+		}
+
+		for(Dataset dataset : Dataset.values()) {
+			DatasetStats stats = dataset.getStats();
+			if(stats == null) {
+				System.out.println("Skipping dataset " + dataset + ". No data file at " + dataset.getDataFileLocation());
+				continue;
+			}
+			System.out.println(dataset + " : " + stats);
+		}
+	}
+}
@@ -1,129 +1,408 @@
 package bootstrap;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.PriorityQueue;
+
+import util.BinaryTransactionFormat;
+import util.BinaryTransactionWriter;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 /**
- * A simple utility class that pre-processes the input dataset file to group all the 
- * items in a single transaction in a single line.
- * 
+ * A simple utility class that pre-processes the raw dataset file of the synthetic data generator
+ * (one "tid cid item" row per line) to group all the items in a single transaction in a single
+ * line, and/or into the binary transaction store read by util.MappedFileReader.
+ *
+ * Rows need not be grouped or ordered by tid. They are sorted by an external merge sort : the
+ * (tid, item) pairs are packed into longs and collected in a buffer of bounded size, every full
+ * buffer is sorted and spilled to a temporary run file, and the runs are finally merged into the
+ * output. Items of every transaction thus come out sorted, and the memory used is the sort buffer
+ * whatever the size of the input.
+ *
+ * Usage :
+ * 	FilePreProcessorUtils <raw input file> <output file> [text|binary|both] [<sort buffer MB>]
+ *
+ * The binary file is written next to the text one, at <output file>.bin.
+ *
  * @author shishir
  *
  */
 public class FilePreProcessorUtils {
 
-	private static String inputFileLoc = "/home/shishir/DMProject/resources/synthetic_data_generator/T20.I6.D10000K.raw";//args[0]; // Complete source file path as input
-	private static String outputFileLoc = "/home/shishir/workspace/DMProject/data/T20.I6.D10000K"; //args[1]; // Complete destination file path as input
+	private static final int DEFAULT_SORT_BUFFER_MB = 256;
+	private static final int IO_BUFFER_SIZE = 1 << 20;
 
-	private static int batchWriteThreshold = 10000;
-	
-	public static void main(String[] args) throws IOException{
-		readAndBatchWriteTxnLines(inputFileLoc);
-		System.out.println("File pre-processing completed for dataset " + inputFileLoc);
+	public enum OutputFormat {
+		TEXT, BINARY, BOTH
 	}
-	
+
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 2) {
+			System.err.println("Usage : FilePreProcessorUtils <raw input file> <output file> [text|binary|both] [<sort buffer MB>]");
+			System.exit(1);
+		}
+
+		OutputFormat outputFormat = OutputFormat.TEXT;
+		if(args.length > 2) {
+			outputFormat = OutputFormat.valueOf(args[2].toUpperCase());
+		}
+		int sortBufferMB = DEFAULT_SORT_BUFFER_MB;
+		if(args.length > 3) {
+			sortBufferMB = Integer.parseInt(args[3]);
+		}
+
+		long startTime = System.currentTimeMillis();
+		int numTxns = preProcess(new File(args[0]), new File(args[1]), outputFormat, sortBufferMB);
+		System.out.println("File pre-processing completed for dataset " + args[0] + ". Number of transactions in the dataset : " +
+				numTxns + ". Time taken : " + (System.currentTimeMillis() - startTime) + " ms.");
+	}
+
 	/*
-	 * Reads all the lines in a input file and concatenates items belonging to same transaction as
-	 * space separated values.
+	 * Converts the raw input file into the grouped output file(s).
+	 *
+	 * @returns Number of transactions written.
 	 */
-	private static void readAndBatchWriteTxnLines(String inputFileLoc) throws IOException
+	public static int preProcess(File inputFile, File outputFile, OutputFormat outputFormat, int sortBufferMB) throws IOException
 	{
-		Map<Integer, List<Integer>> txnItemsMap = Maps.newLinkedHashMap();
-		List<String> txnLines = Lists.newArrayList();
+		long[] sortBuffer = new long[(int)Math.min(Integer.MAX_VALUE - 8, (long)sortBufferMB * (1 << 20) / 8)];
+		int numPairs = 0;
+		List<File> runFiles = Lists.newArrayList();
 
-		Scanner fileScanner = null;
+		// Phase 1 : Sort the pairs in chunks of the sort buffer size, spilling each chunk as a run.
+		RawRowReader rowReader = new RawRowReader(inputFile);
 		try {
-			fileScanner = new Scanner(new File(inputFileLoc));
+			while(rowReader.next()) {
+				if(numPairs == sortBuffer.length) {
+					Arrays.sort(sortBuffer, 0, numPairs);
+					runFiles.add(writeRun(sortBuffer, numPairs, outputFile.getAbsoluteFile().getParentFile()));
+					System.out.println("#Spilled run " + runFiles.size() + " of " + numPairs + " rows.");
+					numPairs = 0;
+				}
+				sortBuffer[numPairs++] = toPair(rowReader.getTid(), rowReader.getItem());
+			}
 		}
-		catch(Exception e) {
-			System.err.println("Failed to read the dataset file . Reason : " + e);
+		finally {
+			rowReader.close();
 		}
-		
-		int countTid = 0;
-		while(fileScanner.hasNext()) {
-			String currLine = fileScanner.nextLine().trim();
-			String[] words = currLine.split("[\\s\\t]+");
+		Arrays.sort(sortBuffer, 0, numPairs);
 
-			int currTid = Integer.parseInt(words[0].trim());
-			int currItemId = Integer.parseInt(words[2].trim());
-			
-			List<Integer> items = null;
-			if(txnItemsMap.containsKey(currTid)) {
-				items = txnItemsMap.get(currTid);
-				items.add(currItemId);
+		// Phase 2 : Merge the runs, along with the last chunk still in memory, into the output.
+		TransactionSink sink = new TransactionSink(outputFile, outputFormat);
+		List<RunCursor> cursors = Lists.newArrayList();
+		boolean isMerged = false;
+		try {
+			int bufferSize = (int)Math.max(64 << 10, Math.min(IO_BUFFER_SIZE, ((long)sortBufferMB << 20) / (runFiles.size() + 1)));
+			for(File runFile : runFiles) {
+				cursors.add(new FileRunCursor(runFile, bufferSize));
+			}
+			cursors.add(new MemoryRunCursor(sortBuffer, numPairs));
+
+			merge(cursors, sink);
+			isMerged = true;
+		}
+		finally {
+			if(isMerged) {
+				sink.close();
 			}
 			else {
-				// Write to file in batches
-				if(countTid % batchWriteThreshold == 0) {
-					for(Map.Entry<Integer, List<Integer>> entry : txnItemsMap.entrySet()) {
-						StringBuilder builder = new StringBuilder();
-						builder.append(entry.getKey().toString()).append(" ");
-						for(Integer item : entry.getValue()) {
-							builder.append(item.toString()).append(" ");
-						}
-						
-						txnLines.add(builder.toString().trim());
-					}
-					
-					writeTxnLines(txnLines, outputFileLoc);
-					
-					txnItemsMap = Maps.newLinkedHashMap();
-					txnLines = Lists.newArrayList();
-					System.out.println("#wrote txns : " + countTid);
-				}
+				sink.abort();
+			}
+			for(RunCursor cursor : cursors) {
+				cursor.close();
+			}
+			for(File runFile : runFiles) {
+				runFile.delete();
+			}
+		}
 
-				++countTid;
-				items = Lists.newArrayList(currItemId);
+		return sink.getNumTxns();
+	}
+
+	/*
+	 * K-way merge of the sorted runs. Pairs come out ordered by tid and then by item, so the items
+	 * of a transaction are collected till the tid changes.
+	 */
+	private static void merge(List<RunCursor> cursors, TransactionSink sink) throws IOException
+	{
+		PriorityQueue<RunCursor> heap = new PriorityQueue<RunCursor>(cursors.size() + 1, new Comparator<RunCursor>() {
+			@Override
+			public int compare(RunCursor c1, RunCursor c2) {
+				return c1.getCurrent() < c2.getCurrent() ? -1 : (c1.getCurrent() == c2.getCurrent() ? 0 : 1);
+			}
+		});
+		for(RunCursor cursor : cursors) {
+			if(cursor.advance()) {
+				heap.add(cursor);
 			}
-			txnItemsMap.put(currTid, items);
-			
 		}
 
-		fileScanner.close();
-		
-		for(Map.Entry<Integer, List<Integer>> entry : txnItemsMap.entrySet()) {
-			StringBuilder builder = new StringBuilder();
-			builder.append(entry.getKey().toString()).append(" ");
-			for(Integer item : entry.getValue()) {
-				builder.append(item.toString()).append(" ");
+		int[] items = new int[64];
+		int numItems = 0;
+		int currTid = 0;
+		while(!heap.isEmpty()) {
+			RunCursor cursor = heap.poll();
+			long pair = cursor.getCurrent();
+			if(cursor.advance()) {
+				heap.add(cursor);
+			}
+
+			int tid = (int)(pair >> 32);
+			if(numItems > 0 && tid != currTid) {
+				sink.writeTransaction(currTid, items, numItems);
+				numItems = 0;
 			}
-			
-			txnLines.add(builder.toString().trim());
+			currTid = tid;
+			if(numItems == items.length) {
+				items = Arrays.copyOf(items, items.length * 2);
+			}
+			items[numItems++] = (int)pair;
+		}
+		if(numItems > 0) {
+			sink.writeTransaction(currTid, items, numItems);
 		}
-		
-		writeTxnLines(txnLines, outputFileLoc);
-		
-		System.out.println("Number of transactions in the dataset : " + countTid);
 	}
-	
+
+	/*
+	 * Packs a (tid, item) pair into a long which sorts by the tid first and the item next.
+	 */
+	private static long toPair(int tid, int item)
+	{
+		return ((long)tid << 32) | (item & 0xFFFFFFFFL);
+	}
+
 	/*
-	 * Writes a transaction with its itemset to the console line.
+	 * Writes out a sorted chunk of pairs as a run file.
 	 */
-	private static boolean writeTxnLines(List<String> txnLines, String outputFileLoc) 
-			throws IOException
+	private static File writeRun(long[] pairs, int numPairs, File tmpDir) throws IOException
+	{
+		File runFile = File.createTempFile("txnrun", ".tmp", tmpDir);
+		runFile.deleteOnExit();
+
+		RandomAccessFile file = new RandomAccessFile(runFile, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for(int i=0; i < numPairs; i++) {
+				if(buffer.remaining() < 8) {
+					flush(buffer, channel);
+				}
+				buffer.putLong(pairs[i]);
+			}
+			flush(buffer, channel);
+		}
+		finally {
+			file.close();
+		}
+
+		return runFile;
+	}
+
+	private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException
 	{
-		boolean isWriteDone = false;
-		File opFile = new File(outputFileLoc);
-		BufferedWriter writer = new BufferedWriter(new FileWriter(opFile, true));
-		for(String line : txnLines) {
-			writer.write(line);
-			writer.newLine();
-		}
-
-		writer.flush();
-		writer.close();
-		
-		isWriteDone = true;
-		
-		return isWriteDone;
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
 	}
 
+	/**
+	 * Sorted sequence of pairs taking part in the merge.
+	 */
+	private static abstract class RunCursor
+	{
+		protected long current;
+
+		/*
+		 * Moves to the next pair. Returns false once the run is exhausted.
+		 */
+		abstract boolean advance() throws IOException;
+
+		long getCurrent() {
+			return current;
+		}
+
+		void close() throws IOException
+		{
+		}
+	}
+
+	private static class MemoryRunCursor extends RunCursor
+	{
+		private long[] pairs;
+		private int numPairs;
+		private int index = 0;
+
+		MemoryRunCursor(long[] pairs, int numPairs)
+		{
+			this.pairs = pairs;
+			this.numPairs = numPairs;
+		}
+
+		@Override
+		boolean advance()
+		{
+			if(index == numPairs) {
+				return false;
+			}
+			current = pairs[index++];
+			return true;
+		}
+	}
+
+	private static class FileRunCursor extends RunCursor
+	{
+		private FileChannel channel;
+		private ByteBuffer buffer;
+
+		FileRunCursor(File runFile, int bufferSize) throws IOException
+		{
+			channel = new FileInputStream(runFile).getChannel();
+			buffer = ByteBuffer.allocateDirect(bufferSize - bufferSize % 8).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+		}
+
+		@Override
+		boolean advance() throws IOException
+		{
+			if(buffer.remaining() < 8) {
+				buffer.compact();
+				while(buffer.position() < 8 && channel.read(buffer) >= 0);
+				buffer.flip();
+				if(buffer.remaining() < 8) {
+					return false;
+				}
+			}
+			current = buffer.getLong();
+			return true;
+		}
+
+		@Override
+		void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the grouped transactions in the requested output format(s). Text is written through a
+	 * single buffered channel as "tid item1 item2 ..." lines.
+	 */
+	private static class TransactionSink
+	{
+		private File outputFile;
+		private RandomAccessFile textFile;
+		private FileChannel textChannel;
+		private ByteBuffer textBuffer;
+		private BinaryTransactionWriter binaryWriter;
+		private byte[] digits = new byte[11];
+		private int numTxns = 0;
+
+		TransactionSink(File outputFile, OutputFormat outputFormat) throws IOException
+		{
+			this.outputFile = outputFile;
+			if(outputFormat != OutputFormat.BINARY) {
+				if(outputFile.exists()) {
+					outputFile.delete();
+				}
+				textFile = new RandomAccessFile(outputFile, "rw");
+				textChannel = textFile.getChannel();
+				textBuffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+			}
+			if(outputFormat != OutputFormat.TEXT) {
+				File binaryFile = new File(BinaryTransactionFormat.getBinaryFileLocation(outputFile.getPath()));
+				binaryWriter = new BinaryTransactionWriter(binaryFile, true);
+				if(textChannel != null) {
+					binaryWriter.setSourceFile(outputFile);
+				}
+			}
+		}
+
+		void writeTransaction(int tid, int[] items, int numItems) throws IOException
+		{
+			if(textChannel != null) {
+				putInt(tid);
+				for(int i=0; i < numItems; i++) {
+					putByte(' ');
+					putInt(items[i]);
+				}
+				putByte('\n');
+			}
+			if(binaryWriter != null) {
+				binaryWriter.writeTransaction(tid, items, numItems);
+			}
+			++numTxns;
+		}
+
+		int getNumTxns() {
+			return numTxns;
+		}
+
+		void close() throws IOException
+		{
+			if(textChannel != null) {
+				flush(textBuffer, textChannel);
+				textChannel.force(false);
+				textFile.close();
+			}
+			if(binaryWriter != null) {
+				binaryWriter.close();
+			}
+		}
+
+		/*
+		 * Closes the output of a run which failed half way and deletes it, so that a truncated dataset
+		 * is never left behind.
+		 */
+		void abort()
+		{
+			if(textChannel != null) {
+				try {
+					textFile.close();
+				} catch (IOException e) {
+					System.err.println("Failed to close the partial text file " + outputFile + " : " + e.getMessage());
+				}
+				outputFile.delete();
+			}
+			if(binaryWriter != null) {
+				binaryWriter.abort();
+			}
+		}
+
+		private void putInt(int value) throws IOException
+		{
+			int numDigits = 0;
+			long v = value;
+			if(v < 0) {
+				putByte('-');
+				v = -v;
+			}
+			do {
+				digits[numDigits++] = (byte)('0' + v % 10);
+				v /= 10;
+			} while(v > 0);
+
+			while(numDigits > 0) {
+				putByte(digits[--numDigits]);
+			}
+		}
+
+		private void putByte(int b) throws IOException
+		{
+			if(!textBuffer.hasRemaining()) {
+				flush(textBuffer, textChannel);
+			}
+			textBuffer.put((byte)b);
+		}
+	}
 }
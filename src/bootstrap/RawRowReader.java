@@ -0,0 +1,108 @@
+package bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the rows "tid cid item" of a raw dataset file, as written by the synthetic data generator,
+ * parsing the bytes directly.
+ *
+ * @author shishir
+ *
+ */
+class RawRowReader
+{
+	private static final int READ_BUFFER_SIZE = 1 << 20;
+
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	private boolean isEndOfFile = false;
+
+	private int[] values = new int[3];
+	private long lineNumber = 0;
+
+	RawRowReader(File file) throws IOException
+	{
+		channel = new FileInputStream(file).getChannel();
+		buffer.flip();
+	}
+
+	/*
+	 * Reads the next row. Blank lines are skipped, and so are the lines which do not have all
+	 * three values, with a warning. Returns false at the end of the file.
+	 */
+	boolean next() throws IOException
+	{
+		while(true) {
+			int numValues = 0;
+			int value = 0;
+			boolean inValue = false;
+			int b;
+			while((b = nextByte()) != -1 && b != '\n') {
+				if(b >= '0' && b <= '9') {
+					value = value * 10 + (b - '0');
+					inValue = true;
+				}
+				else if(inValue) {
+					if(numValues < values.length) {
+						values[numValues] = value;
+					}
+					++numValues;
+					value = 0;
+					inValue = false;
+				}
+			}
+			if(inValue) {
+				if(numValues < values.length) {
+					values[numValues] = value;
+				}
+				++numValues;
+			}
+			++lineNumber;
+
+			if(numValues >= 3) {
+				return true;
+			}
+			if(numValues > 0) {
+				System.err.println("Skipping malformed line " + lineNumber + " of the raw dataset file.");
+			}
+			if(b == -1) {
+				return false;
+			}
+		}
+	}
+
+	int getTid() {
+		return values[0];
+	}
+
+	int getItem() {
+		return values[2];
+	}
+
+	void close() throws IOException
+	{
+		channel.close();
+	}
+
+	private int nextByte() throws IOException
+	{
+		if(!buffer.hasRemaining()) {
+			if(isEndOfFile) {
+				return -1;
+			}
+			buffer.clear();
+			if(channel.read(buffer) < 0) {
+				isEndOfFile = true;
+			}
+			buffer.flip();
+			if(!buffer.hasRemaining()) {
+				return -1;
+			}
+		}
+		return buffer.get();
+	}
+}
@@ -0,0 +1,485 @@
+package bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import model.TransactionBatch;
+import util.BinaryTransactionFormat;
+import util.BinaryTransactionWriter;
+import util.Constants;
+import bootstrap.FilePreProcessorUtils.OutputFormat;
+
+/**
+ * Generates synthetic retail transactions following the model of the IBM Quest data generator
+ * described in section 2.4.3 of the Apriori paper :
+ * 	- A pool of potentially large itemsets is drawn first. Their sizes are Poisson distributed with
+ * 	  mean |I|. Each itemset takes an exponentially distributed fraction (mean = correlation level)
+ * 	  of its items from the previous itemset and picks the rest at random.
+ * 	- Each itemset gets an exponentially distributed weight, its probability of being picked, and a
+ * 	  corruption level drawn from a normal distribution of mean 0.5 and variance 0.1.
+ * 	- Transaction sizes are Poisson distributed with mean |T|. A transaction is filled with picked
+ * 	  itemsets, dropping items of each one as long as a uniform random number is below its
+ * 	  corruption level. An itemset which overflows the transaction is still added in half the cases
+ * 	  and carried over to the next transaction in the other half.
+ *
+ * Like the original generator, transactions which end up empty after the corruption are dropped,
+ * and the remaining ones are numbered from 1 without gaps.
+ *
+ * Output is deterministic for a seed, whatever the number of threads : transactions are generated
+ * in blocks of TransactionBatch.DEFAULT_CAPACITY, each from its own random stream derived from the
+ * seed, by a pool of worker threads, and the blocks are written out in order. The text file is in
+ * the grouped "tid item1 item2 ..." format and the binary one in the compressed format read by
+ * util.MappedFileReader, at <output file>.bin.
+ *
+ * Usage :
+ * 	SyntheticDataGenerator <output file> [text|binary|both] [-ntrans <thousands>] [-tlen <|T|>]
+ * 	        [-patlen <|I|>] [-npats <|L|>] [-nitems <N>] [-corr <correlation>] [-seed <seed>]
+ *
+ * e.g. "SyntheticDataGenerator data/T10.I4.D100K -tlen 10 -patlen 4 -ntrans 100"
+ *
+ * @author shishir
+ *
+ */
+public class SyntheticDataGenerator {
+
+	private static final int BLOCK_SIZE = TransactionBatch.DEFAULT_CAPACITY;
+	// Number of blocks generated ahead of the writer, per worker thread.
+	private static final int BLOCKS_AHEAD_PER_THREAD = 2;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	private static final double CORRUPTION_MEAN = 0.5;
+	private static final double CORRUPTION_VARIANCE = 0.1;
+
+	private int numTxns;
+	private double avgTxnSize;
+	private double avgPatternSize;
+	private int numPatterns;
+	private int numItems;
+	private double correlation;
+	private long seed;
+
+	// Potentially large itemsets, with their cumulative pick probabilities and corruption levels.
+	private int[][] patterns;
+	private double[] cumulativeWeights;
+	private double[] corruptionLevels;
+
+	public SyntheticDataGenerator(int numTxns, double avgTxnSize, double avgPatternSize,
+			int numPatterns, int numItems, double correlation, long seed)
+	{
+		this.numTxns = numTxns;
+		this.avgTxnSize = avgTxnSize;
+		this.avgPatternSize = avgPatternSize;
+		this.numPatterns = numPatterns;
+		this.numItems = numItems;
+		this.correlation = correlation;
+		this.seed = seed;
+
+		generatePatterns();
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 1) {
+			System.err.println("Usage : SyntheticDataGenerator <output file> [text|binary|both] [-ntrans <thousands>] [-tlen <|T|>]");
+			System.err.println("        [-patlen <|I|>] [-npats <|L|>] [-nitems <N>] [-corr <correlation>] [-seed <seed>]");
+			System.exit(1);
+		}
+
+		File outputFile = new File(args[0]);
+		OutputFormat outputFormat = OutputFormat.TEXT;
+		int numTxns = 100000;
+		double avgTxnSize = 10, avgPatternSize = 4, correlation = 0.5;
+		int numPatterns = 2000, numItems = Constants.NUMBER_OF_ITEMS;
+		long seed = 1;
+
+		int i = 1;
+		if(args.length > 1 && !args[1].startsWith("-")) {
+			outputFormat = OutputFormat.valueOf(args[1].toUpperCase());
+			i = 2;
+		}
+		for(; i + 1 < args.length; i += 2) {
+			String option = args[i], value = args[i + 1];
+			if(option.equals("-ntrans")) {
+				numTxns = (int)(Double.parseDouble(value) * 1000);
+			}
+			else if(option.equals("-tlen")) {
+				avgTxnSize = Double.parseDouble(value);
+			}
+			else if(option.equals("-patlen")) {
+				avgPatternSize = Double.parseDouble(value);
+			}
+			else if(option.equals("-npats")) {
+				numPatterns = Integer.parseInt(value);
+			}
+			else if(option.equals("-nitems")) {
+				numItems = Integer.parseInt(value);
+			}
+			else if(option.equals("-corr")) {
+				correlation = Double.parseDouble(value);
+			}
+			else if(option.equals("-seed")) {
+				seed = Long.parseLong(value);
+			}
+			else {
+				System.err.println("Unknown option " + option);
+				System.exit(1);
+			}
+		}
+
+		long startTime = System.currentTimeMillis();
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(numTxns, avgTxnSize, avgPatternSize,
+				numPatterns, numItems, correlation, seed);
+		int numTxnsWritten = generator.generate(outputFile, outputFormat, Constants.NUM_WORKER_THREADS);
+		System.out.println("Generated " + numTxnsWritten + " transactions into " + outputFile + ". Time taken : " +
+				(System.currentTimeMillis() - startTime) + " ms.");
+	}
+
+	/*
+	 * Generates the transactions and writes them in the requested output format(s).
+	 *
+	 * @returns Number of (non empty) transactions written.
+	 */
+	public int generate(File outputFile, OutputFormat outputFormat, int numThreads) throws IOException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SyntheticDataGenerator-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		TransactionWriter writer = new TransactionWriter(outputFile, outputFormat);
+		boolean isGenerated = false;
+		try {
+			int numBlocks = (numTxns + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			int nextBlock = 0;
+			LinkedList<Future<TransactionBatch>> pendingBlocks = new LinkedList<Future<TransactionBatch>>();
+			while(nextBlock < numBlocks || !pendingBlocks.isEmpty()) {
+				while(nextBlock < numBlocks && pendingBlocks.size() < numThreads * BLOCKS_AHEAD_PER_THREAD) {
+					pendingBlocks.add(executor.submit(new BlockTask(nextBlock++)));
+				}
+				writer.write(pendingBlocks.removeFirst().get());
+			}
+			isGenerated = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while generating " + outputFile, e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed to generate the transactions of " + outputFile, e.getCause());
+		} finally {
+			executor.shutdownNow();
+			if(isGenerated) {
+				writer.close();
+			}
+			else {
+				writer.abort();
+			}
+		}
+
+		return writer.getNumTxns();
+	}
+
+	/*
+	 * Draws the pool of potentially large itemsets, from the seed itself.
+	 */
+	private void generatePatterns()
+	{
+		Random random = new Random(seed);
+		patterns = new int[numPatterns][];
+		cumulativeWeights = new double[numPatterns];
+		corruptionLevels = new double[numPatterns];
+
+		double totalWeight = 0;
+		for(int p=0; p < numPatterns; p++) {
+			int size = Math.min(numItems, Math.max(1, poisson(random, avgPatternSize)));
+			int[] pattern = new int[size];
+			int numPicked = 0;
+
+			if(p > 0) {
+				// Take a fraction of the items from the previous itemset, to model the correlation.
+				int[] prevPattern = patterns[p-1].clone();
+				double fraction = Math.min(1.0, exponential(random, correlation));
+				int numFromPrev = Math.min(prevPattern.length, (int)Math.round(fraction * size));
+				for(; numPicked < numFromPrev; numPicked++) {
+					int index = numPicked + random.nextInt(prevPattern.length - numPicked);
+					int item = prevPattern[index];
+					prevPattern[index] = prevPattern[numPicked];
+					prevPattern[numPicked] = item;
+					pattern[numPicked] = item;
+				}
+			}
+			while(numPicked < size) {
+				int item = random.nextInt(numItems);
+				if(!contains(pattern, numPicked, item)) {
+					pattern[numPicked++] = item;
+				}
+			}
+
+			patterns[p] = pattern;
+			totalWeight += exponential(random, 1.0);
+			cumulativeWeights[p] = totalWeight;
+			corruptionLevels[p] = Math.min(1.0, Math.max(0.0, CORRUPTION_MEAN + random.nextGaussian() * Math.sqrt(CORRUPTION_VARIANCE)));
+		}
+
+		for(int p=0; p < numPatterns; p++) {
+			cumulativeWeights[p] /= totalWeight;
+		}
+	}
+
+	/*
+	 * Generates one block of transactions from the random stream of the block. Empty transactions
+	 * are left out and tids are assigned by the writer, so that they stay consecutive.
+	 */
+	private TransactionBatch generateBlock(int blockIndex)
+	{
+		Random random = new Random(seed * 0x9E3779B97F4A7C15L + blockIndex + 1);
+		int numBlockTxns = Math.min(BLOCK_SIZE, numTxns - blockIndex * BLOCK_SIZE);
+		TransactionBatch batch = new TransactionBatch(numBlockTxns);
+
+		boolean[] isInTxn = new boolean[numItems];
+		int[] txnItems = new int[64];
+		int[] patternItems = new int[64];
+		int carriedPattern = -1;
+
+		for(int t=0; t < numBlockTxns; t++) {
+			int size = Math.max(1, poisson(random, avgTxnSize));
+			int numTxnItems = 0;
+
+			// Bounds the number of itemsets tried when they keep adding nothing new.
+			for(int attempt=0; numTxnItems < size && attempt < 2 * size + 8; attempt++) {
+				int p = carriedPattern >= 0 ? carriedPattern : pickPattern(random);
+				carriedPattern = -1;
+
+				// Corrupt the itemset by dropping random items.
+				int[] pattern = patterns[p];
+				if(pattern.length > patternItems.length) {
+					patternItems = new int[pattern.length];
+				}
+				System.arraycopy(pattern, 0, patternItems, 0, pattern.length);
+				int numPatternItems = pattern.length;
+				while(numPatternItems > 0 && random.nextDouble() < corruptionLevels[p]) {
+					patternItems[random.nextInt(numPatternItems)] = patternItems[--numPatternItems];
+				}
+
+				if(numTxnItems > 0 && numTxnItems + numPatternItems > size && random.nextBoolean()) {
+					carriedPattern = p;
+					break;
+				}
+
+				if(numTxnItems + numPatternItems > txnItems.length) {
+					txnItems = Arrays.copyOf(txnItems, Math.max(numTxnItems + numPatternItems, txnItems.length * 2));
+				}
+				for(int i=0; i < numPatternItems; i++) {
+					int item = patternItems[i];
+					if(!isInTxn[item]) {
+						isInTxn[item] = true;
+						txnItems[numTxnItems++] = item;
+					}
+				}
+			}
+
+			for(int i=0; i < numTxnItems; i++) {
+				isInTxn[txnItems[i]] = false;
+			}
+			if(numTxnItems > 0) {
+				Arrays.sort(txnItems, 0, numTxnItems);
+				batch.add(0, txnItems, 0, numTxnItems);
+			}
+		}
+
+		return batch;
+	}
+
+	/*
+	 * Picks an itemset with the probability of its weight.
+	 */
+	private int pickPattern(Random random)
+	{
+		int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+		if(index < 0) {
+			index = -index - 1;
+		}
+		return Math.min(index, numPatterns - 1);
+	}
+
+	private static boolean contains(int[] items, int numItems, int item)
+	{
+		for(int i=0; i < numItems; i++) {
+			if(items[i] == item) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Poisson distributed random number, by multiplying uniform numbers till their product drops
+	 * below e^-mean. Fine for the small means used here.
+	 */
+	private static int poisson(Random random, double mean)
+	{
+		double limit = Math.exp(-mean);
+		double product = random.nextDouble();
+		int count = 0;
+		while(product > limit) {
+			product *= random.nextDouble();
+			++count;
+		}
+		return count;
+	}
+
+	private static double exponential(Random random, double mean)
+	{
+		return -mean * Math.log(1 - random.nextDouble());
+	}
+
+	private class BlockTask implements Callable<TransactionBatch>
+	{
+		private int blockIndex;
+
+		BlockTask(int blockIndex)
+		{
+			this.blockIndex = blockIndex;
+		}
+
+		@Override
+		public TransactionBatch call()
+		{
+			return generateBlock(blockIndex);
+		}
+	}
+
+	/**
+	 * Writes the generated blocks in order, numbering the transactions from 1, as text and/or into
+	 * the compressed binary store.
+	 */
+	private static class TransactionWriter
+	{
+		private File outputFile;
+		private RandomAccessFile textFile;
+		private FileChannel textChannel;
+		private ByteBuffer textBuffer;
+		private BinaryTransactionWriter binaryWriter;
+		private byte[] digits = new byte[11];
+		private int numTxns = 0;
+
+		TransactionWriter(File outputFile, OutputFormat outputFormat) throws IOException
+		{
+			this.outputFile = outputFile;
+			if(outputFormat != OutputFormat.BINARY) {
+				if(outputFile.exists()) {
+					outputFile.delete();
+				}
+				textFile = new RandomAccessFile(outputFile, "rw");
+				textChannel = textFile.getChannel();
+				textBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+			}
+			if(outputFormat != OutputFormat.TEXT) {
+				File binaryFile = new File(BinaryTransactionFormat.getBinaryFileLocation(outputFile.getPath()));
+				binaryWriter = new BinaryTransactionWriter(binaryFile, true);
+				if(textChannel != null) {
+					binaryWriter.setSourceFile(outputFile);
+				}
+			}
+		}
+
+		void write(TransactionBatch batch) throws IOException
+		{
+			int[] tids = batch.getTids();
+			int[] items = batch.getItems();
+			for(int t=0; t < batch.getSize(); t++) {
+				tids[t] = ++numTxns;
+				if(textChannel != null) {
+					putInt(tids[t]);
+					for(int i=batch.getItemsStart(t); i < batch.getItemsEnd(t); i++) {
+						putByte(' ');
+						putInt(items[i]);
+					}
+					putByte('\n');
+				}
+			}
+			if(binaryWriter != null) {
+				binaryWriter.writeBatch(batch);
+			}
+		}
+
+		int getNumTxns() {
+			return numTxns;
+		}
+
+		void close() throws IOException
+		{
+			if(textChannel != null) {
+				flush();
+				textChannel.force(false);
+				textFile.close();
+			}
+			if(binaryWriter != null) {
+				binaryWriter.close();
+			}
+		}
+
+		/*
+		 * Closes the output of a run which failed half way and deletes it, so that a truncated dataset
+		 * is never left behind.
+		 */
+		void abort()
+		{
+			if(textChannel != null) {
+				try {
+					textFile.close();
+				} catch (IOException e) {
+					System.err.println("Failed to close the partial text file " + outputFile + " : " + e.getMessage());
+				}
+				outputFile.delete();
+			}
+			if(binaryWriter != null) {
+				binaryWriter.abort();
+			}
+		}
+
+		private void putInt(int value) throws IOException
+		{
+			int numDigits = 0;
+			do {
+				digits[numDigits++] = (byte)('0' + value % 10);
+				value /= 10;
+			} while(value > 0);
+
+			while(numDigits > 0) {
+				putByte(digits[--numDigits]);
+			}
+		}
+
+		private void putByte(int b) throws IOException
+		{
+			if(!textBuffer.hasRemaining()) {
+				flush();
+			}
+			textBuffer.put((byte)b);
+		}
+
+		private void flush() throws IOException
+		{
+			textBuffer.flip();
+			while(textBuffer.hasRemaining()) {
+				textChannel.write(textBuffer);
+			}
+			textBuffer.clear();
+		}
+	}
+}
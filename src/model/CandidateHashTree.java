@@ -0,0 +1,374 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Hash tree over the candidates of a pass, as described in the Apriori paper. An interior node at
+ * depth d hashes the d-th item of a candidate into one of a fixed number of buckets, and a leaf holds
+ * a list of candidates. A leaf which overflows the leaf size is split into an interior node, unless
+ * it is at depth k already.
+ *
+ * Like CandidateTrie, the tree lives in flat arrays instead of per node objects :
+ * 	- children   : Bucket b of the interior node n is children[n*fanout + b]. 0 stands for an empty
+ * 	               bucket, a positive value for an interior node and -(l+1) for the leaf l. The root is
+ * 	               the interior node 0, so it is never a child.
+ * 	- candidates : Candidate ids grouped by leaf. The candidates of the leaf l are
+ * 	               candidates[leafStart[l] .. leafStart[l+1]).
+ * Since the candidates are all known upfront, the tree is bulk loaded top down : the candidates of a
+ * node are partitioned by bucket, and the buckets holding more than the leaf size become interior
+ * nodes. This gives the same tree as inserting them one by one and splitting the leaves on overflow.
+ *
+ * A transaction reaches a leaf once for every path of its items which hashes there, so the leaves
+ * are stamped with the transaction when visited and skipped on the later visits. The candidates of a
+ * leaf visited are checked against all the items of the transaction.
+ *
+ * @author shishir
+ *
+ */
+public class CandidateHashTree implements CandidateIndex
+{
+	// Bounds of the automatically picked fanout.
+	private static final int MIN_FANOUT = 4;
+	private static final int MAX_FANOUT = 1024;
+
+	private final int itemsetSize;
+	private final int numCandidates;
+	private final int[] candidateItems;
+
+	private final int fanout;
+	private final int leafSize;
+
+	private int[] children;
+	private int numInteriorNodes;
+
+	private int[] candidates;
+	private int[] leafStart;
+	private int numLeaves;
+
+	private long buildTime;
+
+	/*
+	 * Builds the hash tree over the candidates, with the fanout and leaf size picked from their number
+	 * and size.
+	 *
+	 * Each candidate of a leaf visited is matched against the whole transaction, so the leaves are
+	 * kept small, about k candidates. Every level of interior nodes multiplies the number of paths a
+	 * transaction is walked down, so the fanout is picked to spread the candidates over the leaves
+	 * within the first two levels rather than within all the k levels.
+	 */
+	public CandidateHashTree(CandidateTable candidates)
+	{
+		this(candidates, getDefaultFanout(candidates.getSize(), candidates.getItemsetSize()),
+				getDefaultLeafSize(candidates.getItemsetSize()));
+	}
+
+	/*
+	 * @param fanout   - Number of buckets of the interior nodes.
+	 * @param leafSize - Number of candidates past which a leaf is split.
+	 */
+	public CandidateHashTree(CandidateTable candidateTable, int fanout, int leafSize)
+	{
+		long startTime = System.nanoTime();
+
+		this.itemsetSize = candidateTable.getItemsetSize();
+		this.numCandidates = candidateTable.getSize();
+		this.candidateItems = candidateTable.getItems();
+		this.fanout = fanout;
+		this.leafSize = leafSize;
+
+		candidates = new int[numCandidates];
+		for(int c=0; c < numCandidates; c++) {
+			candidates[c] = c;
+		}
+		children = new int[16 * fanout];
+		leafStart = new int[17];
+		numInteriorNodes = 1;
+		numLeaves = 0;
+
+		int[] buffer = new int[numCandidates];
+		int[] bucketStart = new int[fanout + 1];
+		if(numCandidates > 0) {
+			build(0, 0, 0, numCandidates, buffer, bucketStart);
+		}
+		leafStart[numLeaves] = numCandidates;
+
+		buildTime = System.nanoTime() - startTime;
+	}
+
+	private static int getDefaultLeafSize(int itemsetSize)
+	{
+		return itemsetSize;
+	}
+
+	private static int getDefaultFanout(int numCandidates, int itemsetSize)
+	{
+		double numLeaves = (double)numCandidates / getDefaultLeafSize(itemsetSize);
+		int fanout = (int)Math.ceil(Math.pow(numLeaves, 1.0 / Math.min(itemsetSize, 2)));
+		return Math.min(MAX_FANOUT, Math.max(MIN_FANOUT, fanout));
+	}
+
+	/*
+	 * Fills the interior node with the candidates[from .. to), which all hash to its path. Each bucket
+	 * becomes a leaf if it holds up to leafSize candidates or is at depth k, and an interior node
+	 * otherwise.
+	 */
+	private void build(int node, int depth, int from, int to, int[] buffer, int[] bucketStart)
+	{
+		// Counting sort of the candidates by the bucket of their item at this depth. The sort is
+		// stable, so the candidates of a leaf stay in the ascending order.
+		Arrays.fill(bucketStart, 0);
+		for(int i=from; i < to; i++) {
+			bucketStart[hash(candidateItems[candidates[i] * itemsetSize + depth]) + 1]++;
+		}
+		for(int b=0; b < fanout; b++) {
+			bucketStart[b + 1] += bucketStart[b];
+		}
+		int[] bucketEnd = Arrays.copyOf(bucketStart, fanout);
+		for(int i=from; i < to; i++) {
+			int candidate = candidates[i];
+			buffer[from + bucketEnd[hash(candidateItems[candidate * itemsetSize + depth])]++] = candidate;
+		}
+		System.arraycopy(buffer, from, candidates, from, to - from);
+
+		// bucketStart is reused by the children, so keep the ranges of this node's buckets.
+		int[] bucketRanges = Arrays.copyOf(bucketStart, fanout + 1);
+		for(int b=0; b < fanout; b++) {
+			int bucketFrom = from + bucketRanges[b];
+			int bucketTo = from + bucketRanges[b + 1];
+			if(bucketFrom == bucketTo) {
+				continue;
+			}
+
+			if(bucketTo - bucketFrom <= leafSize || depth + 1 == itemsetSize) {
+				ensureLeafCapacity(numLeaves + 2);
+				leafStart[numLeaves] = bucketFrom;
+				children[node * fanout + b] = -(numLeaves + 1);
+				++numLeaves;
+			}
+			else {
+				int child = numInteriorNodes++;
+				ensureInteriorCapacity(numInteriorNodes);
+				children[node * fanout + b] = child;
+				build(child, depth + 1, bucketFrom, bucketTo, buffer, bucketStart);
+			}
+		}
+	}
+
+	private int hash(int item)
+	{
+		return item % fanout;
+	}
+
+	private void ensureInteriorCapacity(int numNodes)
+	{
+		if(numNodes * fanout > children.length) {
+			children = Arrays.copyOf(children, Math.max(numNodes * fanout, 2 * children.length));
+		}
+	}
+
+	private void ensureLeafCapacity(int size)
+	{
+		if(size > leafStart.length) {
+			leafStart = Arrays.copyOf(leafStart, Math.max(size, 2 * leafStart.length));
+		}
+	}
+
+	/*
+	 * The stack holds the node and the next item of each level of the walk in its first 2*k ints,
+	 * followed by the stamp of each leaf and the stamp of the current transaction.
+	 */
+	@Override
+	public int[] newStack()
+	{
+		return new int[2 * itemsetSize + numLeaves + 1];
+	}
+
+	@Override
+	public void countCandidates(int[] items, int startIndex, int endIndex, int[] supportCounts, int[] stack)
+	{
+		if(numCandidates == 0 || endIndex - startIndex < itemsetSize) {
+			return;
+		}
+
+		int stamp = nextStamp(stack);
+		int stampsStart = 2 * itemsetSize;
+		int depth = 0;
+		int node = 0;
+		int i = startIndex;
+		while(true) {
+			// The items after the one hashed at this level must still fill the rest of the candidate.
+			int lastIndex = endIndex - (itemsetSize - depth - 1);
+			if(i < lastIndex) {
+				int child = children[node * fanout + hash(items[i++])];
+				if(child == 0) {
+					continue;
+				}
+
+				if(child < 0) {
+					int leaf = -(child + 1);
+					if(stack[stampsStart + leaf] == stamp) {
+						continue;
+					}
+					stack[stampsStart + leaf] = stamp;
+					for(int l = leafStart[leaf]; l < leafStart[leaf + 1]; l++) {
+						int candidate = candidates[l];
+						if(isContained(candidate, items, startIndex, endIndex)) {
+							supportCounts[candidate]++;
+						}
+					}
+					continue;
+				}
+
+				stack[2 * depth] = node;
+				stack[2 * depth + 1] = i;
+				++depth;
+				node = child;
+			}
+			else {
+				if(depth == 0) {
+					break;
+				}
+				--depth;
+				node = stack[2 * depth];
+				i = stack[2 * depth + 1];
+			}
+		}
+	}
+
+	/*
+	 * Same walk as countCandidates(). The leaves are not visited in the order of the candidates, so
+	 * the candidates found are sorted at the end.
+	 */
+	@Override
+	public int findCandidates(int[] items, int startIndex, int endIndex, int[] found, int numFound, int[] stack)
+	{
+		if(numCandidates == 0 || endIndex - startIndex < itemsetSize) {
+			return numFound;
+		}
+
+		int firstFound = numFound;
+		int stamp = nextStamp(stack);
+		int stampsStart = 2 * itemsetSize;
+		int depth = 0;
+		int node = 0;
+		int i = startIndex;
+		while(true) {
+			int lastIndex = endIndex - (itemsetSize - depth - 1);
+			if(i < lastIndex) {
+				int child = children[node * fanout + hash(items[i++])];
+				if(child == 0) {
+					continue;
+				}
+
+				if(child < 0) {
+					int leaf = -(child + 1);
+					if(stack[stampsStart + leaf] == stamp) {
+						continue;
+					}
+					stack[stampsStart + leaf] = stamp;
+					for(int l = leafStart[leaf]; l < leafStart[leaf + 1]; l++) {
+						int candidate = candidates[l];
+						if(isContained(candidate, items, startIndex, endIndex)) {
+							found[numFound++] = candidate;
+						}
+					}
+					continue;
+				}
+
+				stack[2 * depth] = node;
+				stack[2 * depth + 1] = i;
+				++depth;
+				node = child;
+			}
+			else {
+				if(depth == 0) {
+					break;
+				}
+				--depth;
+				node = stack[2 * depth];
+				i = stack[2 * depth + 1];
+			}
+		}
+
+		Arrays.sort(found, firstFound, numFound);
+		return numFound;
+	}
+
+	/*
+	 * Returns a stamp for the transaction about to be walked, different from the ones the leaves
+	 * were stamped with so far.
+	 */
+	private int nextStamp(int[] stack)
+	{
+		int stampIndex = stack.length - 1;
+		if(++stack[stampIndex] == Integer.MAX_VALUE) {
+			Arrays.fill(stack, 2 * itemsetSize, stampIndex, 0);
+			stack[stampIndex] = 1;
+		}
+		return stack[stampIndex];
+	}
+
+	/*
+	 * Whether all the items of the candidate are among the sorted items[startIndex .. endIndex).
+	 */
+	private boolean isContained(int candidate, int[] items, int startIndex, int endIndex)
+	{
+		int c = candidate * itemsetSize;
+		int cEnd = c + itemsetSize;
+		int i = startIndex;
+		while(c < cEnd) {
+			if(endIndex - i < cEnd - c) {
+				return false;
+			}
+			int item = candidateItems[c];
+			while(items[i] < item) {
+				if(++i == endIndex) {
+					return false;
+				}
+			}
+			if(items[i] != item) {
+				return false;
+			}
+			++c;
+			++i;
+		}
+		return true;
+	}
+
+	public int getFanout() {
+		return fanout;
+	}
+
+	public int getLeafSize() {
+		return leafSize;
+	}
+
+	public int getNumInteriorNodes() {
+		return numInteriorNodes;
+	}
+
+	public int getNumLeaves() {
+		return numLeaves;
+	}
+
+	@Override
+	public long getBuildTime() {
+		return buildTime;
+	}
+
+	@Override
+	public long getSizeInBytes() {
+		return 4L * (children.length + candidates.length + leafStart.length);
+	}
+
+	@Override
+	public double getBytesPerCandidate() {
+		return numCandidates > 0 ? (double)getSizeInBytes() / numCandidates : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CandidateHashTree [candidates=%d, fanout=%d, leafSize=%d, interior=%d, leaves=%d, build=%.1f ms, %.1f bytes/candidate]",
+				numCandidates, fanout, leafSize, numInteriorNodes, numLeaves, buildTime / 1e6, getBytesPerCandidate());
+	}
+}
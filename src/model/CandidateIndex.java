@@ -0,0 +1,42 @@
+package model;
+
+/**
+ * Index over the candidates of a pass, used to find the candidates contained in each transaction
+ * while counting their support. The implementations are built once per pass from the candidate
+ * table and are only read afterwards, so one index can be shared by several threads as long as each
+ * of them has its own scratch space from newStack().
+ *
+ * The implementation is picked through Constants.CANDIDATE_INDEX_TYPE.
+ *
+ * @author shishir
+ *
+ */
+public interface CandidateIndex
+{
+	/*
+	 * Returns the scratch space of the traversals of the index, one per thread.
+	 */
+	public int[] newStack();
+
+	/*
+	 * Increments supportCounts[c] for every candidate c contained in the transaction
+	 * items[startIndex .. endIndex), which must be sorted.
+	 */
+	public void countCandidates(int[] items, int startIndex, int endIndex, int[] supportCounts, int[] stack);
+
+	/*
+	 * Writes the candidates contained in the transaction items[startIndex .. endIndex) to
+	 * found[numFound ..], in the ascending order. Returns the number of candidates in found,
+	 * including the numFound already there.
+	 */
+	public int findCandidates(int[] items, int startIndex, int endIndex, int[] found, int numFound, int[] stack);
+
+	/*
+	 * Time taken to build the index, in nanoseconds.
+	 */
+	public long getBuildTime();
+
+	public long getSizeInBytes();
+
+	public double getBytesPerCandidate();
+}
@@ -0,0 +1,26 @@
+package model;
+
+/**
+ * The kinds of candidate index available to count the support of the candidates.
+ * 	- TRIE      : CandidateTrie, a prefix tree with one node per distinct prefix.
+ * 	- HASH_TREE : CandidateHashTree, the hash tree of the Apriori paper.
+ *
+ * @author shishir
+ */
+public enum CandidateIndexType {
+	TRIE,
+	HASH_TREE;
+
+	/*
+	 * Builds the index of this kind over the candidates.
+	 */
+	public CandidateIndex newIndex(CandidateTable candidates)
+	{
+		switch(this) {
+		case HASH_TREE:
+			return new CandidateHashTree(candidates);
+		default:
+			return new CandidateTrie(candidates);
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The candidate itemsets of one pass of the Apriori family, laid out as structure-of-arrays :
+ * 	- items         : Items of candidate i are stored in items[i*k .. (i+1)*k), k being the itemset size.
+ * 	- supportCounts : Support count of each candidate.
+ * 	- generators    : The two large itemsets of the previous pass candidate i was joined from, at
+ * 	                  generators[2*i] and generators[2*i+1]. -1 for the candidates of the first pass.
+ * 	- extensions    : The candidates of the next pass which candidate i is a generator of, stored in
+ * 	                  extensions[extensionOffsets[i] .. extensionOffsets[i+1]) once buildExtensions()
+ * 	                  has been called with the candidates of the next pass. Used to build C_bar.
+ * 	- large         : Marks the candidates which have the minimum support once they are counted.
+ *
+ * Candidates are generated in the lexical order of their items, so the index of a candidate is also
+ * its rank in that order. There are no per candidate objects; getItemSet() creates one on demand
+ * for the output.
+ *
+ * @author shishir
+ *
+ */
+public class CandidateTable
+{
+	private final int itemsetSize;
+	private int size;
+
+	private int[] items;
+	private int[] supportCounts;
+	private int[] generators;
+
+	private int[] extensionOffsets;
+	private int[] extensions;
+
+	private BitSet large;
+	private int numLarge;
+
+	/*
+	 * @param itemsetSize - Number of items in each candidate.
+	 * @param capacity    - Expected number of candidates. The table grows past it if need be.
+	 */
+	public CandidateTable(int itemsetSize, int capacity)
+	{
+		this.itemsetSize = itemsetSize;
+		this.size = 0;
+
+		capacity = Math.max(capacity, 16);
+		this.items = new int[capacity * itemsetSize];
+		this.supportCounts = new int[capacity];
+		this.generators = new int[capacity * 2];
+
+		this.large = new BitSet();
+		this.numLarge = 0;
+	}
+
+	/*
+	 * Appends a candidate whose sorted items are srcItems[from .. from + itemsetSize), with a zero
+	 * support count. Returns its index.
+	 */
+	public int add(int[] srcItems, int from, int generator1, int generator2)
+	{
+		ensureCapacity(size + 1);
+		System.arraycopy(srcItems, from, items, size * itemsetSize, itemsetSize);
+		generators[2 * size] = generator1;
+		generators[2 * size + 1] = generator2;
+		supportCounts[size] = 0;
+		return size++;
+	}
+
+	/*
+	 * Appends a candidate of the first pass holding the single item, along with its support count.
+	 * Returns its index.
+	 */
+	public int add(int item, int supportCount)
+	{
+		ensureCapacity(size + 1);
+		items[size] = item;
+		generators[2 * size] = -1;
+		generators[2 * size + 1] = -1;
+		supportCounts[size] = supportCount;
+		return size++;
+	}
+
+	/*
+	 * Appends all the candidates of the other table, with their support counts and generators, e.g.
+	 * to put together the parts of a table generated in parallel.
+	 */
+	public void addAll(CandidateTable other)
+	{
+		ensureCapacity(size + other.size);
+		System.arraycopy(other.items, 0, items, size * itemsetSize, other.size * itemsetSize);
+		System.arraycopy(other.supportCounts, 0, supportCounts, size, other.size);
+		System.arraycopy(other.generators, 0, generators, 2 * size, 2 * other.size);
+		size += other.size;
+	}
+
+	/*
+	 * Builds the extensions of the candidates of this pass from the generators of the candidates of
+	 * the next pass. The extensions of a candidate come out in the ascending order.
+	 */
+	public void buildExtensions(CandidateTable next)
+	{
+		int[] nextGenerators = next.generators;
+		int numGenerators = 2 * next.size;
+
+		extensionOffsets = new int[size + 1];
+		for(int g=0; g < numGenerators; g++) {
+			extensionOffsets[nextGenerators[g] + 1]++;
+		}
+		for(int i=0; i < size; i++) {
+			extensionOffsets[i + 1] += extensionOffsets[i];
+		}
+
+		extensions = new int[numGenerators];
+		int[] fillOffsets = Arrays.copyOf(extensionOffsets, size);
+		for(int g=0; g < numGenerators; g++) {
+			extensions[fillOffsets[nextGenerators[g]]++] = g / 2;
+		}
+	}
+
+	/*
+	 * Marks the candidates which have the minimum support as large. Returns their number.
+	 */
+	public int markLarge(int minSupportCount)
+	{
+		large.clear();
+		numLarge = 0;
+		for(int i=0; i < size; i++) {
+			if(supportCounts[i] >= minSupportCount) {
+				large.set(i);
+				++numLarge;
+			}
+		}
+		return numLarge;
+	}
+
+	/*
+	 * Compares the items of candidate i with other[from .. from + itemsetSize) in the lexical order.
+	 */
+	public int compareItems(int i, int[] other, int from)
+	{
+		int start = i * itemsetSize;
+		for(int j=0; j < itemsetSize; j++) {
+			if(items[start + j] != other[from + j]) {
+				return items[start + j] < other[from + j] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/*
+	 * Creates the itemset object of candidate i, mapping the items through itemNames if it is not
+	 * null, e.g. ranks back to the original item ids.
+	 */
+	public ItemSet getItemSet(int i, int[] itemNames)
+	{
+		int[] itemsetItems = Arrays.copyOfRange(items, i * itemsetSize, (i + 1) * itemsetSize);
+		if(itemNames != null) {
+			for(int j=0; j < itemsetSize; j++) {
+				itemsetItems[j] = itemNames[itemsetItems[j]];
+			}
+			Arrays.sort(itemsetItems);
+		}
+		return new ItemSet(itemsetItems, supportCounts[i]);
+	}
+
+	/*
+	 * Approximate size of the table in bytes.
+	 */
+	public long getSizeInBytes()
+	{
+		long bytes = 4L * (items.length + supportCounts.length + generators.length);
+		if(extensions != null) {
+			bytes += 4L * (extensionOffsets.length + extensions.length);
+		}
+		return bytes + large.size() / 8;
+	}
+
+	private void ensureCapacity(int numCandidates)
+	{
+		if(numCandidates > supportCounts.length) {
+			int capacity = Math.max(numCandidates, 2 * supportCounts.length);
+			items = Arrays.copyOf(items, capacity * itemsetSize);
+			supportCounts = Arrays.copyOf(supportCounts, capacity);
+			generators = Arrays.copyOf(generators, capacity * 2);
+		}
+	}
+
+	public int getItemsetSize() {
+		return itemsetSize;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/*
+	 * Returns the items of all the candidates, candidate i starting at getItemsStart(i).
+	 */
+	public int[] getItems() {
+		return items;
+	}
+
+	public int getItemsStart(int index) {
+		return index * itemsetSize;
+	}
+
+	public int getItem(int index, int position) {
+		return items[index * itemsetSize + position];
+	}
+
+	public int[] getSupportCounts() {
+		return supportCounts;
+	}
+
+	public int getSupportCount(int index) {
+		return supportCounts[index];
+	}
+
+	public void setSupportCount(int index, int supportCount) {
+		supportCounts[index] = supportCount;
+	}
+
+	public void incrementSupportCount(int index) {
+		supportCounts[index]++;
+	}
+
+	public int getGenerator1(int index) {
+		return generators[2 * index];
+	}
+
+	public int getGenerator2(int index) {
+		return generators[2 * index + 1];
+	}
+
+	public int[] getExtensions() {
+		return extensions;
+	}
+
+	public int getExtensionsStart(int index) {
+		return extensionOffsets[index];
+	}
+
+	public int getExtensionsEnd(int index) {
+		return extensionOffsets[index + 1];
+	}
+
+	public boolean isLarge(int index) {
+		return large.get(index);
+	}
+
+	/*
+	 * Returns the index of the next large candidate at or after fromIndex, or -1 if there is none.
+	 */
+	public int nextLarge(int fromIndex) {
+		return large.nextSetBit(fromIndex);
+	}
+
+	public int getNumLarge() {
+		return numLarge;
+	}
+}
@@ -0,0 +1,275 @@
+package model;
+
+/**
+ * Prefix tree over the candidates of a pass, used to find the candidates contained in a transaction.
+ * It replaces the tree of HashTreeNode objects for the Apriori family : the nodes are numbered level
+ * by level and live in two flat arrays,
+ * 	- keys       : The item on the edge into each node. Node 0 is the root.
+ * 	- firstChild : Children of the internal node n are the nodes firstChild[n] .. firstChild[n+1]-1,
+ * 	               with their keys in the ascending order.
+ * The nodes of the last level are the leaves, one per candidate. Since the candidate table is in the
+ * lexical order, the leaves come in the order of the candidates, so leaf n stands for the candidate
+ * n - getNumInternalNodes().
+ *
+ * The trie is bulk loaded from the table in two scans, without any per node object.
+ *
+ * @author shishir
+ *
+ */
+public class CandidateTrie implements CandidateIndex
+{
+	private final int itemsetSize;
+	private final int numCandidates;
+
+	private int[] keys;
+	private int[] firstChild;
+	private int numInternalNodes;
+
+	private long buildTime;
+
+	/*
+	 * Builds the trie over the candidates, which must be in the lexical order of their items.
+	 */
+	public CandidateTrie(CandidateTable candidates)
+	{
+		long startTime = System.nanoTime();
+
+		this.itemsetSize = candidates.getItemsetSize();
+		this.numCandidates = candidates.getSize();
+		int[] items = candidates.getItems();
+
+		// First scan : count the nodes of each level. A candidate starts a new node at every level
+		// past the length of the prefix it shares with the previous candidate.
+		int[] levelStart = new int[itemsetSize + 2];
+		levelStart[1] = 1;
+		for(int c=0; c < numCandidates; c++) {
+			for(int d = getCommonPrefixLength(items, c); d < itemsetSize; d++) {
+				levelStart[d + 2]++;
+			}
+		}
+		for(int d=1; d <= itemsetSize; d++) {
+			levelStart[d + 1] += levelStart[d];
+		}
+		int numNodes = levelStart[itemsetSize + 1];
+		numInternalNodes = levelStart[itemsetSize];
+
+		// Second scan : lay out the nodes. Each new node is the next one on its level, and the child
+		// of the last node laid out on the level above.
+		keys = new int[numNodes];
+		firstChild = new int[numInternalNodes + 1];
+		keys[0] = -1;
+		int[] nextNode = new int[itemsetSize + 1];
+		System.arraycopy(levelStart, 0, nextNode, 0, itemsetSize + 1);
+		nextNode[0] = 1;
+		for(int c=0; c < numCandidates; c++) {
+			int start = c * itemsetSize;
+			for(int d = getCommonPrefixLength(items, c); d < itemsetSize; d++) {
+				int node = nextNode[d + 1]++;
+				keys[node] = items[start + d];
+
+				int parent = nextNode[d] - 1;
+				if(firstChild[parent] == 0) {
+					firstChild[parent] = node;
+				}
+			}
+		}
+		firstChild[numInternalNodes] = numNodes;
+
+		buildTime = System.nanoTime() - startTime;
+	}
+
+	/*
+	 * Length of the prefix candidate c shares with the candidate before it.
+	 */
+	private int getCommonPrefixLength(int[] items, int c)
+	{
+		if(c == 0) {
+			return 0;
+		}
+
+		int start = c * itemsetSize;
+		int prevStart = start - itemsetSize;
+		int d = 0;
+		while(d < itemsetSize && items[start + d] == items[prevStart + d]) {
+			++d;
+		}
+		return d;
+	}
+
+	/*
+	 * Returns the scratch space for the traversals of the trie. The trie itself is only read while
+	 * counting, so it can be shared by several threads as long as each of them has its own stack.
+	 */
+	@Override
+	public int[] newStack()
+	{
+		return new int[3 * itemsetSize];
+	}
+
+	/*
+	 * Increments the support count of every candidate contained in the transaction
+	 * items[startIndex .. endIndex), which must be sorted. supportCounts is indexed by candidate.
+	 *
+	 * The trie is walked depth first with an explicit stack instead of recursion, and nothing is
+	 * allocated : the stack holds, for each level above the current one, the node, the next item of
+	 * the transaction to match against its children, and the first child which can still match.
+	 */
+	@Override
+	public void countCandidates(int[] items, int startIndex, int endIndex, int[] supportCounts, int[] stack)
+	{
+		if(numCandidates == 0 || endIndex - startIndex < itemsetSize) {
+			return;
+		}
+
+		int depth = 0;
+		int node = 0;
+		int i = startIndex;
+		int childStart = firstChild[0];
+		while(true) {
+			int childEnd = firstChild[node + 1];
+			// The items after the one matched at this level must still fill the rest of the candidate.
+			int lastIndex = endIndex - (itemsetSize - depth - 1);
+			if(i < lastIndex && childStart < childEnd) {
+				int child = searchChild(items[i++], childStart, childEnd);
+				if(child < 0) {
+					// Items are sorted, so the children before the insertion point are not reachable anymore.
+					childStart = -(child + 1);
+					continue;
+				}
+				childStart = child + 1;
+
+				if(depth + 1 == itemsetSize) {
+					supportCounts[child - numInternalNodes]++;
+					continue;
+				}
+
+				stack[3 * depth] = node;
+				stack[3 * depth + 1] = i;
+				stack[3 * depth + 2] = childStart;
+				++depth;
+				node = child;
+				childStart = firstChild[child];
+			}
+			else {
+				if(depth == 0) {
+					break;
+				}
+				--depth;
+				node = stack[3 * depth];
+				i = stack[3 * depth + 1];
+				childStart = stack[3 * depth + 2];
+			}
+		}
+	}
+
+	/*
+	 * Same walk as countCandidates(), for the callers which need the candidates themselves. Their
+	 * indices are written to found[numFound ..], in the ascending order; found must have room for
+	 * all of them, e.g. as many as the candidates.
+	 *
+	 * @returns The number of candidates in found, including the numFound already there.
+	 */
+	@Override
+	public int findCandidates(int[] items, int startIndex, int endIndex, int[] found, int numFound, int[] stack)
+	{
+		if(numCandidates == 0 || endIndex - startIndex < itemsetSize) {
+			return numFound;
+		}
+
+		int depth = 0;
+		int node = 0;
+		int i = startIndex;
+		int childStart = firstChild[0];
+		while(true) {
+			int childEnd = firstChild[node + 1];
+			int lastIndex = endIndex - (itemsetSize - depth - 1);
+			if(i < lastIndex && childStart < childEnd) {
+				int child = searchChild(items[i++], childStart, childEnd);
+				if(child < 0) {
+					childStart = -(child + 1);
+					continue;
+				}
+				childStart = child + 1;
+
+				if(depth + 1 == itemsetSize) {
+					found[numFound++] = child - numInternalNodes;
+					continue;
+				}
+
+				stack[3 * depth] = node;
+				stack[3 * depth + 1] = i;
+				stack[3 * depth + 2] = childStart;
+				++depth;
+				node = child;
+				childStart = firstChild[child];
+			}
+			else {
+				if(depth == 0) {
+					break;
+				}
+				--depth;
+				node = stack[3 * depth];
+				i = stack[3 * depth + 1];
+				childStart = stack[3 * depth + 2];
+			}
+		}
+
+		return numFound;
+	}
+
+	/*
+	 * Binary search for the child with the item as its key among keys[from .. to). Returns the child,
+	 * or -(insertion point + 1) if there is no such child.
+	 */
+	private int searchChild(int item, int from, int to)
+	{
+		int low = from;
+		int high = to - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int key = keys[mid];
+			if(key < item) {
+				low = mid + 1;
+			}
+			else if(key > item) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public int getNumNodes() {
+		return keys.length;
+	}
+
+	public int getNumInternalNodes() {
+		return numInternalNodes;
+	}
+
+	/*
+	 * Time taken to build the trie, in nanoseconds.
+	 */
+	@Override
+	public long getBuildTime() {
+		return buildTime;
+	}
+
+	@Override
+	public long getSizeInBytes() {
+		return 4L * (keys.length + firstChild.length);
+	}
+
+	@Override
+	public double getBytesPerCandidate() {
+		return numCandidates > 0 ? (double)getSizeInBytes() / numCandidates : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CandidateTrie [candidates=%d, nodes=%d, build=%.1f ms, %.1f bytes/candidate]",
+				numCandidates, getNumNodes(), buildTime / 1e6, getBytesPerCandidate());
+	}
+}
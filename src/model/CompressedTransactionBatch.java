@@ -0,0 +1,193 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@link TransactionBatch} packed into a byte array. Per transaction, the encoding holds :
+ * 	- the gap from the previous tid of the block, zigzag encoded since tids need not be ascending.
+ * 	- the number of items.
+ * 	- the item ids as gaps from the previous item. The first item is stored as is.
+ *
+ * Each of these is written as a varint, 7 bits per byte with the high bit set on all but the last
+ * byte. Items of a transaction are sorted, so the gaps are small and mostly take a single byte,
+ * against 4 bytes per item plus 8 bytes per transaction for the tids and offsets of a batch.
+ *
+ * Blocks decode independently of each other, straight into the flat arrays of a batch, so that
+ * the scan loops can decode a block and count over it while it is still in the cache.
+ *
+ * @author shishir
+ *
+ */
+public class CompressedTransactionBatch
+{
+	private byte[] data;
+	private int numTxns;
+	private int numItems;
+
+	public CompressedTransactionBatch(byte[] data, int numTxns, int numItems)
+	{
+		this.data = data;
+		this.numTxns = numTxns;
+		this.numItems = numItems;
+	}
+
+	/*
+	 * Encodes the transactions of the batch.
+	 */
+	public static CompressedTransactionBatch encode(TransactionBatch batch)
+	{
+		int size = batch.getSize();
+		int[] tids = batch.getTids();
+		int[] offsets = batch.getOffsets();
+		int[] items = batch.getItems();
+
+		// A varint takes at most 5 bytes.
+		byte[] buf = new byte[5 * (2 * size + batch.getNumItems())];
+		int pos = 0;
+		int prevTid = 0;
+		for(int t=0; t < size; t++) {
+			int tidGap = tids[t] - prevTid;
+			pos = putVarInt(buf, pos, (tidGap << 1) ^ (tidGap >> 31));
+			prevTid = tids[t];
+
+			int start = offsets[t];
+			int end = offsets[t + 1];
+			pos = putVarInt(buf, pos, end - start);
+			int prevItem = 0;
+			for(int i=start; i < end; i++) {
+				pos = putVarInt(buf, pos, items[i] - prevItem);
+				prevItem = items[i];
+			}
+		}
+
+		return new CompressedTransactionBatch(Arrays.copyOf(buf, pos), size, batch.getNumItems());
+	}
+
+	/*
+	 * Clears the batch and decodes the transactions into it. The batch is grown if it is smaller
+	 * than this block.
+	 */
+	public void decode(TransactionBatch batch)
+	{
+		// Varints are read inline here, as this decoder runs inside the counting loops of every pass.
+		byte[] src = data;
+		int pos = 0;
+		batch.clear();
+		batch.ensureCapacity(numTxns);
+		batch.ensureItemsCapacity(numItems);
+		int[] items = batch.getItems();
+
+		int itemIndex = 0;
+		int prevTid = 0;
+		for(int t=0; t < numTxns; t++) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = src[pos++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			prevTid += (value >>> 1) ^ -(value & 1);
+
+			int numTxnItems = 0;
+			shift = 0;
+			do {
+				b = src[pos++];
+				numTxnItems |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+
+			int item = 0;
+			for(int i=0; i < numTxnItems; i++) {
+				b = src[pos++];
+				if(b >= 0) {
+					// Single byte gap, the common case.
+					item += b;
+				}
+				else {
+					value = b & 0x7F;
+					shift = 7;
+					do {
+						b = src[pos++];
+						value |= (b & 0x7F) << shift;
+						shift += 7;
+					} while(b < 0);
+					item += value;
+				}
+				items[itemIndex++] = item;
+			}
+			batch.commit(prevTid, numTxnItems);
+		}
+	}
+
+	/*
+	 * Decodes a block of numTxns transactions read from the current position of the buffer, as
+	 * stored by the binary transaction store. Leaves the position at the end of the block.
+	 */
+	public static void decode(ByteBuffer src, int numTxns, int numItems, TransactionBatch batch)
+	{
+		batch.clear();
+		batch.ensureCapacity(numTxns);
+		batch.ensureItemsCapacity(numItems);
+		int[] items = batch.getItems();
+
+		int itemIndex = 0;
+		int prevTid = 0;
+		for(int t=0; t < numTxns; t++) {
+			int zigzagGap = getVarInt(src);
+			prevTid += (zigzagGap >>> 1) ^ -(zigzagGap & 1);
+
+			int numTxnItems = getVarInt(src);
+			int item = 0;
+			for(int i=0; i < numTxnItems; i++) {
+				item += getVarInt(src);
+				items[itemIndex++] = item;
+			}
+			batch.commit(prevTid, numTxnItems);
+		}
+	}
+
+	private static int putVarInt(byte[] buf, int pos, int value)
+	{
+		while((value & ~0x7F) != 0) {
+			buf[pos++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[pos++] = (byte)value;
+		return pos;
+	}
+
+	private static int getVarInt(ByteBuffer src)
+	{
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = src.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+		return value;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getNumTxns() {
+		return numTxns;
+	}
+
+	public int getNumItems() {
+		return numItems;
+	}
+
+	/*
+	 * Approximate heap footprint of the block in bytes.
+	 */
+	public long getSizeInBytes() {
+		return data.length + 32;
+	}
+}
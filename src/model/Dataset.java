@@ -1,66 +1,207 @@
 package model;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+
 import util.Constants;
+import util.DatasetStats;
+
+import com.google.common.collect.Maps;
 
 /**
  * Represents the various datasets for which the frequent itemset mining algorithms have to be tested.
  * The general naming of the dataset is T<?>_I<?>_D<?>K
- * 
+ *
  * where 	T -> Average size of transactions
  * 			I -> Average size of the maximally potential large itemsets
  * 			D -> Number of transactions
- * 
+ *
  * 			Number of maximally potential large itemsets = 2000
  * 			Number of items = 1000
  * 			Correlation level = 0.5
- * 
+ *
+ * Datasets form a catalog. Besides the ones below, more can be registered at runtime through
+ * {@link #register(String, String, String)}, or listed in the catalog file at
+ * Constants.DATASET_CATALOG_LOCATION, one "<name> <data file location> [<db table>]" per line.
+ *
+ * The number of transactions and their average size are taken from the statistics sidecar of the
+ * data file whenever there is one, see {@link DatasetStats}. The numbers declared at registration
+ * are only used without a data file, e.g. for a dataset loaded in the database alone.
+ *
  * @author shishir
  *
  */
-public enum Dataset {
-	//REF_TESTDATA(3, 2, 4, "/data/simple", "REF_TESTDATASET"),
-	T5_I2_D100K(5, 2, 97048,    "/data/T5.I2.D100K",  "T5_I2_D100K"),
-	T10_I2_D100K(10, 2, 99916,  "/data/T10.I2.D100K", "T10_I2_D100K"),
-	T10_I4_D100K(10, 4, 98395,  "/data/T10.I4.D100K", "T10_I4_D100K"),
-	T20_I2_D100K(20, 2, 100000, "/data/T20.I2.D100K", "T20_I2_D100K"),
-	//T20_I4_D100K(20, 4, 99996,  "/data/T20.I4.D100K", "T20_I4_D100K"),
-	//T20_I6_D100K(20, 6, 99942,  "/data/T20.I6.D100K", "T20_I6_D100K"),
-	
+public class Dataset {
+
+	// All the registered datasets, in the order of registration.
+	private static final Map<String, Dataset> catalog = Maps.newLinkedHashMap();
+
+	//public static final Dataset REF_TESTDATA = register("REF_TESTDATA", 3, 2, 4, "/data/simple", "REF_TESTDATASET");
+	public static final Dataset T5_I2_D100K  = register("T5_I2_D100K",  5, 2, 97048,   "/data/T5.I2.D100K",  "T5_I2_D100K");
+	public static final Dataset T10_I2_D100K = register("T10_I2_D100K", 10, 2, 99916,  "/data/T10.I2.D100K", "T10_I2_D100K");
+	public static final Dataset T10_I4_D100K = register("T10_I4_D100K", 10, 4, 98395,  "/data/T10.I4.D100K", "T10_I4_D100K");
+	public static final Dataset T20_I2_D100K = register("T20_I2_D100K", 20, 2, 100000, "/data/T20.I2.D100K", "T20_I2_D100K");
+	//public static final Dataset T20_I4_D100K = register("T20_I4_D100K", 20, 4, 99996,  "/data/T20.I4.D100K", "T20_I4_D100K");
+	//public static final Dataset T20_I6_D100K = register("T20_I6_D100K", 20, 6, 99942,  "/data/T20.I6.D100K", "T20_I6_D100K");
+
 	//Scale-up
-	//T5_I2_D10000K(5, 2, 9707071,  "/data/T5.I2.D10000K", "T5_I2_D10000K"),
-	;
+	//public static final Dataset T5_I2_D10000K = register("T5_I2_D10000K", 5, 2, 9707071,  "/data/T5.I2.D10000K", "T5_I2_D10000K");
+
+	static {
+		loadCatalogFile();
+	}
 
+	private String name;
+	// Declared generator parameters. 0 if unknown. The statistics take precedence, if any.
 	private int avgTxnSize, avgMaxLargeItemsetSize;
-	// Total number of distinct transactions in this dataset
+	// Total number of distinct transactions in this dataset, as declared. Same as above.
 	private int numTxns;
-	
+
 	// The filesystem location where this dataset is stored
 	private String dataFileLocation;
 	// The database table for this dataset.
 	private String datasetDBTable;
 
-	private Dataset(
-			int avgTxnSize, int avgMaxLargeItemsetSize, int numTxns, 
+	// Statistics of the data file, loaded on first use.
+	private DatasetStats stats;
+	private boolean isStatsLoaded = false;
+
+	private Dataset(String name,
+			int avgTxnSize, int avgMaxLargeItemsetSize, int numTxns,
 			String dataFileLocation, String datasetDBTable)
 	{
+		this.name = name;
 		this.avgTxnSize = avgTxnSize;
 		this.avgMaxLargeItemsetSize = avgMaxLargeItemsetSize;
 		this.numTxns = numTxns;
 		this.dataFileLocation = dataFileLocation;
 		this.datasetDBTable = datasetDBTable;
 	}
-	
+
+	/*
+	 * Adds a dataset to the catalog.
+	 *
+	 * @throws IllegalArgumentException if a dataset of the same name has already been registered.
+	 */
+	public static synchronized Dataset register(String name,
+			int avgTxnSize, int avgMaxLargeItemsetSize, int numTxns,
+			String dataFileLocation, String datasetDBTable)
+	{
+		if(catalog.containsKey(name)) {
+			throw new IllegalArgumentException("Dataset " + name + " has already been registered.");
+		}
+
+		Dataset dataset = new Dataset(name, avgTxnSize, avgMaxLargeItemsetSize, numTxns, dataFileLocation, datasetDBTable);
+		catalog.put(name, dataset);
+		return dataset;
+	}
+
+	/*
+	 * Adds a dataset whose numbers are not known upfront. They are taken from the statistics of its
+	 * data file.
+	 */
+	public static Dataset register(String name, String dataFileLocation, String datasetDBTable)
+	{
+		return register(name, 0, 0, 0, dataFileLocation, datasetDBTable);
+	}
+
+	/*
+	 * Returns all the registered datasets, in the order of registration.
+	 */
+	public static synchronized Dataset[] values()
+	{
+		return catalog.values().toArray(new Dataset[catalog.size()]);
+	}
+
+	/*
+	 * Returns the dataset registered with this name.
+	 *
+	 * @throws IllegalArgumentException if there is no such dataset.
+	 */
+	public static synchronized Dataset valueOf(String name)
+	{
+		Dataset dataset = catalog.get(name);
+		if(dataset == null) {
+			throw new IllegalArgumentException("No dataset registered as " + name);
+		}
+		return dataset;
+	}
+
+	/*
+	 * Registers the datasets listed in the catalog file, if there is one.
+	 */
+	private static void loadCatalogFile()
+	{
+		File catalogFile = null;
+		try {
+			catalogFile = new File(new File(".").getCanonicalPath() + Constants.DATASET_CATALOG_LOCATION);
+			if(!catalogFile.exists()) {
+				return;
+			}
+
+			BufferedReader reader = new BufferedReader(new FileReader(catalogFile));
+			try {
+				String line = null;
+				while((line = reader.readLine()) != null) {
+					line = line.trim();
+					if(line.isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+
+					String[] fields = line.split("\\s+");
+					if(fields.length < 2) {
+						System.err.println("Skipping malformed line in the dataset catalog " + catalogFile + " : " + line);
+						continue;
+					}
+					register(fields[0], fields[1], fields.length > 2 ? fields[2] : fields[0]);
+				}
+			}
+			finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to read the dataset catalog " + catalogFile + ". Reason : " + e);
+		}
+	}
+
+	public String name()
+	{
+		return name;
+	}
+
+	/*
+	 * Returns the statistics of the data file, computing them on the first call if the sidecar is
+	 * missing or stale. Null if the dataset has no data file.
+	 */
+	public synchronized DatasetStats getStats()
+	{
+		if(!isStatsLoaded) {
+			stats = DatasetStats.getStats(this);
+			isStatsLoaded = true;
+		}
+		return stats;
+	}
+
 	public int getAvgTxnSize()
 	{
+		if(getStats() != null) {
+			return (int)Math.round(getStats().getAvgTxnLength());
+		}
 		return this.avgTxnSize;
 	}
-	
+
 	public int getAvgMaxLargeItemsetSize()
 	{
 		return this.avgMaxLargeItemsetSize;
 	}
-	
+
 	public int getNumTxns() {
+		if(getStats() != null) {
+			return getStats().getNumTxns();
+		}
 		return numTxns;
 	}
 
@@ -71,4 +212,10 @@ public enum Dataset {
 	public String getDatasetDBTable() {
 		return Constants.DB_NAME + "." + datasetDBTable;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
@@ -1,56 +1,49 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
-import com.google.common.base.Objects;
-import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.Ordering;
-
 /**
  * Represents itemsets i.e. a group of items that are bought together in a transaction, along
  * with their support counts in the input transaction dataset.
- * 
+ *
+ * The items are held in a sorted int array which is never modified once the itemset is created,
+ * so the hashcode is computed just once upfront. Only the support count changes while counting.
+ * The Apriori family keeps its candidates in a {@link CandidateTable} instead, and only creates
+ * itemsets for the output.
+ *
  * @author shishir
  *
  */
-public class ItemSet implements Comparable<ItemSet> 
+public class ItemSet implements Comparable<ItemSet>
 {
-	private int index;
-	
-	private List<Integer> items;
+	private final int[] items;
+	private final int hashCode;
 	private int supportCount;
-	
-	private int[] generators;
-	private List<Integer> extensions;
-	
-	public ItemSet(List<Integer> items, int supportCount) {
+
+	/*
+	 * Creates an itemset over the items, which must be sorted already. The array is owned by the
+	 * itemset from here on and must not be modified by the caller.
+	 */
+	public ItemSet(int[] items, int supportCount) {
 		super();
-		setItems(items);
+		this.items = items;
+		// Same value as the hashcode of the list of these items.
+		this.hashCode = Arrays.hashCode(items);
 		this.supportCount = supportCount;
-		
-		// TODO : Isn't this required only for AprioriTID & AprioriHybrid ? Can we just extend this
-		// class to AprioriItemset and make all these changes there ?
-		this.generators = new int[2];
-		this.extensions = new ArrayList<Integer>();
-	}
-	
-	public ItemSet()
-	{
-		this(new ArrayList<Integer>(), 0);
 	}
 
-	public ItemSet(List<Integer> items, int supportCount, Integer generator1, Integer generator2) {
-		this(items, supportCount);
-		this.generators[0] = generator1;
-		this.generators[1] = generator2;
+	/*
+	 * Creates an itemset over a list of items in any order.
+	 */
+	public ItemSet(List<Integer> items, int supportCount) {
+		this(toSortedArray(items), supportCount);
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder objStr = new StringBuilder();
-		for(Integer item : items) {
+		for(int item : items) {
 			objStr.append(item).append(" ");
 		}
 		objStr.append("-");
@@ -62,32 +55,34 @@ public class ItemSet implements Comparable<ItemSet>
 	// Two itemsets are equal if they have the same set of items.
 	@Override
 	public int hashCode() {
-		return Objects.hashCode(this.items);
+		return hashCode;
 	}
 
 	@Override
 	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof ItemSet)) {
+			return false;
+		}
 		ItemSet other = (ItemSet) obj;
-		return Objects.equal(this.items, other.items);
+		return this.hashCode == other.hashCode && Arrays.equals(this.items, other.items);
 	}
-	
-	public int getIndex()
-	{
-		return this.index;
-	}
-	
-	public void setIndex(int index)
-	{
-		this.index = index;
-	}
-	
-	public List<Integer> getItems() {
+
+	/*
+	 * Returns the sorted items of the itemset. The array is shared and must not be modified.
+	 */
+	public int[] getItems() {
 		return items;
 	}
 
-	public void setItems(List<Integer> items) {
-		this.items = items;
-		Collections.sort(this.items); // Items must be sorted for the frequent itemset mining algos
+	public int get(int index) {
+		return items[index];
+	}
+
+	public int size() {
+		return items.length;
 	}
 
 	public int getSupportCount() {
@@ -97,31 +92,36 @@ public class ItemSet implements Comparable<ItemSet>
 	public void setSupportCount(int supportCount) {
 		this.supportCount = supportCount;
 	}
-	
-	public int[] getGenerators()
-	{
-		return this.generators;
-	}
-	
-	public List<Integer> getExtensions()
-	{
-		return this.extensions;
-	}
 
+	/*
+	 * Lexicographical order of the items, an itemset coming before the ones it is a prefix of.
+	 */
 	@Override
 	public int compareTo(ItemSet that) {
-		return ComparisonChain.start().
-				compare(this.items, that.items, Ordering.<Integer>natural().lexicographical()).
-				result();
+		int[] thatItems = that.items;
+		int length = Math.min(items.length, thatItems.length);
+		for(int i=0; i < length; i++) {
+			if(items[i] != thatItems[i]) {
+				return items[i] < thatItems[i] ? -1 : 1;
+			}
+		}
+		return items.length - thatItems.length;
 	}
-	
+
 	public void incrementSupportCount()
 	{
 		this.supportCount++;
 	}
-	
-	public void addExtension(Integer extension)
+
+	private static int[] toSortedArray(List<Integer> items)
 	{
-		this.extensions.add(extension);
+		int[] itemsArray = new int[items.size()];
+		int index = 0;
+		for(Integer item : items) {
+			itemsArray[index++] = item;
+		}
+		// Items must be sorted for the frequent itemset mining algos
+		Arrays.sort(itemsArray);
+		return itemsArray;
 	}
 }
@@ -0,0 +1,101 @@
+package model;
+
+/**
+ * Open addressing hash table over the large itemsets of a candidate table, used by the prune step of
+ * apriori_gen to check the (k-1)-subsets of the new candidates. The table only holds the indices of
+ * the itemsets in the candidate table; the items are compared in place.
+ *
+ * A subset is looked up as the query items with one position skipped, so checking all the subsets of
+ * a candidate needs neither a copy of the subset nor any allocation. The table is only read once
+ * built, so it can be shared between threads.
+ *
+ * @author shishir
+ *
+ */
+public class ItemsetHashTable
+{
+	private final CandidateTable itemsets;
+	private final int itemsetSize;
+	private final int[] items;
+
+	// Index + 1 of the itemset in each slot, 0 for an empty slot. Linear probing.
+	private int[] slots;
+	private int mask;
+
+	/*
+	 * Builds the table over the large itemsets of the candidate table.
+	 */
+	public ItemsetHashTable(CandidateTable itemsets)
+	{
+		this.itemsets = itemsets;
+		this.itemsetSize = itemsets.getItemsetSize();
+		this.items = itemsets.getItems();
+
+		// At most half full, so that the probes stay short.
+		int capacity = Integer.highestOneBit(Math.max(2 * itemsets.getNumLarge(), 8) - 1) << 1;
+		slots = new int[capacity];
+		mask = capacity - 1;
+
+		for(int i = itemsets.nextLarge(0); i >= 0; i = itemsets.nextLarge(i + 1)) {
+			int slot = hash(items, itemsets.getItemsStart(i), -1) & mask;
+			while(slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+		}
+	}
+
+	/*
+	 * Returns the index of the large itemset made of the items query[0 .. itemsetSize], leaving out
+	 * the one at skipIndex, or -1 if there is no such itemset.
+	 */
+	public int find(int[] query, int skipIndex)
+	{
+		int slot = hash(query, 0, skipIndex) & mask;
+		while(slots[slot] != 0) {
+			int index = slots[slot] - 1;
+			if(isEqual(itemsets.getItemsStart(index), query, skipIndex)) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/*
+	 * Hash of the itemsetSize items starting at array[from], leaving out the one at from + skipIndex
+	 * if skipIndex is not -1.
+	 */
+	private int hash(int[] array, int from, int skipIndex)
+	{
+		int end = from + itemsetSize + (skipIndex >= 0 ? 1 : 0);
+		int skip = from + skipIndex;
+		int h = 1;
+		for(int i = from; i < end; i++) {
+			if(i != skip) {
+				h = 31 * h + array[i];
+			}
+		}
+		// Spread the bits, since the items are small dense ranks.
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private boolean isEqual(int start, int[] query, int skipIndex)
+	{
+		int q = 0;
+		for(int j=0; j < itemsetSize; j++, q++) {
+			if(q == skipIndex) {
+				++q;
+			}
+			if(items[start + j] != query[q]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getSizeInBytes() {
+		return 4L * slots.length;
+	}
+}
@@ -0,0 +1,176 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Support counts of all the pairs of frequent items, used to count the second pass directly instead
+ * of generating C2 and going through a candidate index. With every frequent item large, apriori_gen
+ * would make a candidate of every pair anyway, and the pair (i, j) of ranks i < j can be located
+ * arithmetically.
+ *
+ * The counts are held in a packed upper triangular matrix, row by row : the pairs (i, i+1) .. (i, n-1)
+ * of row i are at rowOffset[i] + i+1 .. rowOffset[i] + n-1, for n ranks. A transaction increments the
+ * count of every pair of its items; the items must be ranks, sorted.
+ *
+ * Once counted, getLargeItemsets() materializes C2 with just the pairs which have the minimum
+ * support. The matrix then maps the pairs to their index in C2 instead, so that AprioriTid can find
+ * the large pairs of a transaction to build C_bar of the second pass.
+ *
+ * @author shishir
+ *
+ */
+public class PairCountMatrix
+{
+	private final int numItems;
+	private final int numPairs;
+
+	private int[] rowOffset;
+	private int[] counts;
+	private boolean isMaterialized;
+
+	/*
+	 * @param numItems - Number of ranks, i.e. frequent items.
+	 */
+	public PairCountMatrix(int numItems)
+	{
+		long numPairs = (long)numItems * (numItems - 1) / 2;
+		if(numPairs > Integer.MAX_VALUE - 8) {
+			System.err.println("Too many frequent items for the pair count matrix : " + numItems);
+			System.exit(1);
+		}
+		this.numItems = numItems;
+		this.numPairs = (int)numPairs;
+
+		rowOffset = new int[numItems];
+		for(int i=0; i < numItems; i++) {
+			rowOffset[i] = (int)((long)i * (2 * numItems - i - 1) / 2) - (i + 1);
+		}
+		counts = new int[this.numPairs];
+		isMaterialized = false;
+	}
+
+	/*
+	 * Counts all the pairs of the sorted items[startIndex .. endIndex).
+	 */
+	public void countPairs(int[] items, int startIndex, int endIndex)
+	{
+		for(int a = startIndex; a < endIndex - 1; a++) {
+			int rowStart = rowOffset[items[a]];
+			for(int b = a + 1; b < endIndex; b++) {
+				counts[rowStart + items[b]]++;
+			}
+		}
+	}
+
+	/*
+	 * Adds the counts of the other matrix over the same items, e.g. one counted by another thread.
+	 */
+	public void addCounts(PairCountMatrix other)
+	{
+		int[] otherCounts = other.counts;
+		for(int p=0; p < numPairs; p++) {
+			counts[p] += otherCounts[p];
+		}
+	}
+
+	/*
+	 * Adds shared counts indexed like this matrix, e.g. ones counted by several threads through
+	 * findPairs().
+	 */
+	public void addCounts(AtomicIntegerArray sharedCounts)
+	{
+		for(int p=0; p < numPairs; p++) {
+			counts[p] += sharedCounts.get(p);
+		}
+	}
+
+	/*
+	 * Writes the indices in this matrix of all the pairs of the sorted items[startIndex .. endIndex) to
+	 * found[numFound ..], for them to be counted elsewhere. Only reads the matrix, so it can be called
+	 * from several threads. Returns the number of pairs in found, including the numFound already there.
+	 */
+	public int findPairs(int[] items, int startIndex, int endIndex, int[] found, int numFound)
+	{
+		for(int a = startIndex; a < endIndex - 1; a++) {
+			int rowStart = rowOffset[items[a]];
+			for(int b = a + 1; b < endIndex; b++) {
+				found[numFound++] = rowStart + items[b];
+			}
+		}
+		return numFound;
+	}
+
+	/*
+	 * Returns C2 holding the pairs which have the minimum support, in the lexical order, all marked
+	 * large. Their generators are the two items, whose ranks are also their indices in C1. From here
+	 * on, the matrix holds the index in C2 of each pair, -1 for the ones left out.
+	 */
+	public CandidateTable getLargeItemsets(int minSupportCount)
+	{
+		int numLarge = 0;
+		for(int p=0; p < numPairs; p++) {
+			if(counts[p] >= minSupportCount) {
+				++numLarge;
+			}
+		}
+
+		CandidateTable largeItemsets = new CandidateTable(2, numLarge);
+		int[] pair = new int[2];
+		int p = 0;
+		for(int i=0; i < numItems; i++) {
+			pair[0] = i;
+			for(int j = i + 1; j < numItems; j++, p++) {
+				if(counts[p] < minSupportCount) {
+					counts[p] = -1;
+					continue;
+				}
+				pair[1] = j;
+				int index = largeItemsets.add(pair, 0, i, j);
+				largeItemsets.setSupportCount(index, counts[p]);
+				counts[p] = index;
+			}
+		}
+		largeItemsets.markLarge(minSupportCount);
+		isMaterialized = true;
+
+		return largeItemsets;
+	}
+
+	/*
+	 * Writes the indices in C2 of the large pairs of the sorted items[startIndex .. endIndex) to
+	 * found[numFound ..], in the ascending order. Only valid once C2 has been materialized. Returns the
+	 * number of pairs in found, including the numFound already there.
+	 */
+	public int findLargePairs(int[] items, int startIndex, int endIndex, int[] found, int numFound)
+	{
+		for(int a = startIndex; a < endIndex - 1; a++) {
+			int rowStart = rowOffset[items[a]];
+			for(int b = a + 1; b < endIndex; b++) {
+				int index = counts[rowStart + items[b]];
+				if(index >= 0) {
+					found[numFound++] = index;
+				}
+			}
+		}
+		return numFound;
+	}
+
+	public int getNumItems() {
+		return numItems;
+	}
+
+	/*
+	 * Number of pairs counted, i.e. the number of candidates of the second pass.
+	 */
+	public int getNumPairs() {
+		return numPairs;
+	}
+
+	public boolean isMaterialized() {
+		return isMaterialized;
+	}
+
+	public long getSizeInBytes() {
+		return 4L * (counts.length + rowOffset.length);
+	}
+}
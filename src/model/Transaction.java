@@ -1,61 +1,77 @@
 package model;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Represents a real-world retail store transaction. It consists of :
  * 	- tid : Transaction Id
  * 	- cid : Customer Id
- *  - items : List of items purchased in this transaction.
- *  
- *  If transaction id is not present in the dataset, it is defaulted to customer id.
+ *  - items : Sorted array of items purchased in this transaction.
+ *
+ *  If transaction id is not present in the dataset, it is defaulted to customer id. Transactions
+ *  are not modified once created.
  *  @author shishir
  */
-public class Transaction 
+public class Transaction
 {
-	private int tid;
-	private int cid;
-	private List<Integer> items;
-	
+	private final int tid;
+	private final int cid;
+	private final int[] items;
+
 	public Transaction(int tid, int cid, List<Integer> items) {
+		this(tid, cid, toArray(items), false);
+	}
+
+	/*
+	 * Creates a transaction over the array of items, which is owned by the transaction from here
+	 * on. If the caller guarantees the items to be sorted already, e.g. items read from the binary
+	 * store or a sorted text file, the sort is skipped.
+	 */
+	public Transaction(int tid, int cid, int[] items, boolean isSorted) {
 		super();
 		this.tid = tid;
 		this.cid = cid;
-		
-		setItems(items);
+		this.items = items;
+
+		// Keep the items in a transaction sorted. This aids in the candidate generation
+		// and pruning phase.
+		if(!isSorted) {
+			Arrays.sort(this.items);
+		}
 	}
 
 	@Override
 	public String toString() {
-		return "Transaction [tid=" + tid + ", cid=" + cid + ", items=" + items + "]";
+		return "Transaction [tid=" + tid + ", cid=" + cid + ", items=" + Arrays.toString(items) + "]";
 	}
 
 	public int getTid() {
 		return tid;
 	}
 
-	public void setTid(int tid) {
-		this.tid = tid;
-	}
-
 	public int getCid() {
 		return cid;
 	}
 
-	public void setCid(int cid) {
-		this.cid = cid;
-	}
-
-	public List<Integer> getItems() {
+	/*
+	 * Returns the sorted items of the transaction. The array is shared and must not be modified.
+	 */
+	public int[] getItems() {
 		return items;
 	}
 
-	public void setItems(List<Integer> items) {
-		this.items = items;
+	public int size() {
+		return items.length;
+	}
 
-		// Keep the list of items in a transaction sorted. This aids in the candidate generation 
-		// and pruning phase.
-		Collections.sort(this.items);
+	private static int[] toArray(List<Integer> items)
+	{
+		int[] itemsArray = new int[items.size()];
+		int index = 0;
+		for(Integer item : items) {
+			itemsArray[index++] = item;
+		}
+		return itemsArray;
 	}
 }
@@ -0,0 +1,216 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A reusable block of transactions laid out as structure-of-arrays :
+ * 	- tids    : Transaction id of each transaction in the batch.
+ * 	- offsets : Items of transaction i are stored in items[offsets[i] .. offsets[i+1]).
+ * 	- items   : Sorted item ids of all the transactions in the batch, back to back.
+ *
+ * Readers fill a batch with thousands of transactions at a time (see util.InputReader.nextBatch), so
+ * the scan loops of the algorithms work on flat int arrays and allocate nothing per transaction.
+ *
+ * @author shishir
+ *
+ */
+public class TransactionBatch
+{
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private int[] tids;
+	private int[] offsets;
+	private int[] items;
+	private int size;
+
+	public TransactionBatch()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/*
+	 * @param capacity - Maximum number of transactions held by this batch.
+	 */
+	public TransactionBatch(int capacity)
+	{
+		this.tids = new int[capacity];
+		this.offsets = new int[capacity + 1];
+		this.items = new int[capacity * 16];
+		this.size = 0;
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public boolean isFull()
+	{
+		return size == tids.length;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/*
+	 * Appends a transaction whose sorted items are txnItems[from .. from + numItems).
+	 */
+	public void add(int tid, int[] txnItems, int from, int numItems)
+	{
+		int start = offsets[size];
+		ensureItemsCapacity(start + numItems);
+		System.arraycopy(txnItems, from, items, start, numItems);
+
+		tids[size] = tid;
+		offsets[++size] = start + numItems;
+	}
+
+	/*
+	 * Appends a transaction held in the object form.
+	 */
+	public void add(Transaction txn)
+	{
+		int start = offsets[size];
+		int numItems = txn.size();
+		ensureItemsCapacity(start + numItems);
+		System.arraycopy(txn.getItems(), 0, items, start, numItems);
+
+		tids[size] = txn.getTid();
+		offsets[++size] = start + numItems;
+	}
+
+	/*
+	 * Makes sure that the items array can hold at least the specified number of items. Readers
+	 * which write directly into getItems() must call this first.
+	 */
+	public void ensureItemsCapacity(int numItems)
+	{
+		if(numItems > items.length) {
+			items = Arrays.copyOf(items, Math.max(numItems, items.length * 2));
+		}
+	}
+
+	/*
+	 * Appends the transactions of the other batch starting at fromIndex, till this batch is full.
+	 * Returns the number of transactions appended.
+	 */
+	public int addFrom(TransactionBatch other, int fromIndex)
+	{
+		int numAdded = 0;
+		for(int t=fromIndex; t < other.size && !isFull(); t++) {
+			int start = other.offsets[t];
+			add(other.tids[t], other.items, start, other.offsets[t + 1] - start);
+			++numAdded;
+		}
+
+		return numAdded;
+	}
+
+	/*
+	 * Exchanges the contents of the two batches, without copying any of them.
+	 */
+	public void swap(TransactionBatch other)
+	{
+		int[] swapTids = tids;
+		int[] swapOffsets = offsets;
+		int[] swapItems = items;
+		int swapSize = size;
+
+		tids = other.tids;
+		offsets = other.offsets;
+		items = other.items;
+		size = other.size;
+
+		other.tids = swapTids;
+		other.offsets = swapOffsets;
+		other.items = swapItems;
+		other.size = swapSize;
+	}
+
+	/*
+	 * Grows the batch, keeping its contents, so that it can hold at least the specified number of
+	 * transactions.
+	 */
+	public void ensureCapacity(int numTxns)
+	{
+		if(numTxns > tids.length) {
+			tids = Arrays.copyOf(tids, numTxns);
+			offsets = Arrays.copyOf(offsets, numTxns + 1);
+		}
+	}
+
+	/*
+	 * Appends a transaction whose items have already been written right after the items of the
+	 * batch, i.e. at getItems()[getNumItems() ..].
+	 */
+	public void commit(int tid, int numItems)
+	{
+		tids[size] = tid;
+		offsets[size + 1] = offsets[size] + numItems;
+		++size;
+	}
+
+	/*
+	 * Replaces the contents of this batch with a copy of the other batch, growing this batch if it
+	 * is smaller than the other one.
+	 */
+	public void copyFrom(TransactionBatch other)
+	{
+		ensureCapacity(other.size);
+		ensureItemsCapacity(other.getNumItems());
+
+		System.arraycopy(other.tids, 0, tids, 0, other.size);
+		System.arraycopy(other.offsets, 0, offsets, 0, other.size + 1);
+		System.arraycopy(other.items, 0, items, 0, other.getNumItems());
+		size = other.size;
+	}
+
+	/*
+	 * Approximate heap footprint of the batch in bytes.
+	 */
+	public long getSizeInBytes()
+	{
+		return 4L * (tids.length + offsets.length + items.length) + 64;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return tids.length;
+	}
+
+	public int getTid(int index) {
+		return tids[index];
+	}
+
+	public int getItemsStart(int index) {
+		return offsets[index];
+	}
+
+	public int getItemsEnd(int index) {
+		return offsets[index + 1];
+	}
+
+	/*
+	 * Total number of items across all the transactions in the batch.
+	 */
+	public int getNumItems() {
+		return offsets[size];
+	}
+
+	public int[] getTids() {
+		return tids;
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getItems() {
+		return items;
+	}
+}
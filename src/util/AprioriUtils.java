@@ -1,181 +1,246 @@
 package util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import model.CandidateItemset;
-import model.ItemSet;
-import model.LargeItemset;
-
-import com.google.common.collect.Lists;
-import com.javamex.classmexer.MemoryUtil;
+import model.CandidateTable;
+import model.ItemsetHashTable;
 
 /**
  * Common functions used by all Apriori-based Algorithms
- * 
+ *
  * @author saurabh
  *
  */
 
 public class AprioriUtils {
-	
+
+	// Number of joins below which the candidates are generated on the calling thread.
+	private static final long MIN_PARALLEL_JOINS = 1 << 16;
+	// Number of join tasks per worker thread, to even out the load since pruning varies by class.
+	private static final int TASKS_PER_THREAD = 4;
+
 	/*
-	 * Given large itemsets of length (k-1), returns candidate itemsets of length (k).
+	 * Given the candidates of length (k-1), of which the large ones have been marked, returns the
+	 * candidate itemsets of length (k). The candidates are generated in the lexical order of their
+	 * items and record the two large itemsets they were joined from as their generators.
+	 *
+	 * Only the itemsets sharing their first (k-2) items can be joined. The large itemsets are in the
+	 * lexical order, so these come in contiguous blocks, and every pair within a block is joined
+	 * without comparing the itemsets of different blocks at all.
 	 */
-	public static List<ItemSet> apriori_gen(ItemSet[] allItemsets, List<Integer> largeItemsetIndices, int itemSetSize)
+	public static CandidateTable apriori_gen(CandidateTable largeItemsets)
 	{
-		List<ItemSet> candidateItemSets = Lists.newArrayList();
-		List<Integer> items = null;
+		return apriori_gen(largeItemsets, Constants.NUM_WORKER_THREADS);
+	}
 
-		List<ItemSet> largeItemsets = getLargeItemsetsFromIndices(allItemsets, largeItemsetIndices);
-		Map<Integer, List<ItemSet>> largeItemsetsMap = MiningUtils.getLargeItemsetMap(largeItemsets);
+	/*
+	 * Same as above on numThreads threads. Each large itemset is joined with the ones after it in its
+	 * block independently of the others, so the large itemsets are split in ranges of about the same
+	 * number of joins, which are generated by fork-join workers into tables of their own. The tables
+	 * are then concatenated in the order of the ranges, so the candidates come out exactly as from
+	 * a single thread.
+	 */
+	public static CandidateTable apriori_gen(CandidateTable largeItemsets, int numThreads)
+	{
+		int itemSetSize = largeItemsets.getItemsetSize();
 
-		int new_cand_index = 0;
-		Integer[] largeItemSetsArray = largeItemsetIndices.toArray(new Integer[largeItemsetIndices.size()]);
-		//System.out.println("#############" + largeItemSetsArray.length);
-		int count = 0;
-		for(int i = 0; i < largeItemSetsArray.length; i++)
+		// Indices of the large itemsets, which are in the lexical order as well.
+		int[] largeItemSetsArray = new int[largeItemsets.getNumLarge()];
+		int numLarge = 0;
+		for(int i = largeItemsets.nextLarge(0); i >= 0; i = largeItemsets.nextLarge(i + 1)) {
+			largeItemSetsArray[numLarge++] = i;
+		}
+
+		// End of the block of each large itemset, and the number of joins of the ones before it.
+		int[] blockEnds = new int[numLarge];
+		long[] joinOffsets = new long[numLarge + 1];
+		int[] items = largeItemsets.getItems();
+		int blockStart = 0;
+		while(blockStart < numLarge)
 		{
-			for(int j = i + 1; j < largeItemSetsArray.length; j++) {
-				List<Integer> outerItems = allItemsets[largeItemSetsArray[i]].getItems();
-				List<Integer> innerItems = allItemsets[largeItemSetsArray[j]].getItems();
-		
-				if((itemSetSize -1) > 0) {
-					boolean isMatch = true;
-					for(int k=0; k < (itemSetSize -1); k++) {
-						if(!outerItems.get(k).equals(innerItems.get(k))) {
-							isMatch = false;
-							break;
-						}
-					}
-					if(isMatch) {
-						items = Lists.newArrayList();
-						items.addAll(outerItems);
-						items.add(innerItems.get(itemSetSize-1));
-						
-						ItemSet newitemset = new ItemSet(items, 0, largeItemSetsArray[i], largeItemSetsArray[j]);
-						
-						if(prune(largeItemsetsMap, newitemset))
-						{
-							newitemset.setIndex(new_cand_index);
-							candidateItemSets.add(newitemset);
-							allItemsets[largeItemSetsArray[i]].addExtension(new_cand_index);
-							allItemsets[largeItemSetsArray[j]].addExtension(new_cand_index);
-							new_cand_index++;
-						}
-					}
-				}
-				// Handle the base case for generation of candidate itemsets for k-1 = 1.
-				else {
-					if(outerItems.get(0) < innerItems.get(0)) {
-						items = Lists.newArrayList();
-						items.add(outerItems.get(0));
-						items.add(innerItems.get(0));
-						
-						ItemSet newitemset = new ItemSet(items, 0, largeItemSetsArray[i], largeItemSetsArray[j]);
-						newitemset.setIndex(new_cand_index);
-						
-						candidateItemSets.add(newitemset);
-						allItemsets[largeItemSetsArray[i]].addExtension(new_cand_index);
-						allItemsets[largeItemSetsArray[j]].addExtension(new_cand_index);
-						new_cand_index++;
-						count++;
-					}
-				}
+			// The block of the large itemsets sharing the prefix of the first one. The base case
+			// k-1 = 1 has no common prefix to match, so all of them make one block.
+			int prefixStart = largeItemsets.getItemsStart(largeItemSetsArray[blockStart]);
+			int blockEnd = blockStart + 1;
+			while(blockEnd < numLarge && 
+					hasSamePrefix(items, prefixStart, largeItemsets.getItemsStart(largeItemSetsArray[blockEnd]), itemSetSize - 1)) {
+				++blockEnd;
 			}
+			for(int i = blockStart; i < blockEnd; i++) {
+				blockEnds[i] = blockEnd;
+				joinOffsets[i + 1] = joinOffsets[i] + (blockEnd - i - 1);
+			}
+			blockStart = blockEnd;
+		}
+
+		ItemsetHashTable largeItemsetsTable = itemSetSize > 1 ? new ItemsetHashTable(largeItemsets) : null;
+		JoinTask joinTask = new JoinTask(largeItemsets, largeItemSetsArray, blockEnds, joinOffsets, largeItemsetsTable, 0, numLarge, 
+				Math.max(MIN_PARALLEL_JOINS, joinOffsets[numLarge] / ((long)numThreads * TASKS_PER_THREAD)));
+		if(numThreads <= 1 || joinOffsets[numLarge] < MIN_PARALLEL_JOINS) {
+			return joinTask.generate(0, numLarge);
+		}
+
+		List<CandidateTable> parts = null;
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			parts = pool.invoke(joinTask);
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		int numCandidates = 0;
+		for(CandidateTable part : parts) {
+			numCandidates += part.getSize();
+		}
+		CandidateTable candidateItemSets = new CandidateTable(itemSetSize + 1, numCandidates);
+		for(CandidateTable part : parts) {
+			candidateItemSets.addAll(part);
 		}
-		//System.out.println("#############" + count);
-		
 		return candidateItemSets;
 	}
 
-	/*
-	 * Gets the actual large itemsets from the indices.
+	/**
+	 * Joins the large itemsets [from, to) with the ones after them in their blocks, splitting the
+	 * range in halves of about the same number of joins till it is down to maxJoins. The halves are
+	 * listed in order, so the candidates of the parts stay in the lexical order.
 	 */
-	private static List<ItemSet> getLargeItemsetsFromIndices(
-			ItemSet[] allItemsets, List<Integer> largeItemsetIndices)
+	private static class JoinTask extends RecursiveTask<List<CandidateTable>>
 	{
-		List<ItemSet> largeItemsets = Lists.newArrayList();
-		for(Integer index : largeItemsetIndices) {
-			largeItemsets.add(allItemsets[index]);
+		private static final long serialVersionUID = 1L;
+
+		private CandidateTable largeItemsets;
+		private int[] largeItemSetsArray;
+		private int[] blockEnds;
+		private long[] joinOffsets;
+		private ItemsetHashTable largeItemsetsTable;
+		private int from, to;
+		private long maxJoins;
+
+		JoinTask(CandidateTable largeItemsets, int[] largeItemSetsArray, int[] blockEnds, long[] joinOffsets,
+				ItemsetHashTable largeItemsetsTable, int from, int to, long maxJoins)
+		{
+			this.largeItemsets = largeItemsets;
+			this.largeItemSetsArray = largeItemSetsArray;
+			this.blockEnds = blockEnds;
+			this.joinOffsets = joinOffsets;
+			this.largeItemsetsTable = largeItemsetsTable;
+			this.from = from;
+			this.to = to;
+			this.maxJoins = maxJoins;
 		}
 
-		return largeItemsets;
-	}
+		@Override
+		protected List<CandidateTable> compute()
+		{
+			if(to - from <= 1 || joinOffsets[to] - joinOffsets[from] <= maxJoins) {
+				List<CandidateTable> parts = new ArrayList<CandidateTable>();
+				parts.add(generate(from, to));
+				return parts;
+			}
 
-	/*
-	 * Returns false if any of the query candidate itemset's (K-1) subset
-	 * does not belong to the list of (K-1) large itemsets.
-	 */
-	private static boolean prune(Map<Integer, List<ItemSet>> largeItemsetsMap, ItemSet query)
-	{
-		List<ItemSet> subsets = getSubsets(query);
-			
-		for(ItemSet s : subsets) {
-			boolean contains = false;
-			int hashCodeToSearch = s.hashCode();
-			if(largeItemsetsMap.containsKey(hashCodeToSearch)) {
-				List<ItemSet> candidateItemsets = largeItemsetsMap.get(hashCodeToSearch);
-				for(ItemSet itemset : candidateItemsets) {
-					if(itemset.equals(s)) {
-						contains = true;
-						break;
+			// Split where half of the joins of the range are done.
+			long midJoins = (joinOffsets[from] + joinOffsets[to]) >>> 1;
+			int mid = Arrays.binarySearch(joinOffsets, from, to, midJoins);
+			mid = (mid >= 0) ? mid : -(mid + 1);
+			mid = Math.min(Math.max(mid, from + 1), to - 1);
+
+			JoinTask left = new JoinTask(largeItemsets, largeItemSetsArray, blockEnds, joinOffsets, largeItemsetsTable, from, mid, maxJoins);
+			JoinTask right = new JoinTask(largeItemsets, largeItemSetsArray, blockEnds, joinOffsets, largeItemsetsTable, mid, to, maxJoins);
+			right.fork();
+			List<CandidateTable> parts = left.compute();
+			parts.addAll(right.join());
+			return parts;
+		}
+
+		/*
+		 * Joins the large itemsets [from, to) with the ones after them in their blocks, and prunes the
+		 * new candidates.
+		 */
+		CandidateTable generate(int from, int to)
+		{
+			int itemSetSize = largeItemsets.getItemsetSize();
+			CandidateTable candidateItemSets = new CandidateTable(itemSetSize + 1, to - from);
+
+			int[] items = largeItemsets.getItems();
+			int[] newItems = new int[itemSetSize + 1];
+			for(int i = from; i < to; i++)
+			{
+				int outerStart = largeItemsets.getItemsStart(largeItemSetsArray[i]);
+				System.arraycopy(items, outerStart, newItems, 0, itemSetSize);
+				for(int j = i + 1; j < blockEnds[i]; j++) {
+					// Both are sorted and share the prefix, so the inner itemset which comes later has
+					// the larger last item.
+					int innerStart = largeItemsets.getItemsStart(largeItemSetsArray[j]);
+					newItems[itemSetSize] = items[innerStart + itemSetSize - 1];
+
+					if(itemSetSize > 1 && !prune(largeItemsetsTable, newItems)) {
+						continue;
 					}
+
+					candidateItemSets.add(newItems, 0, largeItemSetsArray[i], largeItemSetsArray[j]);
 				}
 			}
 
-			if(!contains)
-				return false;
+			return candidateItemSets;
 		}
+	}
 
+	private static boolean hasSamePrefix(int[] items, int start1, int start2, int prefixLength)
+	{
+		for(int p=0; p < prefixLength; p++) {
+			if(items[start1 + p] != items[start2 + p]) {
+				return false;
+			}
+		}
 		return true;
 	}
-	
+
 	/*
-	 * Generate all possible k-1 subsets for this itemset (preserves order)
+	 * Returns false if any of the query candidate itemset's (K-1) subset
+	 * does not belong to the (K-1) large itemsets. The subsets are looked up in place in the hash
+	 * table of the large itemsets, without being copied out.
 	 */
-	private static List<ItemSet> getSubsets(ItemSet itemset)
+	private static boolean prune(ItemsetHashTable largeItemsetsTable, int[] query)
 	{
-		List<ItemSet> subsets = new ArrayList<ItemSet>();
-		
-		List<Integer> items = itemset.getItems();
-		for(int i = 0; i < items.size(); i++) {
-			List<Integer> currItems = new ArrayList<Integer>(items);
-			currItems.remove(items.size() - 1 - i);
-			subsets.add(new ItemSet(currItems, 0));
+		// The two subsets leaving out one of the last two items are the generators.
+		for(int removeIndex = query.length - 3; removeIndex >= 0; removeIndex--) {
+			if(largeItemsetsTable.find(query, removeIndex) < 0)
+				return false;
 		}
 
-		return subsets;
+		return true;
 	}
-	
-	public static long getEstimateSizeCBar(long numTransactions, CandidateItemset candidateItemsets)
+
+	/*
+	 * Estimates the size in bytes of C_bar of the next pass, held as a transaction batch of candidate
+	 * ids : a tid and an offset per transaction and an int per candidate occurrence.
+	 */
+	public static long getEstimateSizeCBar(long numTransactions, CandidateTable candidateItemsets)
 	{
-		long memoryUsage = numTransactions;
-		
-		int sumSupport = 0;
-		
-		for(ItemSet itemset : candidateItemsets.getItemsets())
+		long memoryUsage = 8 * numTransactions;
+
+		long sumSupport = 0;
+		for(int i = 0; i < candidateItemsets.getSize(); i++)
 		{
-			if(itemset == null)
-				break;
-			sumSupport += itemset.getSupportCount();
+			sumSupport += candidateItemsets.getSupportCount(i);
 		}
-		
-		//Multiply sumSupport with size of 1 itemset.
-		if(sumSupport > 0)
-			memoryUsage += (sumSupport * MemoryUtil.deepMemoryUsageOf(candidateItemsets.getItemsets()[0]));
-		
+		memoryUsage += 4 * sumSupport;
+
 		return memoryUsage;
 	}
-	
-	public static void print(LargeItemset l, ItemSet[] allItemsets)
+
+	public static void print(CandidateTable candidateItemsets)
 	{
-		for(Integer i : l.getItemsetIds())
+		for(int i = candidateItemsets.nextLarge(0); i >= 0; i = candidateItemsets.nextLarge(i + 1))
 		{
-			for(Integer j : allItemsets[i].getItems())
-				System.out.print(j + " ");
-			System.out.println("- " + allItemsets[i].getSupportCount());
+			for(int j = 0; j < candidateItemsets.getItemsetSize(); j++)
+				System.out.print(candidateItemsets.getItem(i, j) + " ");
+			System.out.println("- " + candidateItemsets.getSupportCount(i));
 		}
 	}
 }
@@ -0,0 +1,245 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Describes the on-disk layout of the binary transaction store. A dataset converted to this format
+ * can be memory-mapped and scanned directly, without re-parsing the text file on every pass.
+ *
+ * The layout is CSR (compressed sparse row) style :
+ *
+ * 	- Header  : fixed size block holding the counts and the byte position of each section.
+ * 	- Items   : one flat int array with the sorted item ids of all the transactions, back to back.
+ * 	- Tids    : int array with the transaction id of each transaction.
+ * 	- Offsets : int array of (numTxns + 1) entries. Items of transaction i are stored in the range
+ * 	            [offsets[i], offsets[i+1]) of the items array.
+ *
+ * The items section is written first so that the converter can stream it out without knowing the
+ * number of transactions upfront. All values are stored in little-endian byte order.
+ *
+ * Version 2 stores the transactions compressed instead (see model.CompressedTransactionBatch) :
+ *
+ * 	- Header  : as above, with the position and length of the blocks section in place of the
+ * 	            section positions of version 1.
+ * 	- Blocks  : blocks of up to model.TransactionBatch.DEFAULT_CAPACITY transactions, each one a
+ * 	            triple of ints (numTxns, numItems, numBytes) followed by numBytes of encoded data.
+ *
+ * This typically takes a quarter of the space of version 1, and so of the bytes scanned per pass.
+ *
+ * When the binary file is converted from a text dataset file, the header also records the size and
+ * the modification time of the text file at SOURCE_POSITION, like DatasetStats does for its sidecar.
+ * A binary file whose text file has changed since is stale, and the readers fall back to the text.
+ *
+ * @author shishir
+ *
+ */
+public class BinaryTransactionFormat
+{
+	public static final int MAGIC = 0x43535254; // "CSRT"
+	public static final int VERSION = 1;
+	public static final int COMPRESSED_VERSION = 2;
+	public static final int BLOCK_HEADER_SIZE = 12;
+
+	public static final int HEADER_SIZE = 64;
+	// Position in the header of the size and modification time of the source text file, 0 if unknown.
+	public static final int SOURCE_POSITION = 48;
+	public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// A single memory mapping is limited to 2GB, which caps the size of the items section, and of
+	// the blocks section in the compressed version.
+	public static final long MAX_ITEMS = Integer.MAX_VALUE / 4;
+	public static final long MAX_BLOCKS_LENGTH = Integer.MAX_VALUE;
+
+	// Extension appended to the text dataset file location to get its binary counterpart.
+	public static final String FILE_EXTENSION = ".bin";
+
+	private int version;
+	private int numTxns;
+	private int maxTxnLength;
+	private long numItems;
+
+	private long itemsPosition;
+	private long tidsPosition;
+	private long offsetsPosition;
+
+	private long blocksPosition;
+	private long blocksLength;
+
+	private long sourceFileSize;
+	private long sourceFileLastModified;
+
+	public BinaryTransactionFormat(int numTxns, int maxTxnLength, long numItems,
+			long itemsPosition, long tidsPosition, long offsetsPosition)
+	{
+		this.version = VERSION;
+		this.numTxns = numTxns;
+		this.maxTxnLength = maxTxnLength;
+		this.numItems = numItems;
+		this.itemsPosition = itemsPosition;
+		this.tidsPosition = tidsPosition;
+		this.offsetsPosition = offsetsPosition;
+	}
+
+	/*
+	 * Layout of the compressed version.
+	 */
+	public static BinaryTransactionFormat compressed(int numTxns, int maxTxnLength, long numItems,
+			long blocksPosition, long blocksLength)
+	{
+		BinaryTransactionFormat format = new BinaryTransactionFormat(numTxns, maxTxnLength, numItems, 0, 0, 0);
+		format.version = COMPRESSED_VERSION;
+		format.blocksPosition = blocksPosition;
+		format.blocksLength = blocksLength;
+
+		return format;
+	}
+
+	/*
+	 * Serializes the header into a buffer of HEADER_SIZE bytes, ready to be written at the start
+	 * of the file.
+	 */
+	public ByteBuffer toHeader()
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+		header.putInt(MAGIC);
+		header.putInt(version);
+		header.putInt(numTxns);
+		header.putInt(maxTxnLength);
+		header.putLong(numItems);
+		if(isCompressed()) {
+			header.putLong(blocksPosition);
+			header.putLong(blocksLength);
+		}
+		else {
+			header.putLong(itemsPosition);
+			header.putLong(tidsPosition);
+			header.putLong(offsetsPosition);
+		}
+		header.putLong(SOURCE_POSITION, sourceFileSize);
+		header.putLong(SOURCE_POSITION + 8, sourceFileLastModified);
+		header.rewind();
+
+		return header;
+	}
+
+	/*
+	 * Parses the header read from the start of a binary transaction file.
+	 */
+	public static BinaryTransactionFormat fromHeader(ByteBuffer header) throws IOException
+	{
+		header.order(BYTE_ORDER);
+		int magic = header.getInt();
+		int version = header.getInt();
+		if(magic != MAGIC) {
+			throw new IOException("Not a binary transaction file. Bad magic : " + Integer.toHexString(magic));
+		}
+		if(version != VERSION && version != COMPRESSED_VERSION) {
+			throw new IOException("Unsupported binary transaction file version : " + version);
+		}
+
+		int numTxns = header.getInt();
+		int maxTxnLength = header.getInt();
+		long numItems = header.getLong();
+		BinaryTransactionFormat format = null;
+		if(version == COMPRESSED_VERSION) {
+			long blocksPosition = header.getLong();
+			long blocksLength = header.getLong();
+			format = compressed(numTxns, maxTxnLength, numItems, blocksPosition, blocksLength);
+		}
+		else {
+			long itemsPosition = header.getLong();
+			long tidsPosition = header.getLong();
+			long offsetsPosition = header.getLong();
+			format = new BinaryTransactionFormat(numTxns, maxTxnLength, numItems, itemsPosition, tidsPosition, offsetsPosition);
+		}
+
+		format.sourceFileSize = header.getLong(SOURCE_POSITION);
+		format.sourceFileLastModified = header.getLong(SOURCE_POSITION + 8);
+		return format;
+	}
+
+	/*
+	 * Reads and parses the header at the start of the channel.
+	 */
+	public static BinaryTransactionFormat readHeader(FileChannel channel) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while(header.hasRemaining() && channel.read(header, header.position()) >= 0);
+		if(header.hasRemaining()) {
+			throw new IOException("Truncated binary transaction file header.");
+		}
+		header.flip();
+		return fromHeader(header);
+	}
+
+	/*
+	 * Records the size and the modification time of the text file the binary file is converted from.
+	 */
+	public void setSourceFile(File sourceFile)
+	{
+		this.sourceFileSize = sourceFile.length();
+		this.sourceFileLastModified = sourceFile.lastModified();
+	}
+
+	/*
+	 * Whether the text file is still the one the binary file was converted from. Binary files which
+	 * did not record their source are never considered up to date with a text file.
+	 */
+	public boolean isUpToDate(File sourceFile)
+	{
+		return sourceFileSize != 0 && sourceFileSize == sourceFile.length()
+				&& sourceFileLastModified == sourceFile.lastModified();
+	}
+
+	/*
+	 * Returns the location of the binary file corresponding to a text dataset file.
+	 */
+	public static String getBinaryFileLocation(String dataFileLocation)
+	{
+		return dataFileLocation + FILE_EXTENSION;
+	}
+
+	public boolean isCompressed() {
+		return version == COMPRESSED_VERSION;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public int getNumTxns() {
+		return numTxns;
+	}
+
+	public int getMaxTxnLength() {
+		return maxTxnLength;
+	}
+
+	public long getNumItems() {
+		return numItems;
+	}
+
+	public long getItemsPosition() {
+		return itemsPosition;
+	}
+
+	public long getTidsPosition() {
+		return tidsPosition;
+	}
+
+	public long getOffsetsPosition() {
+		return offsetsPosition;
+	}
+
+	public long getBlocksPosition() {
+		return blocksPosition;
+	}
+
+	public long getBlocksLength() {
+		return blocksLength;
+	}
+}
@@ -0,0 +1,263 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import model.CompressedTransactionBatch;
+import model.TransactionBatch;
+
+/**
+ * Writes transactions into the binary transaction store described by {@link BinaryTransactionFormat}.
+ * Transactions are appended one at a time; the items are streamed to the file right away while the
+ * tids and offsets are kept in memory and written out as the trailing sections on close.
+ *
+ * In the compressed version, transactions are collected into a batch which is encoded and written
+ * out as a block whenever it fills up, so nothing but the current batch is held in memory.
+ *
+ * The store is written as "<file>.tmp" and only renamed to the file once close() has written the
+ * header. A conversion which fails half way must call abort() instead, so that no partial store is
+ * ever left under the name the readers look for.
+ *
+ * @author shishir
+ *
+ */
+public class BinaryTransactionWriter
+{
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	private File opFile;
+	private File tmpFile;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private ByteBuffer writeBuffer;
+
+	private int[] tids = new int[1024];
+	private int[] offsets = new int[1025];
+	private int numTxns = 0;
+	private long numItems = 0;
+	private int maxTxnLength = 0;
+
+	private boolean isCompressed;
+	private TransactionBatch currBlock;
+	private long blocksLength = 0;
+
+	// Text file this one is converted from, recorded in the header on close. See setSourceFile().
+	private File sourceFile;
+
+	public BinaryTransactionWriter(File opFile) throws IOException
+	{
+		this(opFile, false);
+	}
+
+	/*
+	 * @param isCompressed - Whether to write the compressed version of the format.
+	 */
+	public BinaryTransactionWriter(File opFile, boolean isCompressed) throws IOException
+	{
+		this.opFile = opFile;
+		tmpFile = new File(opFile.getPath() + ".tmp");
+		if(tmpFile.exists()) {
+			tmpFile.delete();
+		}
+
+		file = new RandomAccessFile(tmpFile, "rw");
+		channel = file.getChannel();
+		writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(BinaryTransactionFormat.BYTE_ORDER);
+
+		// Items (or blocks) section starts right after the header, which is filled in on close.
+		channel.position(BinaryTransactionFormat.HEADER_SIZE);
+
+		this.isCompressed = isCompressed;
+		if(isCompressed) {
+			currBlock = new TransactionBatch();
+		}
+	}
+
+	/*
+	 * Appends a transaction. The items must already be sorted in the ascending order.
+	 */
+	public void writeTransaction(int tid, int[] items, int numTxnItems) throws IOException
+	{
+		writeTransaction(tid, items, 0, numTxnItems);
+	}
+
+	/*
+	 * Appends a transaction whose sorted items are items[from .. from + numTxnItems).
+	 */
+	public void writeTransaction(int tid, int[] items, int from, int numTxnItems) throws IOException
+	{
+		if(isCompressed) {
+			currBlock.add(tid, items, from, numTxnItems);
+			if(currBlock.isFull()) {
+				writeBlock();
+			}
+
+			++numTxns;
+			numItems += numTxnItems;
+			maxTxnLength = Math.max(maxTxnLength, numTxnItems);
+			return;
+		}
+
+		if(numItems + numTxnItems > BinaryTransactionFormat.MAX_ITEMS) {
+			throw new IOException("Binary transaction store cannot hold more than " + BinaryTransactionFormat.MAX_ITEMS + " items.");
+		}
+
+		if(numTxns + 1 == tids.length) {
+			tids = Arrays.copyOf(tids, tids.length * 2);
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+
+		for(int i=0; i < numTxnItems; i++) {
+			if(writeBuffer.remaining() < 4) {
+				flushBuffer();
+			}
+			writeBuffer.putInt(items[from + i]);
+		}
+
+		tids[numTxns] = tid;
+		numItems += numTxnItems;
+		++numTxns;
+		offsets[numTxns] = (int)numItems;
+		maxTxnLength = Math.max(maxTxnLength, numTxnItems);
+	}
+
+	/*
+	 * Appends all the transactions of the batch.
+	 */
+	public void writeBatch(TransactionBatch batch) throws IOException
+	{
+		for(int t=0; t < batch.getSize(); t++) {
+			int start = batch.getItemsStart(t);
+			writeTransaction(batch.getTid(t), batch.getItems(), start, batch.getItemsEnd(t) - start);
+		}
+	}
+
+	/*
+	 * Writes the tids and offsets sections followed by the header, closes the file and renames it to
+	 * the output file.
+	 */
+	public void close() throws IOException
+	{
+		if(isCompressed) {
+			if(!currBlock.isEmpty()) {
+				writeBlock();
+			}
+			flushBuffer();
+
+			BinaryTransactionFormat format = BinaryTransactionFormat.compressed(
+					numTxns, maxTxnLength, numItems, BinaryTransactionFormat.HEADER_SIZE, blocksLength);
+			writeHeaderAndClose(format);
+			return;
+		}
+
+		long itemsPosition = BinaryTransactionFormat.HEADER_SIZE;
+		long tidsPosition = itemsPosition + numItems * 4;
+		writeIntArray(tids, numTxns);
+		long offsetsPosition = tidsPosition + (long)numTxns * 4;
+		writeIntArray(offsets, numTxns + 1);
+		flushBuffer();
+
+		BinaryTransactionFormat format = new BinaryTransactionFormat(
+				numTxns, maxTxnLength, numItems, itemsPosition, tidsPosition, offsetsPosition);
+		writeHeaderAndClose(format);
+	}
+
+	/*
+	 * Closes the file without writing the header and deletes it, when the transactions could not all
+	 * be written. The output file, if any, is left as it was.
+	 */
+	public void abort()
+	{
+		try {
+			file.close();
+		} catch (IOException e) {
+			System.err.println("Failed to close the partial binary file " + tmpFile + " : " + e.getMessage());
+		}
+		tmpFile.delete();
+	}
+
+	public int getNumTxns() {
+		return numTxns;
+	}
+
+	/*
+	 * Sets the text file the transactions are converted from. Its size and modification time are
+	 * read on close, so the text file must be complete and closed by then.
+	 */
+	public void setSourceFile(File sourceFile) {
+		this.sourceFile = sourceFile;
+	}
+
+	private void writeHeaderAndClose(BinaryTransactionFormat format) throws IOException
+	{
+		if(sourceFile != null) {
+			format.setSourceFile(sourceFile);
+		}
+		channel.write(format.toHeader(), 0);
+
+		channel.force(false);
+		channel.close();
+		file.close();
+
+		if(opFile.exists()) {
+			opFile.delete();
+		}
+		if(!tmpFile.renameTo(opFile)) {
+			throw new IOException("Failed to rename " + tmpFile + " to " + opFile);
+		}
+	}
+
+	/*
+	 * Encodes the current block and appends it to the blocks section.
+	 */
+	private void writeBlock() throws IOException
+	{
+		CompressedTransactionBatch block = CompressedTransactionBatch.encode(currBlock);
+		byte[] data = block.getData();
+		blocksLength += BinaryTransactionFormat.BLOCK_HEADER_SIZE + data.length;
+		if(blocksLength > BinaryTransactionFormat.MAX_BLOCKS_LENGTH) {
+			throw new IOException("Binary transaction store cannot hold more than " + BinaryTransactionFormat.MAX_BLOCKS_LENGTH + " bytes of blocks.");
+		}
+
+		if(writeBuffer.remaining() < BinaryTransactionFormat.BLOCK_HEADER_SIZE) {
+			flushBuffer();
+		}
+		writeBuffer.putInt(block.getNumTxns());
+		writeBuffer.putInt(block.getNumItems());
+		writeBuffer.putInt(data.length);
+
+		int pos = 0;
+		while(pos < data.length) {
+			if(!writeBuffer.hasRemaining()) {
+				flushBuffer();
+			}
+			int length = Math.min(writeBuffer.remaining(), data.length - pos);
+			writeBuffer.put(data, pos, length);
+			pos += length;
+		}
+		currBlock.clear();
+	}
+
+	private void writeIntArray(int[] values, int length) throws IOException
+	{
+		for(int i=0; i < length; i++) {
+			if(writeBuffer.remaining() < 4) {
+				flushBuffer();
+			}
+			writeBuffer.putInt(values[i]);
+		}
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		writeBuffer.flip();
+		while(writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+}
@@ -0,0 +1,126 @@
+package util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.Algorithm;
+import model.CompressedTransactionBatch;
+import model.Dataset;
+import model.Transaction;
+import model.TransactionBatch;
+
+/**
+ * Reads input transactions from a {@link TransactionCache} filled during an earlier pass over the
+ * dataset. Nothing is read or parsed; a batch is just decoded out of the cache.
+ *
+ * The blocks of the cache are claimed through an atomic index, so several threads can call
+ * nextBatch() at once and each decodes the blocks it claimed on its own.
+ *
+ * @author shishir
+ *
+ */
+public class CachedReader extends InputReader
+{
+	private List<CompressedTransactionBatch> batches;
+	private AtomicInteger nextBatchIndex = new AtomicInteger();
+
+	// Batch being handed out transaction by transaction through getNextTransaction().
+	private TransactionBatch currBatch = new TransactionBatch();
+	private int currTxnIndex = 0;
+
+	private long startTime = System.currentTimeMillis();
+	private volatile long endTime = System.currentTimeMillis();
+
+	public CachedReader(Dataset dataset, Algorithm algorithm, TransactionCache cache)
+	{
+		super(dataset, algorithm);
+		if(cache.isOverflowed()) {
+			throw new IllegalStateException("The transaction cache of dataset " + dataset + " has overflowed.");
+		}
+		this.batches = cache.getBatches();
+	}
+
+	@Override
+	public Transaction getNextTransaction()
+	{
+		Transaction transaction = null;
+		if(hasNextTransaction()) {
+			int start = currBatch.getItemsStart(currTxnIndex);
+			int end = currBatch.getItemsEnd(currTxnIndex);
+
+			int[] currItems = Arrays.copyOfRange(currBatch.getItems(), start, end);
+
+			int currTid = currBatch.getTid(currTxnIndex);
+			transaction = new Transaction(currTid, currTid, currItems, true);
+			++currTxnIndex;
+		}
+
+		return transaction;
+	}
+
+	@Override
+	public boolean hasNextTransaction()
+	{
+		CompressedTransactionBatch nextBatch = null;
+		while(currTxnIndex == currBatch.getSize() && (nextBatch = claimNextBatch()) != null) {
+			nextBatch.decode(currBatch);
+			currTxnIndex = 0;
+		}
+
+		boolean hasMoreTransactions = (currTxnIndex < currBatch.getSize());
+		if(!hasMoreTransactions) {
+			endTime = System.currentTimeMillis();
+		}
+
+		return hasMoreTransactions;
+	}
+
+	@Override
+	public int nextBatch(TransactionBatch batch)
+	{
+		batch.clear();
+		if(currTxnIndex < currBatch.getSize()) {
+			// Partly consumed through getNextTransaction(). Hand out the rest of it.
+			currTxnIndex += batch.addFrom(currBatch, currTxnIndex);
+		}
+		else {
+			CompressedTransactionBatch nextBatch = claimNextBatch();
+			if(nextBatch != null) {
+				nextBatch.decode(batch);
+			}
+		}
+
+		if(batch.isEmpty()) {
+			endTime = System.currentTimeMillis();
+		}
+
+		return batch.getSize();
+	}
+
+	@Override
+	public boolean isConcurrent()
+	{
+		return true;
+	}
+
+	@Override
+	public long getDatasetReadTime()
+	{
+		return endTime - startTime;
+	}
+
+	/*
+	 * Returns the next block of the cache no other thread has claimed yet, or null once they have all
+	 * been claimed.
+	 */
+	private CompressedTransactionBatch claimNextBatch()
+	{
+		if(nextBatchIndex.get() >= batches.size()) {
+			return null;
+		}
+
+		int index = nextBatchIndex.getAndIncrement();
+		return index < batches.size() ? batches.get(index) : null;
+	}
+}
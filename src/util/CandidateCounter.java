@@ -0,0 +1,419 @@
+package util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import model.CandidateIndex;
+import model.CandidateTable;
+import model.PairCountMatrix;
+import model.TransactionBatch;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Counts the support of the candidates of a pass over the dataset, for the passes of the Apriori
+ * family which scan the dataset itself : through a candidate index, or in a pair count matrix for
+ * the second pass.
+ *
+ * With more than one thread, the counting is spread over a pool of workers in the count
+ * distribution way : the workers take the batches of transactions off the reader, walk the shared
+ * candidate index, which is only read, and count into an int array (or a pair count matrix) of their
+ * own. Over the transaction cache, each worker claims and decodes blocks of its own; the other
+ * readers hand out their batches in turn, under a lock. The arrays are summed into the support
+ * counts of the candidates at the end of the pass. The sums do not depend on which worker counted
+ * which batch, so the counts are the same as on a single thread.
+ *
+ * The arrays take 4 bytes per candidate and thread, so past Constants.MAX_PER_THREAD_COUNTS_BYTES
+ * the workers count the candidates, or the pairs, into one shared AtomicIntegerArray instead, see
+ * CountingStrategy.
+ *
+ * @author shishir
+ *
+ */
+public class CandidateCounter
+{
+	/*
+	 * Adds the support of the candidates over the transactions of the reader to their support counts,
+	 * on Constants.NUM_COUNTING_THREADS threads. Transactions with less than minTxnSize items are
+	 * skipped.
+	 *
+	 * @returns The strategy picked for the number of candidates and threads.
+	 */
+	public static CountingStrategy countCandidates(InputReader reader, CandidateIndex candidateIndex, CandidateTable candidates, int minTxnSize)
+	{
+		return countCandidates(reader, candidateIndex, candidates, minTxnSize, Constants.NUM_COUNTING_THREADS);
+	}
+
+	public static CountingStrategy countCandidates(InputReader reader, CandidateIndex candidateIndex, CandidateTable candidates, int minTxnSize, int numThreads)
+	{
+		CountingStrategy strategy = CountingStrategy.choose(candidates.getSize(), numThreads);
+		countCandidates(reader, candidateIndex, candidates, minTxnSize, numThreads, strategy);
+		return strategy;
+	}
+
+	public static void countCandidates(InputReader reader, CandidateIndex candidateIndex, CandidateTable candidates, int minTxnSize,
+			int numThreads, CountingStrategy strategy)
+	{
+		int[] supportCounts = candidates.getSupportCounts();
+		switch(strategy) {
+		case PER_THREAD_ARRAYS:
+			List<CountTask> countTasks = Lists.newArrayList();
+			for(int w=0; w < numThreads; w++) {
+				countTasks.add(new CountTask(reader, candidateIndex, candidates.getSize(), minTxnSize));
+			}
+			for(int[] counts : runWorkers(countTasks, numThreads)) {
+				for(int c=0; c < counts.length; c++) {
+					supportCounts[c] += counts[c];
+				}
+			}
+			break;
+
+		case SHARED_COUNTERS:
+			AtomicIntegerArray sharedCounts = new AtomicIntegerArray(candidates.getSize());
+			List<SharedCountTask> sharedCountTasks = Lists.newArrayList();
+			for(int w=0; w < numThreads; w++) {
+				sharedCountTasks.add(new SharedCountTask(reader, candidateIndex, candidates, minTxnSize, sharedCounts));
+			}
+			runWorkers(sharedCountTasks, numThreads);
+			for(int c=0; c < sharedCounts.length(); c++) {
+				supportCounts[c] += sharedCounts.get(c);
+			}
+			break;
+
+		default:
+			countBatches(reader, candidateIndex, supportCounts, minTxnSize);
+		}
+	}
+
+	/*
+	 * Counts the pairs of the numItems frequent items over the transactions of the reader, for the
+	 * second pass, on Constants.NUM_COUNTING_THREADS threads. The strategy is picked on the number of
+	 * pairs as for the candidates : a pair count matrix per worker, summed at the end, or one shared
+	 * AtomicIntegerArray laid out like the matrix.
+	 */
+	public static PairCountMatrix countPairs(InputReader reader, int numItems)
+	{
+		return countPairs(reader, numItems, Constants.NUM_COUNTING_THREADS);
+	}
+
+	public static PairCountMatrix countPairs(InputReader reader, int numItems, int numThreads)
+	{
+		PairCountMatrix pairCounts = new PairCountMatrix(numItems);
+		CountingStrategy strategy = CountingStrategy.choose(pairCounts.getNumPairs(), numThreads);
+		countPairs(reader, pairCounts, numThreads, strategy);
+		//System.out.println("Counted " + pairCounts.getNumPairs() + " pairs with " + strategy);
+		return pairCounts;
+	}
+
+	/*
+	 * Adds the pairs over the transactions of the reader to pairCounts, with the given strategy.
+	 */
+	public static void countPairs(InputReader reader, PairCountMatrix pairCounts, int numThreads, CountingStrategy strategy)
+	{
+		switch(strategy) {
+		case PER_THREAD_ARRAYS:
+			List<PairCountTask> pairCountTasks = Lists.newArrayList();
+			for(int w=0; w < numThreads; w++) {
+				pairCountTasks.add(new PairCountTask(reader, pairCounts.getNumItems()));
+			}
+			for(PairCountMatrix workerCounts : runWorkers(pairCountTasks, numThreads)) {
+				pairCounts.addCounts(workerCounts);
+			}
+			break;
+
+		case SHARED_COUNTERS:
+			AtomicIntegerArray sharedCounts = new AtomicIntegerArray(pairCounts.getNumPairs());
+			List<SharedPairCountTask> sharedPairCountTasks = Lists.newArrayList();
+			for(int w=0; w < numThreads; w++) {
+				sharedPairCountTasks.add(new SharedPairCountTask(reader, pairCounts, sharedCounts));
+			}
+			runWorkers(sharedPairCountTasks, numThreads);
+			pairCounts.addCounts(sharedCounts);
+			break;
+
+		default:
+			countPairBatches(reader, pairCounts);
+		}
+	}
+
+	/*
+	 * Runs each task on a thread of its own and returns their results, in the order of the tasks.
+	 */
+	private static <T> List<T> runWorkers(List<? extends Callable<T>> tasks, int numThreads)
+	{
+		ExecutorService executor = newExecutor(numThreads);
+		try {
+			List<Future<T>> futures = Lists.newArrayList();
+			for(Callable<T> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+
+			List<T> results = Lists.newArrayList();
+			for(Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while counting the candidates", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed to count the candidates", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static ExecutorService newExecutor(int numThreads)
+	{
+		return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "CandidateCounter-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/*
+	 * Counts the candidates over the batches of the reader into supportCounts, till the reader is done.
+	 * The reader may be shared with other threads.
+	 */
+	private static void countBatches(InputReader reader, CandidateIndex candidateIndex, int[] supportCounts, int minTxnSize)
+	{
+		// The counts are incremented in place while walking the index, without going through a list of
+		// the candidates in each transaction.
+		int[] stack = candidateIndex.newStack();
+		TransactionBatch batch = new TransactionBatch();
+		while(nextBatch(reader, batch) > 0) {
+			int[] items = batch.getItems();
+			for(int t = 0; t < batch.getSize(); t++) {
+				if(batch.getItemsEnd(t) - batch.getItemsStart(t) < minTxnSize)
+					continue;
+				candidateIndex.countCandidates(items, batch.getItemsStart(t), batch.getItemsEnd(t), supportCounts, stack);
+			}
+		}
+	}
+
+	private static void countPairBatches(InputReader reader, PairCountMatrix pairCounts)
+	{
+		TransactionBatch batch = new TransactionBatch();
+		while(nextBatch(reader, batch) > 0) {
+			int[] items = batch.getItems();
+			for(int t = 0; t < batch.getSize(); t++) {
+				pairCounts.countPairs(items, batch.getItemsStart(t), batch.getItemsEnd(t));
+			}
+		}
+	}
+
+	/*
+	 * Takes the next batch off the reader shared by the workers. A concurrent reader, e.g. over the
+	 * transaction cache, is read by all the workers at once, so each of them decodes its own batches.
+	 * The others are read under a lock.
+	 */
+	private static int nextBatch(InputReader reader, TransactionBatch batch)
+	{
+		if(reader.isConcurrent()) {
+			return reader.nextBatch(batch);
+		}
+
+		synchronized(reader) {
+			return reader.nextBatch(batch);
+		}
+	}
+
+	/*
+	 * Adds the counters found[0 .. numFound) to the shared counts. They are sorted first, so that a
+	 * counter found several times takes a single atomic add.
+	 */
+	private static void addSharedCounts(AtomicIntegerArray sharedCounts, int[] found, int numFound)
+	{
+		Arrays.sort(found, 0, numFound);
+		int f = 0;
+		while(f < numFound) {
+			int counter = found[f];
+			int runEnd = f + 1;
+			while(runEnd < numFound && found[runEnd] == counter) {
+				++runEnd;
+			}
+			sharedCounts.addAndGet(counter, runEnd - f);
+			f = runEnd;
+		}
+	}
+
+	/**
+	 * Counts the candidates of the batches it takes off the shared reader into an array of its own.
+	 */
+	private static class CountTask implements Callable<int[]>
+	{
+		private InputReader reader;
+		private CandidateIndex candidateIndex;
+		private int numCandidates;
+		private int minTxnSize;
+
+		CountTask(InputReader reader, CandidateIndex candidateIndex, int numCandidates, int minTxnSize)
+		{
+			this.reader = reader;
+			this.candidateIndex = candidateIndex;
+			this.numCandidates = numCandidates;
+			this.minTxnSize = minTxnSize;
+		}
+
+		@Override
+		public int[] call()
+		{
+			int[] counts = new int[numCandidates];
+			countBatches(reader, candidateIndex, counts, minTxnSize);
+			return counts;
+		}
+	}
+
+	/**
+	 * Counts the candidates of the batches it takes off the shared reader into the shared counters.
+	 * The candidates found in the transactions are buffered, and each batch of them is sorted so that
+	 * a candidate found several times takes a single atomic add.
+	 */
+	private static class SharedCountTask implements Callable<Void>
+	{
+		private InputReader reader;
+		private CandidateIndex candidateIndex;
+		private int numCandidates;
+		private int itemsetSize;
+		private int minTxnSize;
+		private AtomicIntegerArray sharedCounts;
+
+		SharedCountTask(InputReader reader, CandidateIndex candidateIndex, CandidateTable candidates, int minTxnSize, AtomicIntegerArray sharedCounts)
+		{
+			this.reader = reader;
+			this.candidateIndex = candidateIndex;
+			this.numCandidates = candidates.getSize();
+			this.itemsetSize = candidates.getItemsetSize();
+			this.minTxnSize = minTxnSize;
+			this.sharedCounts = sharedCounts;
+		}
+
+		@Override
+		public Void call()
+		{
+			int[] stack = candidateIndex.newStack();
+			int[] found = new int[Constants.SHARED_COUNTS_BATCH_SIZE];
+			int numFound = 0;
+
+			TransactionBatch batch = new TransactionBatch();
+			while(nextBatch(reader, batch) > 0) {
+				int[] items = batch.getItems();
+				for(int t = 0; t < batch.getSize(); t++) {
+					int txnSize = batch.getItemsEnd(t) - batch.getItemsStart(t);
+					if(txnSize < minTxnSize)
+						continue;
+
+					// findCandidates() needs room for all the candidates of the transaction.
+					int maxFound = getMaxContained(txnSize);
+					if(numFound + maxFound > found.length) {
+						addSharedCounts(sharedCounts, found, numFound);
+						numFound = 0;
+						if(maxFound > found.length) {
+							found = new int[maxFound];
+						}
+					}
+					numFound = candidateIndex.findCandidates(items, batch.getItemsStart(t), batch.getItemsEnd(t), found, numFound, stack);
+				}
+			}
+			addSharedCounts(sharedCounts, found, numFound);
+			return null;
+		}
+
+		/*
+		 * Upper bound of the number of candidates in a transaction of txnSize items : the number of its
+		 * k-subsets, or of candidates if less.
+		 */
+		private int getMaxContained(int txnSize)
+		{
+			long numSubsets = 1;
+			for(int i=1; i <= itemsetSize; i++) {
+				numSubsets = numSubsets * (txnSize - itemsetSize + i) / i;
+				if(numSubsets >= numCandidates) {
+					return numCandidates;
+				}
+			}
+			return (int)numSubsets;
+		}
+
+	}
+
+	/**
+	 * Counts the pairs of the batches it takes off the shared reader into a matrix of its own.
+	 */
+	private static class PairCountTask implements Callable<PairCountMatrix>
+	{
+		private InputReader reader;
+		private int numItems;
+
+		PairCountTask(InputReader reader, int numItems)
+		{
+			this.reader = reader;
+			this.numItems = numItems;
+		}
+
+		@Override
+		public PairCountMatrix call()
+		{
+			PairCountMatrix pairCounts = new PairCountMatrix(numItems);
+			countPairBatches(reader, pairCounts);
+			return pairCounts;
+		}
+	}
+
+	/**
+	 * Counts the pairs of the batches it takes off the shared reader into the shared counters, laid
+	 * out like the pair count matrix. The pairs found in the transactions are buffered, and each batch
+	 * of them is sorted before being added, as for the candidates.
+	 */
+	private static class SharedPairCountTask implements Callable<Void>
+	{
+		private InputReader reader;
+		private PairCountMatrix pairCounts;
+		private AtomicIntegerArray sharedCounts;
+
+		SharedPairCountTask(InputReader reader, PairCountMatrix pairCounts, AtomicIntegerArray sharedCounts)
+		{
+			this.reader = reader;
+			this.pairCounts = pairCounts;
+			this.sharedCounts = sharedCounts;
+		}
+
+		@Override
+		public Void call()
+		{
+			int[] found = new int[Constants.SHARED_COUNTS_BATCH_SIZE];
+			int numFound = 0;
+
+			TransactionBatch batch = new TransactionBatch();
+			while(nextBatch(reader, batch) > 0) {
+				int[] items = batch.getItems();
+				for(int t = 0; t < batch.getSize(); t++) {
+					// findPairs() needs room for all the pairs of the transaction.
+					long txnSize = batch.getItemsEnd(t) - batch.getItemsStart(t);
+					int maxFound = (int)Math.min(txnSize * (txnSize - 1) / 2, pairCounts.getNumPairs());
+					if(numFound + maxFound > found.length) {
+						addSharedCounts(sharedCounts, found, numFound);
+						numFound = 0;
+						if(maxFound > found.length) {
+							found = new int[maxFound];
+						}
+					}
+					numFound = pairCounts.findPairs(items, batch.getItemsStart(t), batch.getItemsEnd(t), found, numFound);
+				}
+			}
+			addSharedCounts(sharedCounts, found, numFound);
+			return null;
+		}
+	}
+}
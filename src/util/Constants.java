@@ -1,5 +1,7 @@
 package util;
 
+import model.CandidateIndexType;
+
 /**
  * Defines the various constants used for the experiments.
  * 
@@ -10,4 +12,34 @@ public class Constants
 {
 	public static int NUMBER_OF_ITEMS = 1000;
 	public static String DB_NAME = "mining_datasets";
+	
+	// Optional file listing the datasets to register on top of the ones built into model.Dataset.
+	public static String DATASET_CATALOG_LOCATION = "/data/datasets.catalog";
+	
+	// Number of tid ranges read concurrently, each on its own connection, by DBReader in PARALLEL mode.
+	public static int NUM_DB_READ_PARTITIONS = 4;
+	
+	// Number of threads used by the parallel phases, e.g. the chunked parse of ParallelFileParser.
+	public static int NUM_WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	// Number of threads counting the support of the candidates, see util.CandidateCounter. 1 counts on
+	// the calling thread.
+	public static int NUM_COUNTING_THREADS = NUM_WORKER_THREADS;
+	
+	// Memory the counting threads may take for an int array of counts each. Past this, e.g. for
+	// millions of candidates, they count into one shared table instead, see util.CountingStrategy.
+	public static long MAX_PER_THREAD_COUNTS_BYTES = Runtime.getRuntime().maxMemory() / 16;
+	
+	// Number of candidate ids a counting thread buffers before adding them to the shared table.
+	public static int SHARED_COUNTS_BATCH_SIZE = 4096;
+	
+	// Memory budget of the TransactionCache kept by Apriori and AprioriHybrid across passes. Datasets
+	// larger than this are streamed from the file on every pass instead.
+	public static long TRANSACTION_CACHE_MAX_BYTES = Runtime.getRuntime().maxMemory() / 4;
+	
+	// Whether the counting passes read the dataset through a PrefetchingReader.
+	public static boolean PREFETCH_TRANSACTIONS = true;
+	
+	// The index over the candidates of a pass which the Apriori passes count the support through.
+	public static CandidateIndexType CANDIDATE_INDEX_TYPE = CandidateIndexType.TRIE;
 }
@@ -0,0 +1,32 @@
+package util;
+
+/**
+ * The ways CandidateCounter can count the support of the candidates of a pass.
+ * 	- SERIAL            : On the calling thread, straight into the support counts of the candidates.
+ * 	- PER_THREAD_ARRAYS : Each worker counts into an int array of its own, and the arrays are summed
+ * 	                      at the end. No sharing while counting, but one array per thread.
+ * 	- SHARED_COUNTERS   : All the workers count into one AtomicIntegerArray, in batches. A single
+ * 	                      table whatever the number of threads, at the cost of atomic increments.
+ *
+ * @author shishir
+ */
+public enum CountingStrategy {
+	SERIAL,
+	PER_THREAD_ARRAYS,
+	SHARED_COUNTERS;
+
+	/*
+	 * Picks the strategy to count the candidates on the threads : per thread arrays as long as they
+	 * fit in Constants.MAX_PER_THREAD_COUNTS_BYTES, the shared counters past that.
+	 */
+	public static CountingStrategy choose(int numCandidates, int numThreads)
+	{
+		if(numThreads <= 1) {
+			return SERIAL;
+		}
+		if(4L * numCandidates * numThreads <= Constants.MAX_PER_THREAD_COUNTS_BYTES) {
+			return PER_THREAD_ARRAYS;
+		}
+		return SHARED_COUNTERS;
+	}
+}
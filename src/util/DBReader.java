@@ -5,59 +5,147 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import model.Algorithm;
 import model.Dataset;
 import model.Transaction;
+import model.TransactionBatch;
 
 import com.google.common.collect.Lists;
 
 
 /**
- * Reads input transactions stored in database
- * 
+ * Reads input transactions stored in database. Supports three modes :
+ *
+ * 	- STREAMING : A single "ORDER BY tid, itemID" query is fired per pass and read through a
+ * 	              forward-only server side cursor with a large fetch size. Consecutive rows with the
+ * 	              same tid are grouped into a transaction on the client. Tids need not be contiguous.
+ * 	- PARALLEL  : The tid space is split into Constants.NUM_DB_READ_PARTITIONS ranges. Each range is
+ * 	              streamed as above on its own connection and thread, into a bounded queue of batches.
+ * 	              The ranges are handed out in the tid order, while the later ones keep prefetching.
+ * 	- PER_TXN   : One "WHERE tid = ?" query per transaction for tids 1 .. Dataset.getNumTxns(). This
+ * 	              simulates fetching the records one by one but costs a round trip per transaction.
+ *
  * @author shishir
  *
  */
 public class DBReader extends InputReader
 {
+	public enum ReadMode {
+		STREAMING,
+		PARALLEL,
+		PER_TXN
+	}
+
+	// Number of rows fetched from the server in one round trip in the STREAMING and PARALLEL modes.
+	public static final int FETCH_SIZE = 50000;
+	// Number of filled batches a partition can read ahead of the consumer in the PARALLEL mode.
+	private static final int PARTITION_QUEUE_DEPTH = 4;
+	// Marks the end of a partition in its queue of filled batches.
+	private static final TransactionBatch END_OF_PARTITION = new TransactionBatch(1);
+
+	private ReadMode readMode;
+
 	private int currTransactionId = 1;
 	private Connection dbConn = null;
 	private PreparedStatement dbStmt = null;
 	private ResultSet queryResult = null;
-	
+
+	// STREAMING mode
+	private TransactionStream txnStream = null;
+
+	// PARALLEL mode
+	private PartitionReader[] partitions = null;
+	private int currPartition = 0;
+	private ExecutorService partitionExecutor = null;
+
+	// Batch backing getNextTransaction() in the PARALLEL mode.
+	private TransactionBatch currBatch = null;
+	private int currBatchIndex = 0;
+
 	private long startTime = System.currentTimeMillis();
 	private long endTime   = System.currentTimeMillis();
 
+	public DBReader(Dataset dataset, Algorithm algorithm)
+	{
+		this(dataset, algorithm, ReadMode.STREAMING);
+	}
+
 	/*
 	 * Initialize database connection here
 	 */
-	public DBReader(Dataset dataset, Algorithm algorithm)
+	public DBReader(Dataset dataset, Algorithm algorithm, ReadMode readMode)
 	{
 		super(dataset, algorithm);
+		this.readMode = readMode;
+
+		startTime = System.currentTimeMillis();
 		try {
-			Class.forName("com.mysql.jdbc.Driver");
-			dbConn = DriverManager.getConnection("jdbc:mysql://localhost:3306", "db_user", "db_user");
-			
-			dbStmt = dbConn.prepareStatement(getTxnReadQuery());
+			if(readMode == ReadMode.STREAMING) {
+				dbConn = getStreamingConnection();
+				dbStmt = dbConn.prepareStatement(getTxnStreamQuery(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				dbStmt.setFetchSize(FETCH_SIZE);
+				txnStream = new TransactionStream(dbStmt.executeQuery());
+			}
+			else if(readMode == ReadMode.PARALLEL) {
+				dbConn = getStreamingConnection();
+				startPartitionReaders(Constants.NUM_DB_READ_PARTITIONS);
+			}
+			else {
+				Class.forName("com.mysql.jdbc.Driver");
+				dbConn = DriverManager.getConnection("jdbc:mysql://localhost:3306", "db_user", "db_user");
+				dbStmt = dbConn.prepareStatement(getTxnReadQuery());
+			}
 		} catch (Exception e) {
 			System.err.println("Failed to initialise db connection. Reason : " + e);
+			System.exit(1);
 		}
-		
-		startTime = System.currentTimeMillis();
 	}
 
 	@Override
-	protected void finalize() throws Throwable 
+	protected void finalize() throws Throwable
 	{
 		// Close this connection
 		dbConn.close();
 	};
-	
+
 	@Override
 	public Transaction getNextTransaction() {
 
+		if(readMode == ReadMode.STREAMING) {
+			if(!hasNextTransaction()) {
+				return null;
+			}
+
+			int tid = txnStream.getNextTid();
+			int numItems = readNextStreamed();
+			int[] items = Arrays.copyOf(txnStream.getItems(), numItems);
+
+			return new Transaction(tid, tid, items, true);
+		}
+
+		if(readMode == ReadMode.PARALLEL) {
+			if(!hasNextTransaction()) {
+				return null;
+			}
+
+			int start = currBatch.getItemsStart(currBatchIndex);
+			int end = currBatch.getItemsEnd(currBatchIndex);
+			int[] items = Arrays.copyOfRange(currBatch.getItems(), start, end);
+
+			int tid = currBatch.getTid(currBatchIndex);
+			++currBatchIndex;
+
+			return new Transaction(tid, tid, items, true);
+		}
+
 		List<Integer> items = Lists.newArrayList();
 		try {
 			dbStmt.setInt(1, currTransactionId);
@@ -72,40 +160,445 @@ public class DBReader extends InputReader
 		}
 
 		Transaction txn = new Transaction(currTransactionId, currTransactionId, items);
-		++currTransactionId;		
+		++currTransactionId;
 
 		return txn;
 	}
 
 	@Override
 	public boolean hasNextTransaction() {
-		boolean hasMoreTransactions = (currTransactionId <= getDataset().getNumTxns());
+		boolean hasMoreTransactions;
+		if(readMode == ReadMode.STREAMING) {
+			hasMoreTransactions = (txnStream != null && txnStream.hasNext());
+		}
+		else if(readMode == ReadMode.PARALLEL) {
+			if(currBatch == null) {
+				currBatch = new TransactionBatch();
+			}
+			if(currBatchIndex == currBatch.getSize()) {
+				nextBatch(currBatch);
+				currBatchIndex = 0;
+			}
+			hasMoreTransactions = currBatchIndex < currBatch.getSize();
+		}
+		else {
+			hasMoreTransactions = (currTransactionId <= getDataset().getNumTxns());
+		}
+
 		if(!hasMoreTransactions) {
 			endTime = System.currentTimeMillis();
-			try {
-				dbConn.close();
-			} catch (SQLException e) {
-				System.err.println("Failed to close the db connection .." + e);
-			}
+			closeConnection();
 		}
 
 		return hasMoreTransactions;
 	}
 
 	@Override
-	public int getDatasetReadTime() {
-		return (int)(endTime - startTime)/1000;
+	public int nextBatch(TransactionBatch batch) {
+		if(readMode == ReadMode.STREAMING) {
+			batch.clear();
+			while(!batch.isFull() && hasNextTransaction()) {
+				int tid = txnStream.getNextTid();
+				int numItems = readNextStreamed();
+				batch.add(tid, txnStream.getItems(), 0, numItems);
+			}
+
+			return batch.getSize();
+		}
+
+		if(readMode == ReadMode.PARALLEL) {
+			return nextPartitionBatch(batch);
+		}
+
+		batch.clear();
+		try {
+			while(!batch.isFull() && hasNextTransaction()) {
+				dbStmt.setInt(1, currTransactionId);
+				queryResult = dbStmt.executeQuery();
+
+				int numItems = 0;
+				int itemsStart = batch.getNumItems();
+				while(queryResult.next()) {
+					batch.ensureItemsCapacity(itemsStart + numItems + 1);
+					batch.getItems()[itemsStart + numItems] = queryResult.getInt("itemID");
+					++numItems;
+				}
+				queryResult.close();
+
+				Arrays.sort(batch.getItems(), itemsStart, itemsStart + numItems);
+				batch.commit(currTransactionId, numItems);
+				++currTransactionId;
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed to create db statement. Reason : " + e);
+			System.exit(1);
+		}
+
+		return batch.getSize();
+	}
+
+	/*
+	 * Returns the wall clock time taken to read the dataset, in milliseconds. In the PARALLEL mode,
+	 * the read time and throughput of each partition are available through getPartitionReadTime()
+	 * and getPartitionThroughput().
+	 */
+	@Override
+	public long getDatasetReadTime() {
+		return endTime - startTime;
+	}
+
+	/*
+	 * Stops the partition threads of the PARALLEL mode and closes all the connections, when the
+	 * dataset is not read till the end. The partitions may be blocked on a full queue, or in a read
+	 * from their connection, so they are both interrupted and have their connection closed under them.
+	 */
+	@Override
+	public void close()
+	{
+		if(partitionExecutor != null) {
+			partitionExecutor.shutdownNow();
+		}
+		if(partitions != null) {
+			for(PartitionReader partition : partitions) {
+				partition.closeConnection();
+			}
+		}
+		closeConnection();
+	}
+
+	public int getNumPartitions() {
+		return partitions == null ? 0 : partitions.length;
+	}
+
+	/*
+	 * Time taken by a partition to stream its tid range, in milliseconds. This includes the time
+	 * it spent blocked on a full queue waiting for the consumer.
+	 */
+	public long getPartitionReadTime(int partition) {
+		PartitionReader reader = partitions[partition];
+		return (reader.endNanos - reader.startNanos) / 1000000;
+	}
+
+	/*
+	 * Read throughput of a partition in transactions per second.
+	 */
+	public double getPartitionThroughput(int partition) {
+		PartitionReader reader = partitions[partition];
+		double elapsedSecs = (reader.endNanos - reader.startNanos) / 1e9;
+		return elapsedSecs > 0 ? reader.numTxnsRead / elapsedSecs : 0;
+	}
+
+	/*
+	 * Reads the next transaction of the STREAMING mode into txnStream.getItems().
+	 */
+	private int readNextStreamed()
+	{
+		int numItems = 0;
+		try {
+			numItems = txnStream.readNext();
+		} catch (SQLException e) {
+			System.err.println("Failed to read the transaction stream. Reason : " + e);
+			System.exit(1);
+		}
+
+		return numItems;
+	}
+
+	/*
+	 * Hands out the next batch of the PARALLEL mode. Partitions are drained in the order of their
+	 * tid ranges, so the transactions come out sorted by tid just like in the other modes.
+	 */
+	private int nextPartitionBatch(TransactionBatch batch)
+	{
+		batch.clear();
+		while(partitions != null && currPartition < partitions.length) {
+			PartitionReader partition = partitions[currPartition];
+			TransactionBatch filledBatch = partition.takeFilledBatch();
+			if(filledBatch == END_OF_PARTITION) {
+				if(partition.error != null) {
+					System.err.println("Failed to read tid range [" + partition.fromTid + ", " + partition.toTid + "]. Reason : " + partition.error);
+					System.exit(1);
+				}
+				++currPartition;
+				continue;
+			}
+
+			// Hand the partition the buffers of the batch passed in, instead of copying the filled one.
+			batch.swap(filledBatch);
+			partition.recycle(filledBatch);
+			return batch.getSize();
+		}
+
+		endTime = System.currentTimeMillis();
+		if(partitionExecutor != null) {
+			partitionExecutor.shutdown();
+		}
+		return 0;
+	}
+
+	/*
+	 * Splits [MIN(tid), MAX(tid)] into equal ranges and starts a reader thread for each of them.
+	 */
+	private void startPartitionReaders(int numPartitions) throws SQLException
+	{
+		int minTid = 0, maxTid = -1;
+		PreparedStatement rangeStmt = dbConn.prepareStatement(getTidRangeQuery());
+		ResultSet rangeResult = rangeStmt.executeQuery();
+		if(rangeResult.next()) {
+			minTid = rangeResult.getInt(1);
+			maxTid = rangeResult.getInt(2);
+			if(rangeResult.wasNull()) {
+				maxTid = minTid - 1; // Empty table
+			}
+		}
+		rangeResult.close();
+		rangeStmt.close();
+
+		long numTids = (long)maxTid - minTid + 1;
+		numPartitions = (int)Math.max(1, Math.min(numPartitions, numTids));
+		partitions = new PartitionReader[numPartitions];
+		partitionExecutor = Executors.newFixedThreadPool(numPartitions, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DBReader-partition");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		for(int p=0; p < numPartitions; p++) {
+			int fromTid = (int)(minTid + numTids * p / numPartitions);
+			int toTid = (int)(minTid + numTids * (p + 1) / numPartitions) - 1;
+			partitions[p] = new PartitionReader(fromTid, toTid);
+			partitionExecutor.execute(partitions[p]);
+		}
+
+		// The partitions read on their own connections.
+		closeConnection();
+	}
+
+	private void closeConnection()
+	{
+		try {
+			if(dbConn != null && !dbConn.isClosed()) {
+				dbConn.close();
+			}
+		} catch (SQLException e) {
+			System.err.println("Failed to close the db connection .." + e);
+		}
+	}
+
+	/*
+	 * Opens a connection which streams the result sets instead of buffering them. Without the
+	 * useCursorFetch option, the driver would read the whole result set into memory.
+	 */
+	private static Connection getStreamingConnection() throws Exception
+	{
+		Class.forName("com.mysql.jdbc.Driver");
+		return DriverManager.getConnection("jdbc:mysql://localhost:3306?useCursorFetch=true", "db_user", "db_user");
 	}
-	
+
 	/*
 	 * Creates the SQL query fired for fetching the current transaction id.
 	 */
 	private String getTxnReadQuery()
 	{
 		String tableName = getDataset().getDatasetDBTable();
-		String query = 
+		String query =
 			" SELECT itemID FROM " + tableName + " WHERE tid = ?";
-		
+
+		return query;
+	}
+
+	/*
+	 * Creates the SQL query fired for streaming all the transactions in the STREAMING mode. Rows come
+	 * grouped by tid with the items of a transaction in the sorted order.
+	 */
+	private String getTxnStreamQuery()
+	{
+		String tableName = getDataset().getDatasetDBTable();
+		String query =
+			" SELECT tid, itemID FROM " + tableName + " ORDER BY tid, itemID";
+
+		return query;
+	}
+
+	/*
+	 * Same as above for a tid range, used by a partition in the PARALLEL mode.
+	 */
+	private String getTxnRangeStreamQuery()
+	{
+		String tableName = getDataset().getDatasetDBTable();
+		String query =
+			" SELECT tid, itemID FROM " + tableName + " WHERE tid BETWEEN ? AND ? ORDER BY tid, itemID";
+
+		return query;
+	}
+
+	private String getTidRangeQuery()
+	{
+		String tableName = getDataset().getDatasetDBTable();
+		String query =
+			" SELECT MIN(tid), MAX(tid) FROM " + tableName;
+
 		return query;
 	}
+
+	/**
+	 * Groups the (tid, itemID) rows of a result set ordered by tid into transactions. Keeps one
+	 * row of lookahead, which is the first row of the next transaction.
+	 */
+	private static class TransactionStream
+	{
+		private ResultSet resultSet;
+		private boolean hasPendingRow = false;
+		private int pendingTid;
+		private int pendingItem;
+		private int[] items = new int[64];
+
+		TransactionStream(ResultSet resultSet) throws SQLException
+		{
+			this.resultSet = resultSet;
+			readNextRow();
+		}
+
+		boolean hasNext() {
+			return hasPendingRow;
+		}
+
+		int getNextTid() {
+			return pendingTid;
+		}
+
+		int[] getItems() {
+			return items;
+		}
+
+		/*
+		 * Reads all the rows of the next transaction into getItems() and returns the number of items.
+		 */
+		int readNext() throws SQLException
+		{
+			int tid = pendingTid;
+			int numItems = 0;
+			do {
+				if(numItems == items.length) {
+					items = Arrays.copyOf(items, items.length * 2);
+				}
+				items[numItems++] = pendingItem;
+				readNextRow();
+			} while(hasPendingRow && pendingTid == tid);
+
+			return numItems;
+		}
+
+		private void readNextRow() throws SQLException
+		{
+			hasPendingRow = resultSet.next();
+			if(hasPendingRow) {
+				pendingTid = resultSet.getInt(1);
+				pendingItem = resultSet.getInt(2);
+			}
+			else {
+				resultSet.close();
+			}
+		}
+	}
+
+	/**
+	 * Streams the transactions of one tid range on its own connection and hands them to the
+	 * consumer as filled batches through a bounded queue. Drained batches come back through a free
+	 * list, so a partition allocates only PARTITION_QUEUE_DEPTH + 1 batches in all.
+	 */
+	private class PartitionReader implements Runnable
+	{
+		final int fromTid;
+		final int toTid;
+
+		private BlockingQueue<TransactionBatch> filledBatches = new ArrayBlockingQueue<TransactionBatch>(PARTITION_QUEUE_DEPTH + 1);
+		private BlockingQueue<TransactionBatch> freeBatches = new ArrayBlockingQueue<TransactionBatch>(PARTITION_QUEUE_DEPTH + 1);
+
+		// Connection of the partition, closed by DBReader.close() if the scan is abandoned.
+		private volatile Connection conn = null;
+
+		volatile Exception error = null;
+		volatile long numTxnsRead = 0;
+		volatile long startNanos = 0;
+		volatile long endNanos = 0;
+
+		PartitionReader(int fromTid, int toTid)
+		{
+			this.fromTid = fromTid;
+			this.toTid = toTid;
+			for(int i=0; i < PARTITION_QUEUE_DEPTH; i++) {
+				freeBatches.add(new TransactionBatch());
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			startNanos = System.nanoTime();
+			try {
+				conn = getStreamingConnection();
+				PreparedStatement stmt = conn.prepareStatement(getTxnRangeStreamQuery(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				stmt.setFetchSize(FETCH_SIZE);
+				stmt.setInt(1, fromTid);
+				stmt.setInt(2, toTid);
+				TransactionStream stream = new TransactionStream(stmt.executeQuery());
+
+				TransactionBatch batch = freeBatches.take();
+				batch.clear();
+				while(stream.hasNext()) {
+					int tid = stream.getNextTid();
+					int numItems = stream.readNext();
+					batch.add(tid, stream.getItems(), 0, numItems);
+					++numTxnsRead;
+
+					if(batch.isFull()) {
+						filledBatches.put(batch);
+						batch = freeBatches.take();
+						batch.clear();
+					}
+				}
+				if(!batch.isEmpty()) {
+					filledBatches.put(batch);
+				}
+				stmt.close();
+			} catch (Exception e) {
+				error = e;
+			} finally {
+				endNanos = System.nanoTime();
+				closeConnection();
+				filledBatches.offer(END_OF_PARTITION);
+			}
+		}
+
+		void closeConnection()
+		{
+			try {
+				if(conn != null && !conn.isClosed()) {
+					conn.close();
+				}
+			} catch (SQLException e) {
+				System.err.println("Failed to close the db connection .." + e);
+			}
+		}
+
+		TransactionBatch takeFilledBatch()
+		{
+			try {
+				return filledBatches.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error = e;
+				return END_OF_PARTITION;
+			}
+		}
+
+		void recycle(TransactionBatch batch)
+		{
+			freeBatches.offer(batch);
+		}
+	}
 }
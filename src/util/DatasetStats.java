@@ -0,0 +1,300 @@
+package util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import model.Dataset;
+
+/**
+ * Statistics of a dataset file, computed in a single pass over it : number of transactions, number
+ * of (distinct) items, longest and average transaction length, the support count of every item and
+ * a CRC32 checksum of the file contents. The algorithms size their arrays from them instead of
+ * guessing.
+ *
+ * The statistics are cached in a sidecar file next to the data file, at <data file>.stats, and are
+ * recomputed whenever the size or the modification time of the data file no longer match the ones
+ * recorded in the sidecar.
+ *
+ * @author shishir
+ *
+ */
+public class DatasetStats
+{
+	private static final String STATS_FILE_SUFFIX = ".stats";
+	private static final int STATS_VERSION = 1;
+	private static final int READ_BUFFER_SIZE = 4 << 20;
+
+	// Size and modification time of the data file the statistics were computed from.
+	private long dataFileSize;
+	private long dataFileLastModified;
+	private long checksum;
+
+	private int numTxns;
+	private long numItems;
+	private int numDistinctItems;
+	private int maxTxnLength;
+	// Support count of every item, indexed by item id up to the largest item in the dataset.
+	private int[] itemSupportCounts;
+
+	private DatasetStats()
+	{
+	}
+
+	/*
+	 * Returns the statistics of the dataset, from its sidecar if it is up to date and by scanning
+	 * the data file otherwise. Returns null if the dataset has no data file, e.g. when it has only
+	 * been loaded in the database.
+	 */
+	public static DatasetStats getStats(Dataset dataset)
+	{
+		File dataFile = new File(FileReader.getAbsoluteFileLocation(dataset.getDataFileLocation()));
+		if(!dataFile.exists()) {
+			return null;
+		}
+
+		DatasetStats stats = null;
+		try {
+			stats = getStats(dataFile);
+		} catch (IOException e) {
+			System.err.println("Failed to compute the statistics of dataset " + dataset + ". Reason : " + e);
+			System.exit(1);
+		}
+		return stats;
+	}
+
+	public static DatasetStats getStats(File dataFile) throws IOException
+	{
+		File statsFile = new File(getStatsFileLocation(dataFile.getPath()));
+		if(statsFile.exists()) {
+			DatasetStats stats = read(statsFile);
+			if(stats != null && stats.dataFileSize == dataFile.length() && stats.dataFileLastModified == dataFile.lastModified()) {
+				return stats;
+			}
+		}
+
+		DatasetStats stats = compute(dataFile);
+		try {
+			stats.write(statsFile);
+		} catch (IOException e) {
+			// Not fatal; the statistics will just be computed again next time.
+			System.err.println("Failed to write the statistics file " + statsFile + ". Reason : " + e);
+		}
+		return stats;
+	}
+
+	/*
+	 * Returns the location of the sidecar holding the statistics of the specified data file.
+	 */
+	public static String getStatsFileLocation(String dataFileLocation)
+	{
+		return dataFileLocation + STATS_FILE_SUFFIX;
+	}
+
+	/*
+	 * Scans the text data file once, checksumming the bytes as they are read and parsing the
+	 * transactions out of the same buffer.
+	 */
+	public static DatasetStats compute(File dataFile) throws IOException
+	{
+		DatasetStats stats = new DatasetStats();
+		stats.dataFileSize = dataFile.length();
+		stats.dataFileLastModified = dataFile.lastModified();
+
+		int[] itemSupportCounts = new int[Constants.NUMBER_OF_ITEMS];
+		int maxItem = -1;
+		CRC32 crc = new CRC32();
+		TransactionTextParser parser = new TransactionTextParser();
+
+		FileChannel channel = new FileInputStream(dataFile).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			buffer.flip();
+			boolean isEndOfFile = false;
+			while(true) {
+				if(parser.parseNext(buffer, isEndOfFile)) {
+					int numItems = parser.getNumItems();
+					int[] items = parser.getItems();
+					for(int i=0; i < numItems; i++) {
+						int item = items[i];
+						if(item >= itemSupportCounts.length) {
+							itemSupportCounts = Arrays.copyOf(itemSupportCounts, Math.max(item + 1, itemSupportCounts.length * 2));
+						}
+						itemSupportCounts[item]++;
+						maxItem = Math.max(maxItem, item);
+					}
+					++stats.numTxns;
+					stats.numItems += numItems;
+					stats.maxTxnLength = Math.max(stats.maxTxnLength, numItems);
+					continue;
+				}
+				if(isEndOfFile) {
+					break;
+				}
+
+				if(buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+					// A single line does not fit in the buffer. Grow it.
+					ByteBuffer biggerBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+					biggerBuffer.put(buffer);
+					biggerBuffer.flip();
+					buffer = biggerBuffer;
+				}
+				buffer.compact();
+				int readStart = buffer.position();
+				int bytesRead = channel.read(buffer);
+				if(bytesRead < 0) {
+					isEndOfFile = true;
+				}
+				else {
+					crc.update(buffer.array(), readStart, bytesRead);
+				}
+				buffer.flip();
+			}
+		}
+		finally {
+			channel.close();
+		}
+
+		stats.itemSupportCounts = Arrays.copyOf(itemSupportCounts, maxItem + 1);
+		for(int supportCount : stats.itemSupportCounts) {
+			if(supportCount > 0) {
+				++stats.numDistinctItems;
+			}
+		}
+		stats.checksum = crc.getValue();
+		return stats;
+	}
+
+	/*
+	 * Reads a sidecar. Returns null if it is of an older version or cannot be parsed, so that it
+	 * gets recomputed.
+	 */
+	private static DatasetStats read(File statsFile) throws IOException
+	{
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(statsFile);
+		try {
+			properties.load(in);
+		}
+		finally {
+			in.close();
+		}
+
+		try {
+			if(Integer.parseInt(properties.getProperty("version", "0")) != STATS_VERSION) {
+				return null;
+			}
+
+			DatasetStats stats = new DatasetStats();
+			stats.dataFileSize = Long.parseLong(properties.getProperty("dataFileSize"));
+			stats.dataFileLastModified = Long.parseLong(properties.getProperty("dataFileLastModified"));
+			stats.checksum = Long.parseLong(properties.getProperty("checksum"));
+			stats.numTxns = Integer.parseInt(properties.getProperty("numTxns"));
+			stats.numItems = Long.parseLong(properties.getProperty("numItems"));
+			stats.numDistinctItems = Integer.parseInt(properties.getProperty("numDistinctItems"));
+			stats.maxTxnLength = Integer.parseInt(properties.getProperty("maxTxnLength"));
+
+			String histogram = properties.getProperty("itemSupportCounts").trim();
+			String[] counts = histogram.isEmpty() ? new String[0] : histogram.split(" ");
+			stats.itemSupportCounts = new int[counts.length];
+			for(int item=0; item < counts.length; item++) {
+				stats.itemSupportCounts[item] = Integer.parseInt(counts[item]);
+			}
+			return stats;
+		} catch (RuntimeException e) {
+			// Missing or malformed entry
+			return null;
+		}
+	}
+
+	private void write(File statsFile) throws IOException
+	{
+		StringBuilder histogram = new StringBuilder(itemSupportCounts.length * 4);
+		for(int item=0; item < itemSupportCounts.length; item++) {
+			if(item > 0) {
+				histogram.append(' ');
+			}
+			histogram.append(itemSupportCounts[item]);
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("version", Integer.toString(STATS_VERSION));
+		properties.setProperty("dataFileSize", Long.toString(dataFileSize));
+		properties.setProperty("dataFileLastModified", Long.toString(dataFileLastModified));
+		properties.setProperty("checksum", Long.toString(checksum));
+		properties.setProperty("numTxns", Integer.toString(numTxns));
+		properties.setProperty("numItems", Long.toString(numItems));
+		properties.setProperty("numDistinctItems", Integer.toString(numDistinctItems));
+		properties.setProperty("maxTxnLength", Integer.toString(maxTxnLength));
+		properties.setProperty("avgTxnLength", Double.toString(getAvgTxnLength()));
+		properties.setProperty("itemSupportCounts", histogram.toString());
+
+		OutputStream out = new FileOutputStream(statsFile);
+		try {
+			properties.store(out, "Statistics of the dataset file " + statsFile.getName().replace(STATS_FILE_SUFFIX, ""));
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	public int getNumTxns() {
+		return numTxns;
+	}
+
+	/*
+	 * Total number of items over all the transactions.
+	 */
+	public long getNumItems() {
+		return numItems;
+	}
+
+	public int getNumDistinctItems() {
+		return numDistinctItems;
+	}
+
+	/*
+	 * Returns the largest item id in the dataset, or -1 if it has no items.
+	 */
+	public int getMaxItem() {
+		return itemSupportCounts.length - 1;
+	}
+
+	public int getMaxTxnLength() {
+		return maxTxnLength;
+	}
+
+	public double getAvgTxnLength() {
+		return numTxns == 0 ? 0 : (double)numItems / numTxns;
+	}
+
+	/*
+	 * Array indexed by item id holding its support count.
+	 */
+	public int[] getItemSupportCounts() {
+		return itemSupportCounts;
+	}
+
+	/*
+	 * CRC32 of the contents of the data file.
+	 */
+	public long getChecksum() {
+		return checksum;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "#Txns : " + numTxns + ", #Items : " + numItems + ", #Distinct items : " + numDistinctItems +
+				", Max item : " + getMaxItem() + ", Max txn length : " + maxTxnLength +
+				", Avg txn length : " + String.format("%.2f", getAvgTxnLength()) + ", Checksum : " + Long.toHexString(checksum);
+	}
+}
@@ -1,33 +1,43 @@
 package util;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.List;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 import model.Algorithm;
 import model.Dataset;
 import model.Transaction;
-
-import com.google.common.collect.Lists;
+import model.TransactionBatch;
 
 /**
- * Reads input transactions stored in filesystem.
- * 
+ * Reads input transactions stored in filesystem. The file is read through a FileChannel into a large
+ * byte buffer and parsed in place by {@link TransactionTextParser}.
+ *
  * @author shishir
  *
  */
-public class FileReader extends InputReader 
+public class FileReader extends InputReader
 {
-	private Scanner fileScanner = null;
-	
+	private static final int READ_BUFFER_SIZE = 4 << 20;
+
+	private FileChannel fileChannel = null;
+	private ByteBuffer readBuffer = null;
+	private boolean isEndOfFile = false;
+
+	private TransactionTextParser parser = new TransactionTextParser();
+	// Whether the parser holds a transaction that has not been returned yet.
+	private boolean hasParsedTransaction = false;
+
 	private long startTime = System.currentTimeMillis();
 	private long endTime   = System.currentTimeMillis();
 
 	public FileReader(Dataset dataset, Algorithm algorithm)
 	{
 		super(dataset, algorithm);
-		
+
 		// Get the filesystem location of the dataset file to be read.
 		String fileLoc = getAbsoluteFileLocation(dataset.getDataFileLocation());
 		if(fileLoc == null) {
@@ -35,41 +45,44 @@ public class FileReader extends InputReader
 			System.exit(0);
 		}
 
-		// Set the scanner here
+		// Open the channel here
 		startTime = System.currentTimeMillis();
 		try {
-			fileScanner = new Scanner(new File(fileLoc));
+			fileChannel = new FileInputStream(new File(fileLoc)).getChannel();
+			readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+			readBuffer.flip();
 		}
 		catch(Exception e) {
 			System.err.println("Failed to read the dataset file . Reason : " + e);
 			System.exit(0);
 		}
 	}
-	
+
 	@Override
 	public Transaction getNextTransaction()
 	{
 		Transaction transaction = null;
-		if(fileScanner.hasNext()) {
-			String currLine = fileScanner.nextLine().trim();
-			String[] words = currLine.split("[\\s\\t]+");
-
-			int currTid = Integer.parseInt(words[0].trim());
-			List<Integer> currItems = Lists.newArrayList();
-			for(int i=1; i < words.length; i++) {
-				currItems.add(Integer.parseInt(words[i].trim()));
-			}
-			
-			transaction = new Transaction(currTid, currTid, currItems);
+		if(hasNextTransaction()) {
+			int numItems = parser.getNumItems();
+			int[] items = parser.getItems();
+			int[] currItems = Arrays.copyOf(items, numItems);
+
+			int currTid = parser.getTid();
+			transaction = new Transaction(currTid, currTid, currItems, true);
+			hasParsedTransaction = false;
 		}
-		
+
 		return transaction;
 	}
 
 	@Override
 	public boolean hasNextTransaction()
 	{
-		boolean hasMoreTransactions = fileScanner.hasNext();
+		if(!hasParsedTransaction) {
+			hasParsedTransaction = parseNextTransaction();
+		}
+
+		boolean hasMoreTransactions = hasParsedTransaction;
 		if(!hasMoreTransactions) {
 			endTime = System.currentTimeMillis();
 		}
@@ -78,15 +91,92 @@ public class FileReader extends InputReader
 	}
 
 	@Override
-	public int getDatasetReadTime()
+	public int nextBatch(TransactionBatch batch)
+	{
+		batch.clear();
+		if(hasParsedTransaction) {
+			batch.add(parser.getTid(), parser.getItems(), 0, parser.getNumItems());
+			hasParsedTransaction = false;
+		}
+
+		while(!batch.isFull() && parseNextTransaction()) {
+			batch.add(parser.getTid(), parser.getItems(), 0, parser.getNumItems());
+		}
+
+		if(batch.isEmpty()) {
+			endTime = System.currentTimeMillis();
+		}
+
+		return batch.getSize();
+	}
+
+	@Override
+	public long getDatasetReadTime()
 	{
-		return (int)(endTime - startTime)/1000;
+		return endTime - startTime;
+	}
+
+	/*
+	 * Closes the dataset file, when it is not read till the end.
+	 */
+	@Override
+	public void close()
+	{
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			System.err.println("Failed to close the dataset file . Reason : " + e);
+		}
+	}
+
+	/*
+	 * Parses the next transaction into the parser, refilling the read buffer from the file as
+	 * required. Returns false once the whole file has been consumed.
+	 */
+	private boolean parseNextTransaction()
+	{
+		try {
+			while(!parser.parseNext(readBuffer, isEndOfFile)) {
+				if(isEndOfFile) {
+					return false;
+				}
+				fillReadBuffer();
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to read the dataset file . Reason : " + e);
+			System.exit(1);
+		}
+
+		return true;
+	}
+
+	/*
+	 * Moves the unparsed tail of the buffer to the front and reads more bytes behind it.
+	 */
+	private void fillReadBuffer() throws IOException
+	{
+		if(readBuffer.position() == 0 && readBuffer.limit() == readBuffer.capacity()) {
+			// A single line does not fit in the buffer. Grow it.
+			ByteBuffer biggerBuffer = ByteBuffer.allocateDirect(readBuffer.capacity() * 2);
+			biggerBuffer.put(readBuffer);
+			biggerBuffer.flip();
+			readBuffer = biggerBuffer;
+		}
+
+		readBuffer.compact();
+		int bytesRead = fileChannel.read(readBuffer);
+		readBuffer.flip();
+
+		if(bytesRead < 0) {
+			isEndOfFile = true;
+			fileChannel.close();
+		}
 	}
 
 	/*
 	 * Returns the absolute file location of the dataset file.
 	 */
-	private static String getAbsoluteFileLocation(String fileLoc)
+	static String getAbsoluteFileLocation(String fileLoc)
 	{
 		String absFileLoc = null;
 		try {
@@ -94,7 +184,7 @@ public class FileReader extends InputReader
 		} catch (IOException e1) {
 			e1.printStackTrace();
 		}
-		
+
 		return absFileLoc;
 	}
 }
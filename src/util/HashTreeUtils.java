@@ -28,7 +28,7 @@ public class HashTreeUtils
 			parentNode = null;
 			currNode = hashTreeRoot;
 			for(int i=0; i < itemsetSize; i++) {
-				Integer item = currItemset.getItems().get(i);
+				Integer item = currItemset.get(i);
 				Map<Integer, HashTreeNode> mapAtNode = currNode.getMapAtNode();
 				parentNode = currNode;
 				
@@ -76,8 +76,9 @@ public class HashTreeUtils
 		}
 
 		List<ItemSet> matchedItemsets = Lists.newArrayList();
-		for(int i=startIndex; i < t.getItems().size(); i++) {
-			Integer item = t.getItems().get(i);
+		int[] items = t.getItems();
+		for(int i=startIndex; i < items.length; i++) {
+			Integer item = items[i];
 			Map<Integer, HashTreeNode> mapAtNode = hashTreeRoot.getMapAtNode();
 
 			if(!mapAtNode.containsKey(item)) {
@@ -90,6 +91,50 @@ public class HashTreeUtils
 		return matchedItemsets;
 	}
 	
+	/*
+	 * Same as above for a transaction stored in a flat item array, e.g. a TransactionBatch. Searches
+	 * the sorted items in items[startIndex .. endIndex).
+	 */
+	public static List<ItemSet> findItemsets(HashTreeNode hashTreeRoot, int[] items, int startIndex, int endIndex)
+	{
+		if(hashTreeRoot.isLeafNode()) {
+			return hashTreeRoot.getItemsets();
+		}
+
+		List<ItemSet> matchedItemsets = Lists.newArrayList();
+		Map<Integer, HashTreeNode> mapAtNode = hashTreeRoot.getMapAtNode();
+		for(int i=startIndex; i < endIndex; i++) {
+			HashTreeNode childNode = mapAtNode.get(items[i]);
+			if(childNode == null) {
+				continue;
+			}
+			List<ItemSet> itemset = findItemsets(childNode, items, i+1, endIndex);
+			matchedItemsets.addAll(itemset);
+		}
+		
+		return matchedItemsets;
+	}
+	
+	/*
+	 * Same as above, appending the matched itemsets to the given list instead of building and merging
+	 * a new list at every level, so that a caller can reuse one list over all the transactions.
+	 */
+	public static void findItemsets(HashTreeNode hashTreeRoot, int[] items, int startIndex, int endIndex, List<ItemSet> matchedItemsets)
+	{
+		if(hashTreeRoot.isLeafNode()) {
+			matchedItemsets.addAll(hashTreeRoot.getItemsets());
+			return;
+		}
+
+		Map<Integer, HashTreeNode> mapAtNode = hashTreeRoot.getMapAtNode();
+		for(int i=startIndex; i < endIndex; i++) {
+			HashTreeNode childNode = mapAtNode.get(items[i]);
+			if(childNode != null) {
+				findItemsets(childNode, items, i+1, endIndex, matchedItemsets);
+			}
+		}
+	}
+	
 	/*
 	 * Prints the hashtree for debugging purposes.
 	 */
@@ -3,6 +3,7 @@ package util;
 import model.Algorithm;
 import model.Dataset;
 import model.Transaction;
+import model.TransactionBatch;
 
 /**
  * Interface used for reading transaction data from various sources like file, database etc.
@@ -45,9 +46,45 @@ public abstract class InputReader
 	abstract public boolean hasNextTransaction();
 
 	/*
-	 * Returns the time taken to read the dataset.
+	 * Batch counterpart of getNextTransaction(). Clears the batch and fills it with up to its
+	 * capacity of the next transactions from the dataset, so that the algorithms can scan a flat
+	 * block of items instead of one Transaction object per record.
+	 * 
+	 * Returns the number of transactions put in the batch; 0 once the dataset has been read fully.
+	 * Readers override this to fill the batch directly from their source.
 	 */
-	abstract public int getDatasetReadTime();
+	public int nextBatch(TransactionBatch batch)
+	{
+		batch.clear();
+		while(!batch.isFull() && hasNextTransaction()) {
+			batch.add(getNextTransaction());
+		}
+
+		return batch.getSize();
+	}
+
+	/*
+	 * Whether several threads may call nextBatch() at the same time, each of them getting batches of
+	 * its own. Readers which can only hand out one batch after the other have to be read under a lock
+	 * instead. getNextTransaction() is never safe to call from several threads.
+	 */
+	public boolean isConcurrent()
+	{
+		return false;
+	}
+
+	/*
+	 * Releases the resources held by the reader, e.g. background threads, when the dataset is not
+	 * going to be read till the end. Readers which hold nothing of the sort need not override this.
+	 */
+	public void close()
+	{
+	}
+
+	/*
+	 * Returns the time taken to read the dataset, in milliseconds.
+	 */
+	abstract public long getDatasetReadTime();
 
 	/*
 	 * Returns the list of transactions for the requested dataset.
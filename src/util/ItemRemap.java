@@ -0,0 +1,145 @@
+package util;
+
+import java.util.Arrays;
+
+import model.TransactionBatch;
+
+/**
+ * Renumbering of the items computed from the item supports of the first pass. Only the frequent
+ * items can be part of a large itemset, so they are given dense ranks 0 .. getNumRanks()-1 and the
+ * infrequent ones are dropped from the transactions altogether. The passes after the first one then
+ * work on ranks, over transactions which only hold frequent items; the ranks are mapped back to the
+ * original item ids on output.
+ *
+ * Items are ranked in the ascending order of their support (ties broken by the item id), so that
+ * the itemsets sharing a prefix of rare items, which are the first to drop out, sit together.
+ *
+ * @author shishir
+ *
+ */
+public class ItemRemap
+{
+	// Rank of every item, indexed by the original item id. -1 for the infrequent items.
+	private int[] itemRanks;
+	// Original item id of every rank.
+	private int[] rankItems;
+	private int[] rankSupportCounts;
+	// Number of items with a non zero support, i.e. the candidates of the first pass.
+	private int numDistinctItems = 0;
+
+	public ItemRemap(int[] itemSupportCounts, int minSupportCount)
+	{
+		// Sort the frequent items by (support, item) packed into a long.
+		long[] frequentItems = new long[itemSupportCounts.length];
+		int numFrequentItems = 0;
+		for(int item=0; item < itemSupportCounts.length; item++) {
+			int supportCount = itemSupportCounts[item];
+			if(supportCount > 0) {
+				++numDistinctItems;
+			}
+			if(supportCount > 0 && supportCount >= minSupportCount) {
+				frequentItems[numFrequentItems++] = ((long)supportCount << 32) | item;
+			}
+		}
+		Arrays.sort(frequentItems, 0, numFrequentItems);
+
+		itemRanks = new int[itemSupportCounts.length];
+		Arrays.fill(itemRanks, -1);
+		rankItems = new int[numFrequentItems];
+		rankSupportCounts = new int[numFrequentItems];
+		for(int rank=0; rank < numFrequentItems; rank++) {
+			int item = (int)frequentItems[rank];
+			itemRanks[item] = rank;
+			rankItems[rank] = item;
+			rankSupportCounts[rank] = (int)(frequentItems[rank] >>> 32);
+		}
+	}
+
+	/*
+	 * Number of frequent items.
+	 */
+	public int getNumRanks() {
+		return rankItems.length;
+	}
+
+	public int getNumDistinctItems() {
+		return numDistinctItems;
+	}
+
+	/*
+	 * Returns the rank of the item, or -1 if it is not frequent.
+	 */
+	public int getRank(int item)
+	{
+		return item < itemRanks.length ? itemRanks[item] : -1;
+	}
+
+	public int getItem(int rank)
+	{
+		return rankItems[rank];
+	}
+
+	/*
+	 * Array indexed by rank holding the support count of the item.
+	 */
+	public int[] getRankSupportCounts() {
+		return rankSupportCounts;
+	}
+
+	/*
+	 * Array indexed by rank holding the original item id.
+	 */
+	public int[] getRankItems() {
+		return rankItems;
+	}
+
+	/*
+	 * Replaces the contents of remapped with the transactions of the batch rewritten to ranks : the
+	 * infrequent items are dropped, the rest are sorted by rank, and transactions left with fewer
+	 * than minTxnLength items are dropped as well.
+	 */
+	public void remap(TransactionBatch batch, TransactionBatch remapped, int minTxnLength)
+	{
+		remapped.clear();
+		remapped.ensureCapacity(batch.getSize());
+		remapped.ensureItemsCapacity(batch.getNumItems());
+
+		int[] items = batch.getItems();
+		int[] remappedItems = remapped.getItems();
+		for(int t=0; t < batch.getSize(); t++) {
+			int start = remapped.getNumItems();
+			int numRanks = 0;
+			for(int i=batch.getItemsStart(t); i < batch.getItemsEnd(t); i++) {
+				int rank = getRank(items[i]);
+				if(rank >= 0) {
+					remappedItems[start + numRanks++] = rank;
+				}
+			}
+
+			if(numRanks >= minTxnLength) {
+				Arrays.sort(remappedItems, start, start + numRanks);
+				remapped.commit(batch.getTid(t), numRanks);
+			}
+		}
+	}
+
+	/*
+	 * Reads the whole dataset through the remap into a new cache for the later passes. Returns null
+	 * if even the trimmed dataset does not fit in the memory budget.
+	 */
+	public TransactionCache trim(InputReader reader, int minTxnLength, long maxSizeInBytes)
+	{
+		TransactionCache cache = new TransactionCache(maxSizeInBytes);
+		TransactionBatch batch = new TransactionBatch();
+		TransactionBatch remapped = new TransactionBatch();
+		while(reader.nextBatch(batch) > 0) {
+			remap(batch, remapped, minTxnLength);
+			if(!remapped.isEmpty() && !cache.add(remapped)) {
+				reader.close();
+				return null;
+			}
+		}
+
+		return cache;
+	}
+}
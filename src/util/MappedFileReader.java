@@ -0,0 +1,265 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import model.Algorithm;
+import model.CompressedTransactionBatch;
+import model.Dataset;
+import model.Transaction;
+import model.TransactionBatch;
+
+/**
+ * Reads input transactions from the binary transaction store of a dataset. The file is memory-mapped
+ * through NIO, so a pass over the dataset is just a scan over the mapped pages; nothing is parsed.
+ *
+ * See {@link BinaryTransactionFormat} for the file layout and bootstrap.BinaryConverterUtils for
+ * converting a text dataset file into this format. Compressed files are decoded block by block while
+ * they are scanned.
+ *
+ * @author shishir
+ *
+ */
+public class MappedFileReader extends InputReader
+{
+	private IntBuffer items;
+	private IntBuffer tids;
+	private IntBuffer offsets;
+	private int numTxns;
+
+	private int currTxnIndex = 0;
+
+	// Blocks section of a compressed file, and the block being handed out by getNextTransaction().
+	private ByteBuffer blocks;
+	private TransactionBatch currBlock;
+	private int currBlockTxnIndex = 0;
+
+	private long startTime = System.currentTimeMillis();
+	private long endTime   = System.currentTimeMillis();
+
+	public MappedFileReader(Dataset dataset, Algorithm algorithm)
+	{
+		super(dataset, algorithm);
+
+		String fileLoc = getBinaryFileLocation(dataset);
+		if(fileLoc == null) {
+			System.out.println("Failed to locate the binary file for dataset " + dataset.toString());
+			System.exit(0);
+		}
+
+		startTime = System.currentTimeMillis();
+		try {
+			mapFile(new File(fileLoc));
+		}
+		catch(IOException e) {
+			System.err.println("Failed to map the binary dataset file . Reason : " + e);
+			System.exit(0);
+		}
+	}
+
+	/*
+	 * Checks if the binary transaction store has been generated for this dataset, and is up to date
+	 * with its text file, if there is one. A stale binary file is ignored, so that the readers fall
+	 * back to the text file the dataset statistics are computed from.
+	 */
+	public static boolean hasBinaryFile(Dataset dataset)
+	{
+		String fileLoc = getBinaryFileLocation(dataset);
+		if(fileLoc == null || !new File(fileLoc).exists()) {
+			return false;
+		}
+
+		File textFile = new File(FileReader.getAbsoluteFileLocation(dataset.getDataFileLocation()));
+		if(!textFile.exists()) {
+			return true;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(fileLoc, "r");
+			try {
+				if(BinaryTransactionFormat.readHeader(raf.getChannel()).isUpToDate(textFile)) {
+					return true;
+				}
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch(IOException e) {
+			System.err.println("Failed to read the header of the binary dataset file . Reason : " + e);
+			return false;
+		}
+
+		System.err.println("Ignoring the binary file of dataset " + dataset + ", which does not match its text file. Regenerate it with bootstrap.BinaryConverterUtils.");
+		return false;
+	}
+
+	@Override
+	public Transaction getNextTransaction()
+	{
+		if(blocks != null) {
+			return getNextBlockTransaction();
+		}
+
+		Transaction transaction = null;
+		if(currTxnIndex < numTxns) {
+			int start = offsets.get(currTxnIndex);
+			int end = offsets.get(currTxnIndex + 1);
+
+			int[] currItems = new int[end - start];
+			for(int i=start; i < end; i++) {
+				currItems[i - start] = items.get(i);
+			}
+
+			int currTid = tids.get(currTxnIndex);
+			transaction = new Transaction(currTid, currTid, currItems, true);
+			++currTxnIndex;
+		}
+
+		return transaction;
+	}
+
+	@Override
+	public boolean hasNextTransaction()
+	{
+		if(blocks != null) {
+			while(currBlockTxnIndex == currBlock.getSize() && blocks.hasRemaining()) {
+				decodeNextBlock(currBlock);
+				currBlockTxnIndex = 0;
+			}
+		}
+
+		boolean hasMoreTransactions = (blocks != null) ? (currBlockTxnIndex < currBlock.getSize()) : (currTxnIndex < numTxns);
+		if(!hasMoreTransactions) {
+			endTime = System.currentTimeMillis();
+		}
+
+		return hasMoreTransactions;
+	}
+
+	@Override
+	public int nextBatch(TransactionBatch batch)
+	{
+		batch.clear();
+		if(blocks != null) {
+			if(currBlockTxnIndex < currBlock.getSize()) {
+				// Partly consumed through getNextTransaction(). Hand out the rest of it.
+				currBlockTxnIndex += batch.addFrom(currBlock, currBlockTxnIndex);
+			}
+			else if(blocks.hasRemaining()) {
+				decodeNextBlock(batch);
+			}
+
+			if(batch.isEmpty()) {
+				endTime = System.currentTimeMillis();
+			}
+			return batch.getSize();
+		}
+
+		int numBatchTxns = Math.min(batch.getCapacity(), numTxns - currTxnIndex);
+		if(numBatchTxns == 0) {
+			endTime = System.currentTimeMillis();
+			return 0;
+		}
+
+		// Items of consecutive transactions are contiguous in the file, so copy them in bulk.
+		int start = offsets.get(currTxnIndex);
+		int end = offsets.get(currTxnIndex + numBatchTxns);
+		batch.ensureItemsCapacity(end - start);
+		items.position(start);
+		items.get(batch.getItems(), 0, end - start);
+
+		for(int i=0; i < numBatchTxns; i++) {
+			int txnIndex = currTxnIndex + i;
+			batch.commit(tids.get(txnIndex), offsets.get(txnIndex + 1) - offsets.get(txnIndex));
+		}
+		currTxnIndex += numBatchTxns;
+
+		return numBatchTxns;
+	}
+
+	@Override
+	public long getDatasetReadTime()
+	{
+		return endTime - startTime;
+	}
+
+	private Transaction getNextBlockTransaction()
+	{
+		Transaction transaction = null;
+		if(hasNextTransaction()) {
+			int start = currBlock.getItemsStart(currBlockTxnIndex);
+			int end = currBlock.getItemsEnd(currBlockTxnIndex);
+
+			int[] currItems = Arrays.copyOfRange(currBlock.getItems(), start, end);
+
+			int currTid = currBlock.getTid(currBlockTxnIndex);
+			transaction = new Transaction(currTid, currTid, currItems, true);
+			++currBlockTxnIndex;
+		}
+
+		return transaction;
+	}
+
+	/*
+	 * Decodes the block at the current position of the blocks section into the batch.
+	 */
+	private void decodeNextBlock(TransactionBatch batch)
+	{
+		int numBlockTxns = blocks.getInt();
+		int numBlockItems = blocks.getInt();
+		blocks.getInt(); // Length of the encoded data, only needed to skip a block.
+		CompressedTransactionBatch.decode(blocks, numBlockTxns, numBlockItems, batch);
+	}
+
+	/*
+	 * Maps the items, tids and offsets sections of the binary file, or its blocks section if it is
+	 * compressed. The mappings stay valid after the channel is closed.
+	 */
+	private void mapFile(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+
+			BinaryTransactionFormat format = BinaryTransactionFormat.readHeader(channel);
+
+			numTxns = format.getNumTxns();
+			if(format.isCompressed()) {
+				blocks = channel.map(FileChannel.MapMode.READ_ONLY, format.getBlocksPosition(), format.getBlocksLength())
+						.order(BinaryTransactionFormat.BYTE_ORDER);
+				currBlock = new TransactionBatch();
+				return;
+			}
+
+			items = mapIntSection(channel, format.getItemsPosition(), format.getNumItems());
+			tids = mapIntSection(channel, format.getTidsPosition(), numTxns);
+			offsets = mapIntSection(channel, format.getOffsetsPosition(), numTxns + 1);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static IntBuffer mapIntSection(FileChannel channel, long position, long numInts) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, numInts * 4)
+				.order(BinaryTransactionFormat.BYTE_ORDER)
+				.asIntBuffer();
+	}
+
+	private static String getBinaryFileLocation(Dataset dataset)
+	{
+		String fileLoc = FileReader.getAbsoluteFileLocation(dataset.getDataFileLocation());
+		if(fileLoc == null) {
+			return null;
+		}
+
+		return BinaryTransactionFormat.getBinaryFileLocation(fileLoc);
+	}
+}
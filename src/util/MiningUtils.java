@@ -1,11 +1,16 @@
 package util;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import model.Algorithm;
+import model.Dataset;
 import model.HashTreeNode;
 import model.ItemSet;
 import model.Transaction;
+import model.TransactionBatch;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -28,34 +33,167 @@ public class MiningUtils {
 	 */
 	public static List<ItemSet> getInitialLargeItemsets(InputReader reader, int minSupportCount)
 	{
-		// Usage of tree hashmap would ensure that that keys stay in the sorted order.
-		Map<Integer, Integer> itemSetSupportMap = Maps.newTreeMap();
-		
-		// Generate support for each item in the list of transactions
-		while(reader.hasNextTransaction()) {
-			Transaction txn = reader.getNextTransaction();
-			List<Integer> items = txn.getItems();
-			for(Integer item : items) {
-				int count = 1;
-				if(itemSetSupportMap.containsKey(item)) {
-					count = count + itemSetSupportMap.get(item);
-				}
-				
-				itemSetSupportMap.put(item, count);
-			}
-		}
+		int[] itemSupportCounts = getItemSupportCounts(reader);
 
-		// Filter out the itemsets whose support is greater than the minimum desired support
+		// Filter out the itemsets whose support is greater than the minimum desired support. Items
+		// are visited in the ascending order of their ids.
 		List<ItemSet> largeItemSets = Lists.newArrayList();
-		for(Map.Entry<Integer, Integer> entry : itemSetSupportMap.entrySet()) {
-			if(entry.getValue() >= minSupportCount) {
-				largeItemSets.add(new ItemSet(Lists.newArrayList(entry.getKey()), entry.getValue()));
+		for(int item=0; item < itemSupportCounts.length; item++) {
+			int supportCount = itemSupportCounts[item];
+			if(supportCount > 0 && supportCount >= minSupportCount) {
+				largeItemSets.add(new ItemSet(new int[] {item}, supportCount));
 			}
 		}
 		
 		return largeItemSets;
 	}
 
+	/*
+	 * Scans the dataset batch by batch and counts the support of every item. This is the counting
+	 * phase of the first pass shared by all the algorithms.
+	 * 
+	 * @param reader - Reader positioned at the start of the dataset.
+	 * 
+	 * @returns Array indexed by item id holding its support count.
+	 */
+	public static int[] getItemSupportCounts(InputReader reader)
+	{
+		return getItemSupportCounts(reader, null);
+	}
+
+	/*
+	 * Same as getItemSupportCounts(reader), while also copying the transactions into the cache for
+	 * the later passes.
+	 * 
+	 * @param cache - Cache to fill, or null.
+	 */
+	public static int[] getItemSupportCounts(InputReader reader, TransactionCache cache)
+	{
+		int[] itemSupportCounts = new int[getNumItemIds(reader.getDataset())];
+
+		TransactionBatch batch = new TransactionBatch();
+		while(reader.nextBatch(batch) > 0) {
+			if(cache != null) {
+				cache.add(batch);
+			}
+			int[] items = batch.getItems();
+			int numItems = batch.getNumItems();
+			for(int i=0; i < numItems; i++) {
+				int item = items[i];
+				if(item >= itemSupportCounts.length) {
+					itemSupportCounts = Arrays.copyOf(itemSupportCounts, Math.max(item + 1, itemSupportCounts.length * 2));
+				}
+				itemSupportCounts[item]++;
+			}
+		}
+
+		return itemSupportCounts;
+	}
+
+	/*
+	 * Counts the support of every item for the first pass, copying the transactions into the cache
+	 * on the way. Unless the binary store has been generated, the text file is split across all the
+	 * cores and the items are counted while it is being parsed.
+	 */
+	public static int[] getItemSupportCounts(Dataset dataset, Algorithm algorithm, TransactionCache txnCache)
+	{
+		if(MappedFileReader.hasBinaryFile(dataset)) {
+			return getItemSupportCounts(getDatasetReader(dataset, algorithm, null, null), txnCache);
+		}
+
+		int[] itemSupportCounts = null;
+		try {
+			itemSupportCounts = ParallelFileParser.parse(dataset, txnCache).getItemSupportCounts();
+		} catch (IOException e) {
+			System.err.println("Failed to read the dataset file . Reason : " + e);
+			System.exit(1);
+		}
+		return itemSupportCounts;
+	}
+
+	/*
+	 * Reads the dataset through the item remap into a new transaction cache, i.e. the first pass when
+	 * the item supports are already known. Returns null if the trimmed dataset does not fit in the
+	 * cache. The text file is parsed on all the cores, the binary store read as it is.
+	 */
+	public static TransactionCache getTrimmedCache(Dataset dataset, Algorithm algorithm, ItemRemap itemRemap)
+	{
+		if(MappedFileReader.hasBinaryFile(dataset)) {
+			return itemRemap.trim(getDatasetReader(dataset, algorithm, null, null), 2, Constants.TRANSACTION_CACHE_MAX_BYTES);
+		}
+
+		TransactionCache txnCache = new TransactionCache(Constants.TRANSACTION_CACHE_MAX_BYTES);
+		try {
+			ParallelFileParser.parse(dataset, txnCache, itemRemap, 2);
+		} catch (IOException e) {
+			System.err.println("Failed to read the dataset file . Reason : " + e);
+			System.exit(1);
+		}
+		return txnCache.isOverflowed() ? null : txnCache;
+	}
+
+	/*
+	 * Gets a iterative reader to the dataset for the algorithm of the current experiment. Reads from
+	 * the transaction cache when the dataset fit in it; otherwise prefers the memory-mapped binary
+	 * store, if it has been generated for this dataset, since this method is called once per pass.
+	 * The dataset file is read through the item remap, if any; the cache already holds ranks.
+	 */
+	public static InputReader getDatasetReader(Dataset dataset, Algorithm algorithm, TransactionCache txnCache, ItemRemap itemRemap)
+	{
+		if(txnCache != null) {
+			return txnCache.getReader(dataset, algorithm);
+		}
+
+		InputReader reader = null;
+		if(MappedFileReader.hasBinaryFile(dataset)) {
+			reader = new MappedFileReader(dataset, algorithm);
+		}
+		else {
+			reader = new FileReader(dataset, algorithm);
+		}
+		return itemRemap != null ? new RemappingReader(reader, itemRemap, 2) : reader;
+	}
+
+	/*
+	 * Gets the reader for a pass counted through CandidateCounter. When several threads count over
+	 * the transaction cache, they claim and decode its blocks themselves, so the cache is not read
+	 * ahead by the single thread of a PrefetchingReader.
+	 */
+	public static InputReader getCountingReader(Dataset dataset, Algorithm algorithm, TransactionCache txnCache, ItemRemap itemRemap)
+	{
+		InputReader reader = getDatasetReader(dataset, algorithm, txnCache, itemRemap);
+		if(Constants.NUM_COUNTING_THREADS > 1 && reader.isConcurrent()) {
+			return reader;
+		}
+		return PrefetchingReader.wrap(reader);
+	}
+
+	/*
+	 * Returns the length of the per pass arrays of the Apriori family. No itemset can be larger than
+	 * the longest transaction, and the pass after the largest itemsets finds none, so with the
+	 * statistics of the dataset at hand this is exact. Passes are numbered from 1.
+	 */
+	public static int getMaxNumPasses(Dataset dataset)
+	{
+		DatasetStats stats = dataset.getStats();
+		if(stats == null) {
+			return 400 * dataset.getAvgTxnSize();
+		}
+		return stats.getMaxTxnLength() + 2;
+	}
+
+	/*
+	 * Returns the length of an array indexed by item id, i.e. the largest item id + 1.
+	 */
+	public static int getNumItemIds(Dataset dataset)
+	{
+		DatasetStats stats = dataset.getStats();
+		if(stats == null) {
+			return Constants.NUMBER_OF_ITEMS;
+		}
+		return stats.getMaxItem() + 1;
+	}
+
 	/*
 	 * Returns the subset of itemsets from the input set of itemsets contained in this transaction. Uses HashTree
 	 * data structure for efficient subset generation.
@@ -9,11 +9,13 @@ import java.util.List;
 import java.util.Map;
 
 import model.Algorithm;
+import model.CandidateTable;
 import model.Dataset;
 import model.ItemSet;
-import model.LargeItemset;
 import model.MinSup;
 
+import com.google.common.collect.Lists;
+
 /*
  * Utility class to save output of algorithm runs to a file. The outputs would contain the 
  * large itemsets generated at each pass. This would help in comparing the outuuts of different
@@ -48,7 +50,7 @@ public class OutputUtils {
 			Collections.sort(largeItemsetsCurrPass);
 			
 			for(ItemSet itemset : largeItemsetsCurrPass) {
-				if(itemset == null || itemset.getItems() == null || itemset.getItems().isEmpty()) {
+				if(itemset == null || itemset.size() == 0) {
 					continue;
 				}
 
@@ -112,7 +114,7 @@ public class OutputUtils {
 		bw.newLine();
 
 		for(ItemSet itemset : largeItemsets) {
-			if(itemset == null || itemset.getItems() == null || itemset.getItems().isEmpty()) {
+			if(itemset == null || itemset.size() == 0) {
 				continue;
 			}
 
@@ -124,27 +126,37 @@ public class OutputUtils {
 	}
 
 	/*
-	 * Populates output file with the large itemsets generated for each pass for non-apriori algos.
+	 * Populates output file with the large itemsets generated for each pass for apriori algos. The
+	 * itemsets of ranks are mapped back to the original item ids through the item remap, if any, and
+	 * written in the lexical order of the item ids like the other algorithms do; the candidates are
+	 * in the lexical order of the ranks.
 	 */
-	public static void writeLargeItemsetsToFile(File file, int pass, LargeItemset l, ItemSet[] allItemsets) throws IOException
+	public static void writeLargeItemsetsToFile(File file, int pass, CandidateTable candidates, ItemRemap itemRemap) throws IOException
 	{
-		if(l.getItemsetIds().isEmpty()) {
+		if(candidates.getNumLarge() == 0) {
 			return;
 		}
 
+		int[] itemNames = itemRemap != null ? itemRemap.getRankItems() : null;
+		List<ItemSet> largeItemsets = Lists.newArrayListWithCapacity(candidates.getNumLarge());
+		for(int i = candidates.nextLarge(0); i >= 0; i = candidates.nextLarge(i + 1)) {
+			largeItemsets.add(candidates.getItemSet(i, itemNames));
+		}
+		Collections.sort(largeItemsets);
+
 		BufferedWriter bw = new BufferedWriter(new FileWriter(file, true));
 		
 		String largeItemsetsStats = 
-				"# Number of large itemsets in pass " + pass + " are " + l.getItemsetIds().size();
+				"# Number of large itemsets in pass " + pass + " are " + candidates.getNumLarge();
 		bw.write(largeItemsetsStats);
 		bw.newLine();
 
-		for(Integer i : l.getItemsetIds())
+		for(ItemSet itemset : largeItemsets)
 		{
 			StringBuilder printStr = new StringBuilder();
-			for(Integer j : allItemsets[i].getItems())
+			for(int j : itemset.getItems())
 				printStr.append(j).append(" ");
-			printStr.append(" - ").append(allItemsets[i].getSupportCount());
+			printStr.append(" - ").append(itemset.getSupportCount());
 			
 			bw.write(printStr.toString());
 			bw.newLine();
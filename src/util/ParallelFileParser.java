@@ -0,0 +1,284 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import model.CompressedTransactionBatch;
+import model.Dataset;
+import model.TransactionBatch;
+
+/**
+ * Parses a text dataset file on all the cores. The file is split into newline aligned byte ranges,
+ * each range is memory-mapped and parsed by a fork-join worker into primitive transaction batches.
+ * The item histogram of the first pass is counted by the workers during the same parse, so the
+ * first pass of the Apriori family costs a single parallel scan. The parsed batches can be kept in
+ * a {@link TransactionCache} for the later passes, either as they are or already rewritten through
+ * an {@link ItemRemap} when the item supports are known before the scan.
+ *
+ * @author shishir
+ *
+ */
+public class ParallelFileParser
+{
+	// Byte ranges smaller than this are not worth a task of their own.
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+	// Number of chunks per worker thread, to even out the load when some chunks parse slower.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * Outcome of a parse : the per item support counts and the compressed transactions, unless they
+	 * were not to be kept or did not fit in the cache. The latter are handed over to the cache.
+	 */
+	public static class ParsedDataset
+	{
+		private int[] itemSupportCounts;
+		private List<CompressedTransactionBatch> batches;
+		private long numTxns;
+
+		ParsedDataset(int[] itemSupportCounts, List<CompressedTransactionBatch> batches, long numTxns)
+		{
+			this.itemSupportCounts = itemSupportCounts;
+			this.batches = batches;
+			this.numTxns = numTxns;
+		}
+
+		/*
+		 * Array indexed by item id holding its support count.
+		 */
+		public int[] getItemSupportCounts() {
+			return itemSupportCounts;
+		}
+
+		public long getNumTxns() {
+			return numTxns;
+		}
+	}
+
+	/*
+	 * Parses the text file of a dataset.
+	 *
+	 * @param cache - Cache to keep the parsed transactions in, or null to just count the items.
+	 */
+	public static ParsedDataset parse(Dataset dataset, TransactionCache cache) throws IOException
+	{
+		return parse(dataset, cache, null, 0);
+	}
+
+	/*
+	 * Same as above, keeping the transactions in the cache rewritten through the item remap, see
+	 * ItemRemap.remap().
+	 */
+	public static ParsedDataset parse(Dataset dataset, TransactionCache cache, ItemRemap itemRemap, int minTxnLength) throws IOException
+	{
+		String fileLoc = FileReader.getAbsoluteFileLocation(dataset.getDataFileLocation());
+		return parse(new File(fileLoc), cache, itemRemap, minTxnLength, Constants.NUM_WORKER_THREADS);
+	}
+
+	public static ParsedDataset parse(File file, TransactionCache cache, int numThreads) throws IOException
+	{
+		return parse(file, cache, null, 0, numThreads);
+	}
+
+	/*
+	 * @param itemRemap    - Remap to rewrite the cached transactions through, or null to cache them as
+	 *                       they are.
+	 * @param minTxnLength - Cached transactions with fewer ranks than this are dropped.
+	 */
+	public static ParsedDataset parse(File file, TransactionCache cache, ItemRemap itemRemap, int minTxnLength, int numThreads) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			FileChannel channel = raf.getChannel();
+			long[] chunkBoundaries = getChunkBoundaries(raf, numThreads);
+			ParsedDataset parsedDataset = pool.invoke(new ParseTask(channel, chunkBoundaries, 0, chunkBoundaries.length - 1, cache, itemRemap, minTxnLength));
+			if(parsedDataset.batches != null) {
+				cache.addAll(parsedDataset.batches);
+			}
+			return parsedDataset;
+		}
+		finally {
+			pool.shutdown();
+			raf.close();
+		}
+	}
+
+	/*
+	 * Splits the file into chunks of roughly equal size. Every boundary but the first is moved just
+	 * past the next newline, so that no line straddles two chunks. Chunk i spans the byte range
+	 * [boundaries[i], boundaries[i+1]).
+	 */
+	private static long[] getChunkBoundaries(RandomAccessFile raf, int numThreads) throws IOException
+	{
+		long fileSize = raf.length();
+		long chunkSize = Math.max(MIN_CHUNK_SIZE, fileSize / ((long)numThreads * CHUNKS_PER_THREAD));
+
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(0L);
+		long boundary = chunkSize;
+		while(boundary < fileSize) {
+			raf.seek(boundary);
+			int b;
+			while((b = raf.read()) != -1 && b != '\n');
+			boundary = raf.getFilePointer();
+			if(boundary >= fileSize) {
+				break;
+			}
+			boundaries.add(boundary);
+			boundary += chunkSize;
+		}
+		boundaries.add(fileSize);
+
+		long[] chunkBoundaries = new long[boundaries.size()];
+		for(int i=0; i < chunkBoundaries.length; i++) {
+			chunkBoundaries[i] = boundaries.get(i);
+		}
+		return chunkBoundaries;
+	}
+
+	/**
+	 * Parses the chunks [fromChunk, toChunk) by splitting them in halves till a single chunk is
+	 * left. The halves are joined in order, so the batches stay in the file order. The workers stop
+	 * keeping batches as soon as the cache budget is exhausted.
+	 */
+	private static class ParseTask extends RecursiveTask<ParsedDataset>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel channel;
+		private long[] chunkBoundaries;
+		private int fromChunk, toChunk;
+		private TransactionCache cache;
+		private ItemRemap itemRemap;
+		private int minTxnLength;
+
+		ParseTask(FileChannel channel, long[] chunkBoundaries, int fromChunk, int toChunk, TransactionCache cache,
+				ItemRemap itemRemap, int minTxnLength)
+		{
+			this.channel = channel;
+			this.chunkBoundaries = chunkBoundaries;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.cache = cache;
+			this.itemRemap = itemRemap;
+			this.minTxnLength = minTxnLength;
+		}
+
+		@Override
+		protected ParsedDataset compute()
+		{
+			if(toChunk - fromChunk <= 1) {
+				try {
+					return parseChunk(chunkBoundaries[fromChunk], chunkBoundaries[toChunk]);
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to parse the chunk at byte " + chunkBoundaries[fromChunk] + " : " + e.getMessage(), e);
+				}
+			}
+
+			int midChunk = (fromChunk + toChunk) >>> 1;
+			ParseTask left = new ParseTask(channel, chunkBoundaries, fromChunk, midChunk, cache, itemRemap, minTxnLength);
+			ParseTask right = new ParseTask(channel, chunkBoundaries, midChunk, toChunk, cache, itemRemap, minTxnLength);
+			right.fork();
+			ParsedDataset leftResult = left.compute();
+			ParsedDataset rightResult = right.join();
+
+			return merge(leftResult, rightResult);
+		}
+
+		private ParsedDataset parseChunk(long start, long end) throws IOException
+		{
+			int[] itemSupportCounts = new int[Constants.NUMBER_OF_ITEMS];
+			boolean keepTransactions = (cache != null && !cache.isOverflowed());
+			List<CompressedTransactionBatch> batches = keepTransactions ? new ArrayList<CompressedTransactionBatch>() : null;
+			long numTxns = 0;
+			if(end <= start) {
+				return new ParsedDataset(itemSupportCounts, batches, 0);
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			TransactionTextParser parser = new TransactionTextParser(start);
+			TransactionBatch batch = keepTransactions ? new TransactionBatch() : null;
+			TransactionBatch remapped = (keepTransactions && itemRemap != null) ? new TransactionBatch() : null;
+
+			while(parser.parseNext(buffer, true)) {
+				int[] items = parser.getItems();
+				int numItems = parser.getNumItems();
+				for(int i=0; i < numItems; i++) {
+					int item = items[i];
+					if(item >= itemSupportCounts.length) {
+						itemSupportCounts = Arrays.copyOf(itemSupportCounts, Math.max(item + 1, itemSupportCounts.length * 2));
+					}
+					itemSupportCounts[item]++;
+				}
+				++numTxns;
+
+				if(keepTransactions) {
+					batch.add(parser.getTid(), items, 0, numItems);
+					if(batch.isFull()) {
+						keepTransactions = keepBatch(batch, remapped, batches);
+						batches = keepTransactions ? batches : null;
+						batch.clear();
+					}
+				}
+			}
+			if(keepTransactions && !batch.isEmpty()) {
+				keepTransactions = keepBatch(batch, remapped, batches);
+				batches = keepTransactions ? batches : null;
+			}
+
+			return new ParsedDataset(itemSupportCounts, batches, numTxns);
+		}
+
+		/*
+		 * Compresses the batch, rewritten through the item remap if any, and adds it to the batches of
+		 * this chunk if the cache has room for it.
+		 */
+		private boolean keepBatch(TransactionBatch batch, TransactionBatch remapped, List<CompressedTransactionBatch> batches)
+		{
+			if(itemRemap != null) {
+				itemRemap.remap(batch, remapped, minTxnLength);
+				if(remapped.isEmpty()) {
+					return true;
+				}
+				batch = remapped;
+			}
+
+			CompressedTransactionBatch compressedBatch = CompressedTransactionBatch.encode(batch);
+			if(!cache.reserve(compressedBatch.getSizeInBytes())) {
+				return false;
+			}
+			batches.add(compressedBatch);
+			return true;
+		}
+
+		private static ParsedDataset merge(ParsedDataset left, ParsedDataset right)
+		{
+			int[] counts = left.itemSupportCounts;
+			int[] otherCounts = right.itemSupportCounts;
+			if(otherCounts.length > counts.length) {
+				int[] swap = counts;
+				counts = otherCounts;
+				otherCounts = swap;
+			}
+			for(int i=0; i < otherCounts.length; i++) {
+				counts[i] += otherCounts[i];
+			}
+
+			List<CompressedTransactionBatch> batches = null;
+			if(left.batches != null && right.batches != null) {
+				batches = left.batches;
+				batches.addAll(right.batches);
+			}
+
+			return new ParsedDataset(counts, batches, left.numTxns + right.numTxns);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package util;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import model.Transaction;
+import model.TransactionBatch;
+
+/**
+ * Wraps another reader and reads ahead of the miner. A background thread fills the next batch of
+ * transactions from the wrapped reader, i.e. does the I/O and the parsing or decoding, while the
+ * miner is counting over the current batch.
+ *
+ * Batches are double buffered : the thread fills at most NUM_BUFFERS batches ahead and then waits
+ * for the miner to hand one back. A filled batch is swapped into the batch passed to nextBatch(),
+ * so nothing is copied. A failure of the wrapped reader is rethrown to the miner from the call
+ * which would have returned the failed batch.
+ *
+ * @author shishir
+ *
+ */
+public class PrefetchingReader extends InputReader
+{
+	private static final int NUM_BUFFERS = 2;
+
+	// Marks the end of the dataset in the queue of filled batches.
+	private static final TransactionBatch END_OF_DATASET = new TransactionBatch(1);
+	// Wakes up the background thread waiting on the queue of free batches when the reader is closed.
+	private static final TransactionBatch CLOSED = new TransactionBatch(1);
+
+	private InputReader reader;
+
+	private BlockingQueue<TransactionBatch> filledBatches = new ArrayBlockingQueue<TransactionBatch>(NUM_BUFFERS + 1);
+	private BlockingQueue<TransactionBatch> freeBatches = new ArrayBlockingQueue<TransactionBatch>(NUM_BUFFERS + 1);
+	private Thread prefetchThread;
+	private volatile Throwable error = null;
+	private volatile boolean isClosed = false;
+	private boolean isEndOfDataset = false;
+
+	// Batch being handed out transaction by transaction through getNextTransaction().
+	private TransactionBatch currBatch = new TransactionBatch();
+	private int currTxnIndex = 0;
+
+	public PrefetchingReader(InputReader reader)
+	{
+		super(reader.getDataset(), reader.getAlgorithm());
+		this.reader = reader;
+		for(int i=0; i < NUM_BUFFERS; i++) {
+			freeBatches.add(new TransactionBatch());
+		}
+
+		prefetchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				prefetch();
+			}
+		}, "PrefetchingReader-" + reader.getDataset());
+		prefetchThread.setDaemon(true);
+		prefetchThread.start();
+	}
+
+	/*
+	 * Wraps the reader in a PrefetchingReader, unless prefetching has been turned off through
+	 * Constants.PREFETCH_TRANSACTIONS.
+	 */
+	public static InputReader wrap(InputReader reader)
+	{
+		return Constants.PREFETCH_TRANSACTIONS ? new PrefetchingReader(reader) : reader;
+	}
+
+	@Override
+	public Transaction getNextTransaction()
+	{
+		Transaction transaction = null;
+		if(hasNextTransaction()) {
+			int start = currBatch.getItemsStart(currTxnIndex);
+			int end = currBatch.getItemsEnd(currTxnIndex);
+
+			int[] currItems = Arrays.copyOfRange(currBatch.getItems(), start, end);
+
+			int currTid = currBatch.getTid(currTxnIndex);
+			transaction = new Transaction(currTid, currTid, currItems, true);
+			++currTxnIndex;
+		}
+
+		return transaction;
+	}
+
+	@Override
+	public boolean hasNextTransaction()
+	{
+		while(currTxnIndex == currBatch.getSize() && takeFilledBatch(currBatch)) {
+			currTxnIndex = 0;
+		}
+
+		return currTxnIndex < currBatch.getSize();
+	}
+
+	@Override
+	public int nextBatch(TransactionBatch batch)
+	{
+		batch.clear();
+		if(currTxnIndex < currBatch.getSize()) {
+			// Partly consumed through getNextTransaction(). Hand out the rest of it.
+			currTxnIndex += batch.addFrom(currBatch, currTxnIndex);
+		}
+		else {
+			takeFilledBatch(batch);
+		}
+
+		return batch.getSize();
+	}
+
+	@Override
+	public long getDatasetReadTime()
+	{
+		return reader.getDatasetReadTime();
+	}
+
+	/*
+	 * Stops the background thread and closes the wrapped reader. Only needed when the dataset is not
+	 * read till the end.
+	 *
+	 * The thread is not interrupted : an interrupt in the middle of a read closes the FileChannel of
+	 * a FileReader under it. Instead it is woken up through the queue of free batches, and stops
+	 * once the batch it may be filling is done. The wrapped reader is closed after that, so that it
+	 * is never used by both threads.
+	 */
+	@Override
+	public void close()
+	{
+		isClosed = true;
+		// There are only NUM_BUFFERS batches, so the queue always has room for the marker.
+		freeBatches.offer(CLOSED);
+
+		boolean isInterrupted = false;
+		while(prefetchThread.isAlive()) {
+			try {
+				prefetchThread.join();
+			} catch (InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if(isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		reader.close();
+	}
+
+	/*
+	 * Swaps the next filled batch into the specified batch and hands its buffers back to the
+	 * background thread. Returns false at the end of the dataset.
+	 */
+	private boolean takeFilledBatch(TransactionBatch batch)
+	{
+		if(isEndOfDataset) {
+			return false;
+		}
+
+		TransactionBatch filledBatch = null;
+		try {
+			filledBatch = filledBatches.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for transactions of dataset " + getDataset(), e);
+		}
+
+		if(filledBatch == END_OF_DATASET) {
+			isEndOfDataset = true;
+			if(error != null) {
+				throw new RuntimeException("Failed to read transactions of dataset " + getDataset(), error);
+			}
+			return false;
+		}
+
+		batch.swap(filledBatch);
+		freeBatches.offer(filledBatch);
+		return true;
+	}
+
+	/*
+	 * Body of the background thread.
+	 */
+	private void prefetch()
+	{
+		try {
+			while(!isClosed) {
+				TransactionBatch batch = freeBatches.take();
+				if(batch == CLOSED || reader.nextBatch(batch) == 0) {
+					break;
+				}
+				filledBatches.put(batch);
+			}
+		} catch (InterruptedException e) {
+			// Nothing interrupts this thread, but stop all the same.
+		} catch (Throwable t) {
+			error = t;
+		} finally {
+			// There are only NUM_BUFFERS batches, so the queue always has room for the marker.
+			filledBatches.offer(END_OF_DATASET);
+		}
+	}
+}
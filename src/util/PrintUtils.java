@@ -35,7 +35,7 @@ public class PrintUtils {
 			if(itemset == null)
 				break;
 			System.out.print(index + ": ");
-			for(Integer j : itemset.getItems())
+			for(int j : itemset.getItems())
 				System.out.print(j + " ");
 			System.out.println("==> " + itemset.getSupportCount());
 			index++;
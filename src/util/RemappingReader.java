@@ -0,0 +1,101 @@
+package util;
+
+import java.util.Arrays;
+
+import model.Transaction;
+import model.TransactionBatch;
+
+/**
+ * Wraps another reader and rewrites its transactions through an {@link ItemRemap} : items become
+ * ranks, infrequent items are dropped and so are the transactions left too short to hold a
+ * candidate. Used by the later passes when the trimmed dataset could not be cached.
+ *
+ * @author shishir
+ *
+ */
+public class RemappingReader extends InputReader
+{
+	private InputReader reader;
+	private ItemRemap itemRemap;
+	private int minTxnLength;
+
+	private TransactionBatch sourceBatch = new TransactionBatch();
+
+	// Batch being handed out transaction by transaction through getNextTransaction().
+	private TransactionBatch currBatch = new TransactionBatch();
+	private int currTxnIndex = 0;
+
+	public RemappingReader(InputReader reader, ItemRemap itemRemap, int minTxnLength)
+	{
+		super(reader.getDataset(), reader.getAlgorithm());
+		this.reader = reader;
+		this.itemRemap = itemRemap;
+		this.minTxnLength = minTxnLength;
+	}
+
+	@Override
+	public Transaction getNextTransaction()
+	{
+		Transaction transaction = null;
+		if(hasNextTransaction()) {
+			int start = currBatch.getItemsStart(currTxnIndex);
+			int end = currBatch.getItemsEnd(currTxnIndex);
+
+			int[] currItems = Arrays.copyOfRange(currBatch.getItems(), start, end);
+
+			int currTid = currBatch.getTid(currTxnIndex);
+			transaction = new Transaction(currTid, currTid, currItems, true);
+			++currTxnIndex;
+		}
+
+		return transaction;
+	}
+
+	@Override
+	public boolean hasNextTransaction()
+	{
+		while(currTxnIndex == currBatch.getSize() && nextRemappedBatch(currBatch) > 0) {
+			currTxnIndex = 0;
+		}
+
+		return currTxnIndex < currBatch.getSize();
+	}
+
+	@Override
+	public int nextBatch(TransactionBatch batch)
+	{
+		if(currTxnIndex < currBatch.getSize()) {
+			// Partly consumed through getNextTransaction(). Hand out the rest of it.
+			batch.clear();
+			currTxnIndex += batch.addFrom(currBatch, currTxnIndex);
+			return batch.getSize();
+		}
+
+		return nextRemappedBatch(batch);
+	}
+
+	@Override
+	public void close()
+	{
+		reader.close();
+	}
+
+	@Override
+	public long getDatasetReadTime()
+	{
+		return reader.getDatasetReadTime();
+	}
+
+	/*
+	 * Remaps source batches into the batch till one of them leaves some transaction behind.
+	 */
+	private int nextRemappedBatch(TransactionBatch batch)
+	{
+		batch.clear();
+		while(batch.isEmpty() && reader.nextBatch(sourceBatch) > 0) {
+			itemRemap.remap(sourceBatch, batch, minTxnLength);
+		}
+
+		return batch.getSize();
+	}
+}
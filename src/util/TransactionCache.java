@@ -0,0 +1,121 @@
+package util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Algorithm;
+import model.CompressedTransactionBatch;
+import model.Dataset;
+import model.TransactionBatch;
+
+import com.google.common.collect.Lists;
+
+/**
+ * In-memory copy of a dataset as delta + varint compressed batches (see
+ * model.CompressedTransactionBatch), filled during the first pass and read by the later passes
+ * instead of scanning the dataset file again. The cache is bounded by a memory budget; once the
+ * dataset turns out to be larger than the budget, the cache is dropped and marked overflowed, and
+ * the algorithms go back to streaming the dataset from its reader.
+ *
+ * @author shishir
+ *
+ */
+public class TransactionCache
+{
+	private long maxSizeInBytes;
+	private AtomicLong sizeInBytes = new AtomicLong();
+	private volatile boolean isOverflowed = false;
+
+	private List<CompressedTransactionBatch> batches = Lists.newArrayList();
+	private int numTxns = 0;
+
+	/*
+	 * @param maxSizeInBytes - Memory budget of the cache. See Constants.TRANSACTION_CACHE_MAX_BYTES.
+	 */
+	public TransactionCache(long maxSizeInBytes)
+	{
+		this.maxSizeInBytes = maxSizeInBytes;
+	}
+
+	/*
+	 * Reserves room for the specified number of bytes. Safe to call from several threads, so that
+	 * the workers of a parallel parse share the budget. Returns false once the budget has been
+	 * exceeded, after which the cache stays overflowed.
+	 */
+	public boolean reserve(long numBytes)
+	{
+		if(isOverflowed) {
+			return false;
+		}
+
+		if(sizeInBytes.addAndGet(numBytes) > maxSizeInBytes) {
+			isOverflowed = true;
+			batches = null;
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Appends the batch, compressed, to the cache. Returns false if it did not fit in the budget.
+	 */
+	public boolean add(TransactionBatch batch)
+	{
+		if(isOverflowed) {
+			return false;
+		}
+
+		CompressedTransactionBatch compressedBatch = CompressedTransactionBatch.encode(batch);
+		if(!reserve(compressedBatch.getSizeInBytes())) {
+			return false;
+		}
+
+		batches.add(compressedBatch);
+		numTxns += compressedBatch.getNumTxns();
+		return true;
+	}
+
+	/*
+	 * Appends batches in the dataset order, handing them over to the cache. Room for these batches
+	 * must already have been reserved.
+	 */
+	public void addAll(List<CompressedTransactionBatch> reservedBatches)
+	{
+		if(isOverflowed) {
+			return;
+		}
+
+		for(CompressedTransactionBatch batch : reservedBatches) {
+			batches.add(batch);
+			numTxns += batch.getNumTxns();
+		}
+	}
+
+	public boolean isOverflowed() {
+		return isOverflowed;
+	}
+
+	/*
+	 * Returns a reader over the cached transactions. Several readers may be open at a time.
+	 */
+	public InputReader getReader(Dataset dataset, Algorithm algorithm)
+	{
+		return new CachedReader(dataset, algorithm, this);
+	}
+
+	List<CompressedTransactionBatch> getBatches() {
+		return batches;
+	}
+
+	public int getNumTxns() {
+		return numTxns;
+	}
+
+	public long getSizeInBytes() {
+		return sizeInBytes.get();
+	}
+
+	public long getMaxSizeInBytes() {
+		return maxSizeInBytes;
+	}
+}
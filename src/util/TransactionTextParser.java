@@ -0,0 +1,144 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocation-free parser for the grouped text dataset format, where each line holds a transaction
+ * as "tid item1 item2 ...". ASCII integers are decoded straight from the bytes of the buffer into a
+ * reusable int[], so no String, token array or boxed Integer is created per transaction.
+ *
+ * The parsed transaction stays valid till the next call to {@link #parseNext(ByteBuffer, boolean)}.
+ *
+ * The numbers are separated by spaces, tabs or '\r'. Any other byte, or a number past
+ * Integer.MAX_VALUE, fails the parse with the byte offset of the culprit in the file.
+ *
+ * @author shishir
+ *
+ */
+public class TransactionTextParser
+{
+	private int tid;
+	private int[] items = new int[64];
+	private int numItems;
+
+	// Offset in the file of the next byte to parse, for the errors.
+	private long fileOffset;
+
+	public TransactionTextParser()
+	{
+		this(0);
+	}
+
+	/*
+	 * @param fileOffset - Offset in the file of the first byte handed to the parser, when it does not
+	 *                     parse the file from its start.
+	 */
+	public TransactionTextParser(long fileOffset)
+	{
+		this.fileOffset = fileOffset;
+	}
+
+	/*
+	 * Parses the next transaction starting at the buffer position and advances the position past
+	 * the end of its line. Blank lines are skipped.
+	 *
+	 * Returns false if the buffer does not hold a complete line; the position is left untouched in
+	 * that case, so that the caller can read more data and retry. If endOfInput is set, a last line
+	 * without the trailing newline is accepted as well.
+	 *
+	 * @throws IOException if the line holds anything else than numbers and separators.
+	 */
+	public boolean parseNext(ByteBuffer buf, boolean endOfInput) throws IOException
+	{
+		int startPos = buf.position();
+		int pos = startPos;
+		int limit = buf.limit();
+
+		while(true) {
+			int lineStart = pos;
+			boolean hasTid = false;
+			boolean isSorted = true;
+			numItems = 0;
+
+			while(pos < limit) {
+				byte b = buf.get(pos);
+				if(b == '\n') {
+					break;
+				}
+				if(b == ' ' || b == '\t' || b == '\r') {
+					++pos;
+					continue;
+				}
+
+				int value = 0;
+				while(pos < limit && (b = buf.get(pos)) >= '0' && b <= '9') {
+					int digit = b - '0';
+					if(value > (Integer.MAX_VALUE - digit) / 10) {
+						throw new IOException("Number past " + Integer.MAX_VALUE + " at byte " + (fileOffset + pos - startPos));
+					}
+					value = value * 10 + digit;
+					++pos;
+				}
+				if(pos < limit && b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+					throw new IOException("Unexpected byte '" + (char)b + "' at byte " + (fileOffset + pos - startPos));
+				}
+
+				if(!hasTid) {
+					tid = value;
+					hasTid = true;
+				}
+				else {
+					if(numItems == items.length) {
+						items = Arrays.copyOf(items, items.length * 2);
+					}
+					if(numItems > 0 && items[numItems-1] > value) {
+						isSorted = false;
+					}
+					items[numItems++] = value;
+				}
+			}
+
+			if(pos == limit && !endOfInput) {
+				// Incomplete line. Let the caller refill the buffer.
+				fileOffset += lineStart - startPos;
+				buf.position(lineStart);
+				return false;
+			}
+			if(pos < limit) {
+				++pos; // Consume the newline
+			}
+
+			if(hasTid) {
+				// Items are kept sorted for the candidate generation; skip it if the file already is.
+				if(!isSorted) {
+					Arrays.sort(items, 0, numItems);
+				}
+				fileOffset += pos - startPos;
+				buf.position(pos);
+				return true;
+			}
+			if(pos == limit) {
+				fileOffset += pos - startPos;
+				buf.position(pos);
+				return false;
+			}
+		}
+	}
+
+	public int getTid() {
+		return tid;
+	}
+
+	/*
+	 * Returns the reusable item buffer. Only the first getNumItems() entries are valid.
+	 */
+	public int[] getItems() {
+		return items;
+	}
+
+	public int getNumItems() {
+		return numItems;
+	}
+}